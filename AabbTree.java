@@ -0,0 +1,529 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.util.Arrays;
+
+/**
+ * A dynamic bounding volume hierarchy of axis-aligned boxes.
+ * Each leaf stores a "fat" box: the rectangle of a collidable grown by a margin and stretched in
+ * the direction it last moved. A collidable that moves inside its fat box costs nothing, and one
+ * that leaves it is removed and reinserted, with tree rotations keeping the tree balanced.
+ * Nodes live in parallel primitive arrays and freed nodes are recycled.
+ */
+public class AabbTree {
+    /**
+     * Receives the leaves reached by a segment query.
+     */
+    public interface Visitor {
+        /**
+         * Visit a leaf whose box is crossed by the segment.
+         *
+         * @param id The id stored in the leaf
+         * @return The largest segment parameter still of interest; nodes entered later are skipped
+         */
+        double visit(int id);
+    }
+
+    // Marks a missing node
+    private static final int NULL = -1;
+    // How far a box is stretched per unit of displacement when a leaf moves
+    private static final double DISPLACEMENT_MULTIPLIER = 2;
+    // The distance leaf boxes are grown by on each side
+    private final double margin;
+    // Node boxes
+    private double[] minX;
+    private double[] minY;
+    private double[] maxX;
+    private double[] maxY;
+    // Node links; parent doubles as the next pointer of the free list
+    private int[] parent;
+    private int[] left;
+    private int[] right;
+    // Node height, 0 for leaves and -1 for free nodes
+    private int[] height;
+    // The id stored in each leaf
+    private int[] ids;
+    // The root node
+    private int root;
+    // The first free node
+    private int freeList;
+    // Stack reused by queries
+    private int[] stack;
+
+    /**
+     * Constructor to create an empty tree.
+     *
+     * @param margin The distance leaf boxes are grown by on each side
+     */
+    public AabbTree(double margin) {
+        this.margin = margin;
+        this.root = NULL;
+        this.freeList = NULL;
+        this.stack = new int[64];
+        grow(16);
+    }
+
+    /**
+     * Helper method to grow the node arrays and add the new nodes to the free list.
+     *
+     * @param capacity The new number of nodes
+     */
+    private void grow(int capacity) {
+        int old = this.parent == null ? 0 : this.parent.length;
+        this.minX = this.minX == null ? new double[capacity] : Arrays.copyOf(this.minX, capacity);
+        this.minY = this.minY == null ? new double[capacity] : Arrays.copyOf(this.minY, capacity);
+        this.maxX = this.maxX == null ? new double[capacity] : Arrays.copyOf(this.maxX, capacity);
+        this.maxY = this.maxY == null ? new double[capacity] : Arrays.copyOf(this.maxY, capacity);
+        this.parent = this.parent == null ? new int[capacity] : Arrays.copyOf(this.parent, capacity);
+        this.left = this.left == null ? new int[capacity] : Arrays.copyOf(this.left, capacity);
+        this.right = this.right == null ? new int[capacity] : Arrays.copyOf(this.right, capacity);
+        this.height = this.height == null ? new int[capacity] : Arrays.copyOf(this.height, capacity);
+        this.ids = this.ids == null ? new int[capacity] : Arrays.copyOf(this.ids, capacity);
+        for (int i = capacity - 1; i >= old; i--) {
+            this.parent[i] = this.freeList;
+            this.height[i] = -1;
+            this.freeList = i;
+        }
+    }
+
+    /**
+     * Helper method to take a node from the free list.
+     *
+     * @return The allocated node
+     */
+    private int allocate() {
+        if (this.freeList == NULL) {
+            grow(this.parent.length * 2);
+        }
+        int node = this.freeList;
+        this.freeList = this.parent[node];
+        this.parent[node] = NULL;
+        this.left[node] = NULL;
+        this.right[node] = NULL;
+        this.height[node] = 0;
+        this.ids[node] = NULL;
+        return node;
+    }
+
+    /**
+     * Helper method to return a node to the free list.
+     *
+     * @param node The node to free
+     */
+    private void free(int node) {
+        this.parent[node] = this.freeList;
+        this.height[node] = -1;
+        this.freeList = node;
+    }
+
+    /**
+     * Add a leaf for the given id.
+     *
+     * @param id   The id to store
+     * @param rect The current rectangle of the object
+     * @return The leaf node, used to move or remove the object later
+     */
+    public int insert(int id, Rectangle rect) {
+        int leaf = allocate();
+        this.ids[leaf] = id;
+        setFatBox(leaf, rect, 0, 0);
+        insertLeaf(leaf);
+        return leaf;
+    }
+
+    /**
+     * Remove a leaf from the tree.
+     *
+     * @param leaf The leaf returned by {@link #insert(int, Rectangle)}
+     */
+    public void remove(int leaf) {
+        removeLeaf(leaf);
+        free(leaf);
+    }
+
+    /**
+     * Update the rectangle of a leaf. Nothing changes while the rectangle stays inside the fat box.
+     *
+     * @param leaf The leaf returned by {@link #insert(int, Rectangle)}
+     * @param rect The new rectangle of the object
+     * @param dx   The x displacement since the previous rectangle
+     * @param dy   The y displacement since the previous rectangle
+     * @return True if the leaf had to be reinserted, false otherwise
+     */
+    public boolean move(int leaf, Rectangle rect, double dx, double dy) {
+        double x = rect.getUpperLeft().getX();
+        double y = rect.getUpperLeft().getY();
+        if (x >= this.minX[leaf] && y >= this.minY[leaf]
+                && x + rect.getWidth() <= this.maxX[leaf] && y + rect.getHeight() <= this.maxY[leaf]) {
+            return false;
+        }
+        removeLeaf(leaf);
+        setFatBox(leaf, rect, dx, dy);
+        insertLeaf(leaf);
+        return true;
+    }
+
+    /**
+     * Helper method to set the box of a leaf from a rectangle, grown by the margin and stretched
+     * along the displacement.
+     *
+     * @param leaf The leaf
+     * @param rect The rectangle
+     * @param dx   The x displacement
+     * @param dy   The y displacement
+     */
+    private void setFatBox(int leaf, Rectangle rect, double dx, double dy) {
+        double x = rect.getUpperLeft().getX();
+        double y = rect.getUpperLeft().getY();
+        double stretchX = DISPLACEMENT_MULTIPLIER * dx;
+        double stretchY = DISPLACEMENT_MULTIPLIER * dy;
+        this.minX[leaf] = x - this.margin + Math.min(0, stretchX);
+        this.minY[leaf] = y - this.margin + Math.min(0, stretchY);
+        this.maxX[leaf] = x + rect.getWidth() + this.margin + Math.max(0, stretchX);
+        this.maxY[leaf] = y + rect.getHeight() + this.margin + Math.max(0, stretchY);
+    }
+
+    /**
+     * Helper method to find the perimeter of the union of two node boxes.
+     *
+     * @param a The first node
+     * @param b The second node
+     * @return The perimeter of the union
+     */
+    private double unionPerimeter(int a, int b) {
+        return 2 * (Math.max(this.maxX[a], this.maxX[b]) - Math.min(this.minX[a], this.minX[b])
+                + Math.max(this.maxY[a], this.maxY[b]) - Math.min(this.minY[a], this.minY[b]));
+    }
+
+    /**
+     * Helper method to find the perimeter of a node box.
+     *
+     * @param node The node
+     * @return The perimeter
+     */
+    private double perimeter(int node) {
+        return 2 * (this.maxX[node] - this.minX[node] + this.maxY[node] - this.minY[node]);
+    }
+
+    /**
+     * Helper method to insert a detached leaf, choosing the sibling that grows the tree the least.
+     *
+     * @param leaf The leaf to insert
+     */
+    private void insertLeaf(int leaf) {
+        if (this.root == NULL) {
+            this.root = leaf;
+            this.parent[leaf] = NULL;
+            return;
+        }
+
+        // Descend to the best sibling using the surface area heuristic
+        int index = this.root;
+        while (this.height[index] > 0) {
+            int child1 = this.left[index];
+            int child2 = this.right[index];
+            double area = perimeter(index);
+            double combinedArea = unionPerimeter(index, leaf);
+            // Cost of creating a new parent for this node and the leaf
+            double cost = 2 * combinedArea;
+            // Minimum cost of pushing the leaf further down the tree
+            double inheritanceCost = 2 * (combinedArea - area);
+            double cost1 = descendCost(child1, leaf) + inheritanceCost;
+            double cost2 = descendCost(child2, leaf) + inheritanceCost;
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = cost1 < cost2 ? child1 : child2;
+        }
+        int sibling = index;
+
+        // Create a new parent for the sibling and the leaf
+        int oldParent = this.parent[sibling];
+        int newParent = allocate();
+        this.parent[newParent] = oldParent;
+        this.height[newParent] = this.height[sibling] + 1;
+        this.left[newParent] = sibling;
+        this.right[newParent] = leaf;
+        this.parent[sibling] = newParent;
+        this.parent[leaf] = newParent;
+        if (oldParent == NULL) {
+            this.root = newParent;
+        } else if (this.left[oldParent] == sibling) {
+            this.left[oldParent] = newParent;
+        } else {
+            this.right[oldParent] = newParent;
+        }
+
+        // Walk back up, rebalancing and refitting the ancestors
+        refitFrom(newParent);
+    }
+
+    /**
+     * Helper method to find the cost of descending into a child when inserting a leaf.
+     *
+     * @param child The child node
+     * @param leaf  The leaf being inserted
+     * @return The cost
+     */
+    private double descendCost(int child, int leaf) {
+        if (this.height[child] == 0) {
+            return unionPerimeter(child, leaf);
+        }
+        return unionPerimeter(child, leaf) - perimeter(child);
+    }
+
+    /**
+     * Helper method to detach a leaf from the tree without freeing it.
+     *
+     * @param leaf The leaf to detach
+     */
+    private void removeLeaf(int leaf) {
+        if (leaf == this.root) {
+            this.root = NULL;
+            return;
+        }
+        int parentNode = this.parent[leaf];
+        int grandParent = this.parent[parentNode];
+        int sibling = this.left[parentNode] == leaf ? this.right[parentNode] : this.left[parentNode];
+        free(parentNode);
+        if (grandParent == NULL) {
+            this.root = sibling;
+            this.parent[sibling] = NULL;
+            return;
+        }
+        if (this.left[grandParent] == parentNode) {
+            this.left[grandParent] = sibling;
+        } else {
+            this.right[grandParent] = sibling;
+        }
+        this.parent[sibling] = grandParent;
+        refitFrom(grandParent);
+    }
+
+    /**
+     * Helper method to rebalance and refit a node and all its ancestors.
+     *
+     * @param node The first node to fix
+     */
+    private void refitFrom(int node) {
+        int index = node;
+        while (index != NULL) {
+            index = balance(index);
+            int child1 = this.left[index];
+            int child2 = this.right[index];
+            this.height[index] = 1 + Math.max(this.height[child1], this.height[child2]);
+            fit(index, child1, child2);
+            index = this.parent[index];
+        }
+    }
+
+    /**
+     * Helper method to set a node box to the union of two other node boxes.
+     *
+     * @param node The node to set
+     * @param a    The first node
+     * @param b    The second node
+     */
+    private void fit(int node, int a, int b) {
+        this.minX[node] = Math.min(this.minX[a], this.minX[b]);
+        this.minY[node] = Math.min(this.minY[a], this.minY[b]);
+        this.maxX[node] = Math.max(this.maxX[a], this.maxX[b]);
+        this.maxY[node] = Math.max(this.maxY[a], this.maxY[b]);
+    }
+
+    /**
+     * Helper method to perform a left or right rotation if the subtree of a node is imbalanced.
+     *
+     * @param a The node to balance
+     * @return The node now at the position of a
+     */
+    private int balance(int a) {
+        if (this.height[a] < 2) {
+            return a;
+        }
+        int b = this.left[a];
+        int c = this.right[a];
+        int difference = this.height[c] - this.height[b];
+        if (difference > 1) {
+            return rotateUp(a, c, b);
+        }
+        if (difference < -1) {
+            return rotateUp(a, b, c);
+        }
+        return a;
+    }
+
+    /**
+     * Helper method to rotate the taller child of a node above it.
+     *
+     * @param a          The imbalanced node
+     * @param tall       The taller child, which takes the place of a
+     * @param shortChild The other child, which stays under a
+     * @return The taller child
+     */
+    private int rotateUp(int a, int tall, int shortChild) {
+        int f = this.left[tall];
+        int g = this.right[tall];
+
+        // Swap a and tall
+        this.left[tall] = a;
+        this.parent[tall] = this.parent[a];
+        this.parent[a] = tall;
+        int oldParent = this.parent[tall];
+        if (oldParent == NULL) {
+            this.root = tall;
+        } else if (this.left[oldParent] == a) {
+            this.left[oldParent] = tall;
+        } else {
+            this.right[oldParent] = tall;
+        }
+
+        // Keep the taller grandchild under tall and move the other one under a
+        int keep = this.height[f] > this.height[g] ? f : g;
+        int move = keep == f ? g : f;
+        this.right[tall] = keep;
+        if (this.left[a] == tall) {
+            this.left[a] = move;
+        } else {
+            this.right[a] = move;
+        }
+        this.parent[move] = a;
+        fit(a, shortChild, move);
+        fit(tall, a, keep);
+        this.height[a] = 1 + Math.max(this.height[shortChild], this.height[move]);
+        this.height[tall] = 1 + Math.max(this.height[a], this.height[keep]);
+        return tall;
+    }
+
+    /**
+     * Visit every leaf whose box, grown by a padding, is crossed by a segment, nearest subtrees
+     * first. Subtrees entered after the parameter returned by the visitor are skipped.
+     *
+     * @param x1      The x-coordinate of the start of the segment
+     * @param y1      The y-coordinate of the start of the segment
+     * @param x2      The x-coordinate of the end of the segment
+     * @param y2      The y-coordinate of the end of the segment
+     * @param padding The distance boxes are grown by for the test
+     * @param visitor The visitor of the leaves
+     */
+    public void query(double x1, double y1, double x2, double y2, double padding, Visitor visitor) {
+        if (this.stack.length < getStackSize()) {
+            this.stack = new int[getStackSize() * 2];
+        }
+        query(x1, y1, x2, y2, padding, visitor, this.stack);
+    }
+
+    /**
+     * Visit every leaf whose box, grown by a padding, is crossed by a segment, using a stack owned by
+     * the caller. The tree is only read, so several threads may query it at once as long as each
+     * passes its own stack and no thread changes the tree meanwhile.
+     *
+     * @param x1      The x-coordinate of the start of the segment
+     * @param y1      The y-coordinate of the start of the segment
+     * @param x2      The x-coordinate of the end of the segment
+     * @param y2      The y-coordinate of the end of the segment
+     * @param padding The distance boxes are grown by for the test
+     * @param visitor The visitor of the leaves
+     * @param stack   The stack of nodes to visit, holding at least {@link #getStackSize()} entries
+     */
+    public void query(double x1, double y1, double x2, double y2, double padding, Visitor visitor, int[] stack) {
+        if (this.root == NULL) {
+            return;
+        }
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double limit = 1;
+        int top = 0;
+        stack[top++] = this.root;
+        while (top > 0) {
+            int node = stack[--top];
+            double enter = entryParameter(node, x1, y1, dx, dy, padding);
+            if (enter > limit) {
+                continue;
+            }
+            if (this.height[node] == 0) {
+                limit = Math.min(limit, visitor.visit(this.ids[node]));
+                continue;
+            }
+            // Push the farther child first so the nearer one is visited first
+            int near = this.left[node];
+            int far = this.right[node];
+            double nearEnter = entryParameter(near, x1, y1, dx, dy, padding);
+            double farEnter = entryParameter(far, x1, y1, dx, dy, padding);
+            if (farEnter < nearEnter) {
+                int swap = near;
+                near = far;
+                far = swap;
+                double swapEnter = nearEnter;
+                nearEnter = farEnter;
+                farEnter = swapEnter;
+            }
+            if (farEnter <= limit) {
+                stack[top++] = far;
+            }
+            if (nearEnter <= limit) {
+                stack[top++] = near;
+            }
+        }
+    }
+
+    /**
+     * Helper method to find where a segment enters a node box using the slab test.
+     *
+     * @param node    The node
+     * @param x1      The x-coordinate of the start of the segment
+     * @param y1      The y-coordinate of the start of the segment
+     * @param dx      The x extent of the segment
+     * @param dy      The y extent of the segment
+     * @param padding The distance the box is grown by
+     * @return The entry parameter in [0, 1], or infinity if the segment misses the box
+     */
+    private double entryParameter(int node, double x1, double y1, double dx, double dy, double padding) {
+        double tMin = 0;
+        double tMax = 1;
+        double lowX = this.minX[node] - padding;
+        double highX = this.maxX[node] + padding;
+        double lowY = this.minY[node] - padding;
+        double highY = this.maxY[node] + padding;
+        if (dx == 0) {
+            if (x1 < lowX || x1 > highX) {
+                return Double.POSITIVE_INFINITY;
+            }
+        } else {
+            double t1 = (lowX - x1) / dx;
+            double t2 = (highX - x1) / dx;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        if (dy == 0) {
+            if (y1 < lowY || y1 > highY) {
+                return Double.POSITIVE_INFINITY;
+            }
+        } else {
+            double t1 = (lowY - y1) / dy;
+            double t2 = (highY - y1) / dy;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        return tMin <= tMax ? tMin : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Get the number of stack entries a query needs. Each level of the path being walked leaves at
+     * most one sibling on the stack, so the height of the tree bounds it.
+     *
+     * @return The stack size
+     */
+    public int getStackSize() {
+        return getHeight() + 2;
+    }
+
+    /**
+     * Get the height of the tree.
+     *
+     * @return The height of the root, or -1 if the tree is empty
+     */
+    public int getHeight() {
+        return this.root == NULL ? -1 : this.height[this.root];
+    }
+}
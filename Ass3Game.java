@@ -1,22 +1,87 @@
 // Name: Yonatan Omer
 // ID: 322624693
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import javax.management.JMException;
+
 /**
  * This class represents the main entry point for running the game.
  * It creates a new instance of the Game class, initializes it, and runs the game.
+ * With "--record file [ticks]" the game stops after the given number of ticks (3600 by default)
+ * and writes a recording that "java HeadlessGame --replay file" replays.
+ * With "--level file" the game plays a level file, such as levels/default.txt, instead of the
+ * default level.
+ * Any of these may follow "--stats seconds", which records frame timings, registers them as the
+ * MBean "breakout:type=FrameStats" and prints a summary at the given period, and then
+ * "--stream port", which streams the state of the world to "java StateMirror localhost port".
  */
 public class Ass3Game {
 
     /**
      * The main method to start the game.
      *
-     * @param args Command line arguments (not used).
+     * @param args Command line arguments: optionally --stats and a period in seconds, then
+     *             optionally --stream and a port, then optionally --record, a file and a number of
+     *             ticks, or --level and a level file.
      */
     public static void main(String[] args) {
         // Create a new instance of the Game class
         Game game = new Game();
+        String[] options = args;
+        if (options.length > 1 && options[0].equals("--stats")) {
+            // Record where the frame time goes, readable through JMX and printed periodically
+            FrameStats stats = new FrameStats();
+            try {
+                stats.register();
+            } catch (JMException e) {
+                System.err.println("Cannot register the frame stats: " + e.getMessage());
+            }
+            stats.startReporting(Long.parseLong(options[1]) * 1000, System.out::println);
+            game.setStats(stats);
+            options = Arrays.copyOfRange(options, 2, options.length);
+        }
+        if (options.length > 1 && options[0].equals("--stream")) {
+            // Stream the state of the world to spectators connecting on a loopback port
+            StatePublisher publisher = new StatePublisher();
+            try {
+                StateStreamSink.listen(publisher, Integer.parseInt(options[1]));
+                game.getLoop().setStatePublisher(publisher);
+            } catch (IOException e) {
+                System.err.println("Cannot stream the state: " + e.getMessage());
+            }
+            options = Arrays.copyOfRange(options, 2, options.length);
+        }
+        if (options.length > 1 && options[0].equals("--level")) {
+            // Play the given level
+            try {
+                game.initialize(Paths.get(options[1]));
+            } catch (IOException e) {
+                System.err.println("Cannot load the level: " + e.getMessage());
+                game.close();
+                return;
+            }
+            game.run();
+            return;
+        }
         // Initialize the game
         game.initialize();
+        if (options.length > 1 && options[0].equals("--record")) {
+            // Record the game for a fixed number of ticks
+            InputRecording recording = game.startRecording();
+            game.getLoop().setTickLimit(options.length > 2 ? Long.parseLong(options[2]) : 3600);
+            game.run();
+            try {
+                recording.write(Paths.get(options[1]), game.getWorld().stateHash());
+            } catch (IOException e) {
+                System.err.println("Cannot write the recording: " + e.getMessage());
+            }
+            System.out.printf("Recorded %d ticks, final state %016x%n", recording.getTickCount(),
+                    recording.getFinalHash());
+            game.close();
+            return;
+        }
         // Run the game
         game.run();
     }
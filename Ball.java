@@ -6,40 +6,59 @@ import java.awt.Color;
 
 /**
  * Represents a ball in the animation.
+ * A ball is a lightweight handle to one entry of a {@link BallSystem}, which stores the state of
+ * all its balls in primitive arrays. A ball created with the public constructor gets a system of
+ * its own; create balls through {@link BallSystem#addBall(Point, int, Color)} to share one.
  */
 public class Ball implements Sprite {
-    private static final double MOVE_SLIGHTLY = 0.2; // Constant for slight movement adjustment
-    private Point center; // The center point of the ball
-    private final int radius; // The radius of the ball
-    private final Color color; // The color of the ball
-    private Velocity velocity; // The velocity of the ball
-    private final int minX; // The minimum x-coordinate value
-    private final int boardWidth; // The width of the animation board
-    private final int boardHeight; // The height of the animation board
-    private final GameEnvironment gameEnvironment; // The game environment for collision detection
+    private final BallSystem system; // The system holding the state of the ball
+    private final int index; // The index of the ball in the system
 
     /**
-     * Constructor to initialize the ball.
+     * Constructor to initialize the ball in a system of its own.
      *
      * @param center       The center point of the ball
      * @param r            The radius of the ball
      * @param color        The color of the ball
-     * @param minX         The minimum x-coordinate value
+     * @param minX         The minimum x-coordinate value (not used)
 
-     * @param boardWidth   The width of the animation board
-     * @param boardHeight  The height of the animation board
+     * @param boardWidth   The width of the animation board (not used)
+     * @param boardHeight  The height of the animation board (not used)
      * @param ge           The game environment for collision detection
      */
     public Ball(Point center, int r, Color color, int minX,
                 int boardWidth, int boardHeight, GameEnvironment ge) {
-        this.center = center; // Initialize the center point of the ball
-        this.radius = r; // Initialize the radius of the ball
-        this.color = color; // Initialize the color of the ball
-        this.velocity = new Velocity(0, 0); // Initialize the velocity of the ball
-        this.minX = minX; // Initialize the minimum x-coordinate value
-        this.boardWidth = boardWidth; // Initialize the width of the animation board
-        this.boardHeight = boardHeight; // Initialize the height of the animation board
-        this.gameEnvironment = ge; // Initialize the game environment
+        this.system = new BallSystem(ge); // Initialize a system of the ball's own
+        this.index = this.system.add(center, r, color); // Store the state of the ball in the system
+    }
+
+    /**
+     * Constructor to create a handle to a ball stored in a system.
+     *
+     * @param system The system holding the state of the ball
+     * @param index  The index of the ball in the system
+     */
+    Ball(BallSystem system, int index) {
+        this.system = system; // Initialize the system of the ball
+        this.index = index; // Initialize the index of the ball
+    }
+
+    /**
+     * Get the system holding the state of the ball.
+     *
+     * @return The ball system
+     */
+    public BallSystem getSystem() {
+        return this.system;
+    }
+
+    /**
+     * Get the index of the ball in its system.
+     *
+     * @return The index
+     */
+    public int getIndex() {
+        return this.index;
     }
 
     /**
@@ -48,7 +67,7 @@ public class Ball implements Sprite {
      * @return The x-coordinate of the center
      */
     public double getX() {
-        return this.center.getX();
+        return this.system.getX(this.index);
     }
 
     /**
@@ -57,7 +76,7 @@ public class Ball implements Sprite {
      * @return The y-coordinate of the center
      */
     public double getY() {
-        return this.center.getY();
+        return this.system.getY(this.index);
     }
 
     /**
@@ -66,7 +85,7 @@ public class Ball implements Sprite {
      * @return The center point of the ball
      */
     public Point getCenter() {
-        return this.center;
+        return new Point(getX(), getY());
     }
 
     /**
@@ -75,7 +94,7 @@ public class Ball implements Sprite {
      * @return The radius of the ball
      */
     public int getSize() {
-        return this.radius;
+        return this.system.getRadius(this.index);
     }
 
     /**
@@ -84,7 +103,7 @@ public class Ball implements Sprite {
      * @return The game environment
      */
     public GameEnvironment getGameEnvironment() {
-        return gameEnvironment;
+        return this.system.getGameEnvironment();
     }
 
     /**
@@ -102,8 +121,7 @@ public class Ball implements Sprite {
      */
     @Override
     public void drawOn(DrawSurface surface) {
-        surface.setColor(this.color); // Set the color of the ball
-        surface.fillCircle((int) getX(), (int) getY(), getSize()); // Draw the ball
+        this.system.drawBall(this.index, surface); // Draw the ball
     }
 
     /**
@@ -112,7 +130,7 @@ public class Ball implements Sprite {
      * @param v The velocity to set
      */
     public void setVelocity(Velocity v) {
-        this.velocity = v; // Set the velocity of the ball
+        this.system.setVelocity(this.index, v.getDx(), v.getDy()); // Set the velocity of the ball
     }
 
     /**
@@ -121,7 +139,7 @@ public class Ball implements Sprite {
      * @return The velocity of the ball
      */
     public Velocity getVelocity() {
-        return this.velocity;
+        return new Velocity(this.system.getDx(this.index), this.system.getDy(this.index));
     }
 
     /**
@@ -131,45 +149,56 @@ public class Ball implements Sprite {
      * @param dy The change in y-coordinate per step
      */
     public void setVelocity(double dx, double dy) {
-        this.velocity = new Velocity(dx, dy); // Set the velocity of the ball
+        this.system.setVelocity(this.index, dx, dy); // Set the velocity of the ball
+    }
+
+    /**
+     * Set how many collisions the ball may resolve within a single step.
+     * With a limit of 0 (the default) a collision ends the step after a slight move towards it.
+     * With a positive limit the ball bounces off up to that many objects in one step and uses the
+     * whole travel distance of the step, so its speed does not depend on how often it is stepped.
+     *
+     * @param limit The maximum number of bounces per step
+     */
+    public void setBounceLimit(int limit) {
+        this.system.setBounceLimit(this.index, limit); // Set the bounce limit of the ball
+    }
+
+    /**
+     * Get how many collisions the ball may resolve within a single step.
+     *
+     * @return The maximum number of bounces per step, 0 for a single slight move
+     */
+    public int getBounceLimit() {
+        return this.system.getBounceLimit(this.index);
     }
 
     /**
      * Moves the ball one step according to its velocity, handling collisions if they occur.
-     * If a collision is detected, adjusts the ball's position slightly before the collision point,
-     * notifies the colliding object, and updates the ball's velocity accordingly.
+     * The whole circle is swept along the trajectory, so the ball cannot overlap or tunnel through
+     * thin objects however fast it moves. If a collision is detected, adjusts the ball's position
+     * slightly towards the position where it touches the object, notifies the colliding object,
+     * and updates the ball's velocity accordingly.
      */
     public void moveOneStep() {
-        // Calculate the potential new position
-        Point nextCenter = this.velocity.applyToPoint(this.center);
-        // Create a line representing the ball's trajectory
-        Line trajectory = new Line(this.center.getX(), this.center.getY(), nextCenter.getX(), nextCenter.getY());
-        // Get the closest collision information
-        CollisionInfo closestCollision = this.gameEnvironment.getClosestCollision(trajectory);
-
-        if (closestCollision != null) {
-            // If there is a collision
-            Point collisionPoint = closestCollision.collisionPoint();
-            // Move the ball slightly before the collision point
-            double dx = collisionPoint.getX() - this.center.getX();
-            double dy = collisionPoint.getY() - this.center.getY();
-            this.center = new Point(this.center.getX() + (dx * MOVE_SLIGHTLY),
-                    this.center.getY() + (dy * MOVE_SLIGHTLY));
-            // Notify the hit object and update the velocity
-            Collidable hitObject = closestCollision.collisionObject();
-            this.velocity = hitObject.hit(collisionPoint, this.velocity);
-        } else {
-            // Move the ball to the next position
-            this.center = nextCenter;
-        }
-    }
-
-    /**
-     * Add the ball to the game.
+        this.system.step(this.index); // Move the ball in its system
+    }
+
+    /**
+     * Add the ball to the game. This adds the ball's whole system, once.
      *
      * @param game The game to add the ball to
      */
     public void addToGame(Game game) {
-        game.addSprite(this); // Add the ball to the game's sprites
+        addToWorld(game.getWorld()); // Add the ball to the game's world
+    }
+
+    /**
+     * Add the ball to a world. This adds the ball's whole system, once.
+     *
+     * @param world The world to add the ball to
+     */
+    public void addToWorld(World world) {
+        this.system.addToWorld(world); // Add the ball's system to the world's sprites
     }
 }
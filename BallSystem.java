@@ -0,0 +1,980 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import biuoop.DrawSurface;
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Holds many balls in parallel primitive arrays and moves and draws all of them in one pass.
+ * Centers, velocities, radii and colors are stored by index, so stepping a ball touches no
+ * per-ball objects and creates none unless it hits something.
+ * A {@link Ball} is a lightweight handle to one index of a system.
+ * Given a fork/join pool, the system steps in two phases: first every ball finds its closest
+ * collision in parallel, while the environment is only read; then, in index order on the calling
+ * thread, the hit objects are notified and the positions are committed. The result is the same,
+ * bit for bit, as stepping the balls one after another.
+ * Balls can also collide with each other. They are then kept sorted by horizontal band, as high as
+ * the largest ball, and by the left side of their bounding box within a band. The order is repaired
+ * by insertion sort after every step, which costs close to linear time because balls move little
+ * in one step. Each band is then swept along x against itself and the band below, and only balls
+ * whose boxes overlap along x are tested exactly as circles.
+ */
+public class BallSystem implements Sprite {
+    private static final double MOVE_SLIGHTLY = 0.2; // Constant for slight movement adjustment
+    private static final double SKIN = Line.EPSILON; // Distance kept from a surface after a bounce
+    private static final int INITIAL_CAPACITY = 16; // Initial number of balls the arrays can hold
+    private static final int BATCH_SIZE = 256; // Number of balls a parallel task sweeps without splitting
+    private static final double CENTER_CELL_SIZE = 64; // Size of the cells of the grid of the centers
+    private final GameEnvironment gameEnvironment; // The game environment for collision detection
+    private double[] x; // The x-coordinates of the centers
+    private double[] y; // The y-coordinates of the centers
+    private double[] previousX; // The x-coordinates of the centers before the last step
+    private double[] previousY; // The y-coordinates of the centers before the last step
+    private double[] dx; // The x-components of the velocities
+    private double[] dy; // The y-components of the velocities
+    private int[] radius; // The radii
+    private int[] colorIndex; // The index of each ball's color in the palette
+    private int[] bounceLimit; // The maximum number of bounces per step, 0 for a single slight move
+    private int count; // The number of balls
+    private final List<Color> palette; // The distinct colors used by the balls
+    private final Map<Color, Integer> paletteIndex; // The index of each color in the palette
+    private World world; // The world the system was added to, if any
+    private ForkJoinPool pool; // The pool the collisions are found on, or null to step serially
+    private ThreadLocal<CollisionQuery> queries; // The query of each thread of the pool
+    private int[] contactId; // The id of the collidable each ball reaches first, or -1 for none
+    private double[] contactTime; // The time of impact with that collidable
+    private double[] contactNormalX; // The x component of the contact normal
+    private double[] contactNormalY; // The y component of the contact normal
+    private boolean ballCollisions; // Whether the balls collide with each other
+    private HitEventBus hitEvents; // The bus the hits of the balls are recorded on, or null
+    private int maxRadius; // The largest radius of any ball
+    private int[] sortedBalls; // The ball indexes sorted by band and then by the left side of their box
+    private int[] sortedBand; // The band of each sorted ball
+    private double[] sortedLeft; // The left side of the bounding box of each sorted ball
+    private double[] sortedX; // The x-coordinate of the center of each sorted ball
+    private double[] sortedY; // The y-coordinate of the center of each sorted ball
+    private double[] sortedRadius; // The radius of each sorted ball
+    private int sortedCount; // The number of balls in the sorted order
+    private SpatialGrid centers; // The index of each ball, under the cell of its center
+    private int[] centerCell; // The cell each ball is stored under in the grid of the centers
+
+    /**
+     * Constructor to create an empty ball system.
+     *
+     * @param ge The game environment for collision detection
+     */
+    public BallSystem(GameEnvironment ge) {
+        this.gameEnvironment = ge;
+        this.x = new double[INITIAL_CAPACITY];
+        this.y = new double[INITIAL_CAPACITY];
+        this.previousX = new double[INITIAL_CAPACITY];
+        this.previousY = new double[INITIAL_CAPACITY];
+        this.dx = new double[INITIAL_CAPACITY];
+        this.dy = new double[INITIAL_CAPACITY];
+        this.radius = new int[INITIAL_CAPACITY];
+        this.colorIndex = new int[INITIAL_CAPACITY];
+        this.bounceLimit = new int[INITIAL_CAPACITY];
+        this.palette = new ArrayList<>();
+        this.paletteIndex = new HashMap<>();
+        this.centers = new SpatialGrid(0, 0, ge.getScreenWidth(), ge.getScreenHeight(), CENTER_CELL_SIZE);
+        this.centerCell = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Add a ball with zero velocity.
+     *
+     * @param center The center point of the ball
+     * @param r      The radius of the ball
+     * @param color  The color of the ball
+     * @return A handle to the new ball
+     */
+    public Ball addBall(Point center, int r, Color color) {
+        return new Ball(this, add(center, r, color));
+    }
+
+    /**
+     * Add a ball with zero velocity without creating a handle for it.
+     *
+     * @param center The center point of the ball
+     * @param r      The radius of the ball
+     * @param color  The color of the ball
+     * @return The index of the new ball
+     */
+    public int add(Point center, int r, Color color) {
+        if (this.count == this.x.length) {
+            int capacity = this.count * 2;
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.previousX = Arrays.copyOf(this.previousX, capacity);
+            this.previousY = Arrays.copyOf(this.previousY, capacity);
+            this.dx = Arrays.copyOf(this.dx, capacity);
+            this.dy = Arrays.copyOf(this.dy, capacity);
+            this.radius = Arrays.copyOf(this.radius, capacity);
+            this.colorIndex = Arrays.copyOf(this.colorIndex, capacity);
+            this.bounceLimit = Arrays.copyOf(this.bounceLimit, capacity);
+            this.centerCell = Arrays.copyOf(this.centerCell, capacity);
+        }
+        int index = this.count++;
+        this.x[index] = center.getX();
+        this.y[index] = center.getY();
+        this.previousX[index] = center.getX();
+        this.previousY[index] = center.getY();
+        this.dx[index] = 0;
+        this.dy[index] = 0;
+        this.radius[index] = r;
+        this.maxRadius = Math.max(this.maxRadius, r);
+        this.colorIndex[index] = colorToIndex(color);
+        this.bounceLimit[index] = 0;
+        this.centerCell[index] = this.centers.cellAt(center.getX(), center.getY());
+        this.centers.addToCell(this.centerCell[index], index);
+        return index;
+    }
+
+    /**
+     * Helper method to find or add a color in the palette.
+     *
+     * @param color The color
+     * @return The index of the color in the palette
+     */
+    private int colorToIndex(Color color) {
+        Integer index = this.paletteIndex.get(color);
+        if (index == null) {
+            index = this.palette.size();
+            this.palette.add(color);
+            this.paletteIndex.put(color, index);
+        }
+        return index;
+    }
+
+    /**
+     * Get the number of balls in the system.
+     *
+     * @return The number of balls
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Get the number of bytes {@link #saveState(ByteBuffer)} writes.
+     *
+     * @return The size of the state in bytes, a multiple of 8
+     */
+    public long stateBytes() {
+        long ints = 4 + (long) this.count * 3 + this.sortedCount + this.palette.size();
+        return (long) this.count * 6 * Double.BYTES + (ints + (ints & 1)) * Integer.BYTES;
+    }
+
+    /**
+     * Write the state of every ball into a buffer, with one bulk put per array: the counts, the
+     * centers before and after the last step, the velocities, radii, colors and bounce limits, the
+     * order the balls are swept in for collisions between them, and the palette.
+     *
+     * @param buffer The buffer, written from its position on
+     */
+    public void saveState(ByteBuffer buffer) {
+        int n = this.count;
+        buffer.putInt(n);
+        buffer.putInt(this.palette.size());
+        buffer.putInt(this.ballCollisions ? 1 : 0);
+        buffer.putInt(this.sortedCount);
+        putDoubles(buffer, this.x, n);
+        putDoubles(buffer, this.y, n);
+        putDoubles(buffer, this.previousX, n);
+        putDoubles(buffer, this.previousY, n);
+        putDoubles(buffer, this.dx, n);
+        putDoubles(buffer, this.dy, n);
+        putInts(buffer, this.radius, n);
+        putInts(buffer, this.colorIndex, n);
+        putInts(buffer, this.bounceLimit, n);
+        if (this.sortedCount > 0) {
+            putInts(buffer, this.sortedBalls, this.sortedCount);
+        }
+        for (Color color : this.palette) {
+            buffer.putInt(color.getRGB());
+        }
+        if ((n * 3 + this.sortedCount + this.palette.size()) % 2 != 0) {
+            // Pad to a multiple of 8 bytes
+            buffer.putInt(0);
+        }
+    }
+
+    /**
+     * Replace every ball with the balls read from a buffer written by {@link #saveState(ByteBuffer)}.
+     * Together with the same environment, the balls then move exactly as the saved ones would have.
+     * The whole state is read and checked before any ball is replaced, so a truncated or corrupt
+     * state leaves the balls as they were.
+     *
+     * @param buffer The buffer, read from its position on
+     * @throws IOException If the counts do not fit the bytes left in the buffer, or the balls,
+     *                     their order or their palette are invalid
+     */
+    public void loadState(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 4 * Integer.BYTES) {
+            throw new IOException("The ball state is truncated: " + buffer.remaining() + " bytes left");
+        }
+        int n = buffer.getInt();
+        int paletteSize = buffer.getInt();
+        boolean collisions = buffer.getInt() != 0;
+        int sorted = buffer.getInt();
+        if (n < 0 || paletteSize < 0 || sorted < 0 || sorted > n) {
+            throw new IOException("The ball state has invalid counts: " + n + " balls, " + sorted
+                    + " sorted, " + paletteSize + " colors");
+        }
+        long ints = (long) n * 3 + sorted + paletteSize;
+        long needed = (long) n * 6 * Double.BYTES + (ints + (ints & 1)) * Integer.BYTES;
+        if (needed > buffer.remaining()) {
+            throw new IOException("The ball state is truncated: " + n + " balls need " + needed + " bytes, "
+                    + buffer.remaining() + " left");
+        }
+        int capacity = Math.max(INITIAL_CAPACITY, n);
+        double[] newX = getDoubles(buffer, capacity, n);
+        double[] newY = getDoubles(buffer, capacity, n);
+        double[] newPreviousX = getDoubles(buffer, capacity, n);
+        double[] newPreviousY = getDoubles(buffer, capacity, n);
+        double[] newDx = getDoubles(buffer, capacity, n);
+        double[] newDy = getDoubles(buffer, capacity, n);
+        int[] newRadius = getInts(buffer, capacity, n);
+        int[] newColorIndex = getInts(buffer, capacity, n);
+        int[] newBounceLimit = getInts(buffer, capacity, n);
+        int[] newSortedBalls = sorted > 0 ? getInts(buffer, capacity, sorted) : null;
+        List<Color> newPalette = new ArrayList<>(paletteSize);
+        Map<Color, Integer> newPaletteIndex = new HashMap<>();
+        for (int i = 0; i < paletteSize; i++) {
+            Color color = new Color(buffer.getInt(), true);
+            if (newPaletteIndex.putIfAbsent(color, i) != null) {
+                throw new IOException("The ball state has color " + Integer.toHexString(color.getRGB())
+                        + " twice in its palette");
+            }
+            newPalette.add(color);
+        }
+        if ((n * 3 + sorted + paletteSize) % 2 != 0) {
+            buffer.getInt();
+        }
+        for (int i = 0; i < n; i++) {
+            if (newRadius[i] < 0 || newColorIndex[i] < 0 || newColorIndex[i] >= paletteSize) {
+                throw new IOException("The ball state has ball " + i + " of radius " + newRadius[i] + " and color "
+                        + newColorIndex[i] + " out of a palette of " + paletteSize);
+            }
+        }
+        // Balls are appended to the order by index, so the sorted balls are a permutation of the first ones
+        boolean[] seen = new boolean[sorted];
+        for (int i = 0; i < sorted; i++) {
+            int ball = newSortedBalls[i];
+            if (ball < 0 || ball >= sorted || seen[ball]) {
+                throw new IOException("The ball state sorts ball " + ball + " twice or out of the first " + sorted);
+            }
+            seen[ball] = true;
+        }
+        this.ballCollisions = collisions;
+        this.x = newX;
+        this.y = newY;
+        this.previousX = newPreviousX;
+        this.previousY = newPreviousY;
+        this.dx = newDx;
+        this.dy = newDy;
+        this.radius = newRadius;
+        this.colorIndex = newColorIndex;
+        this.bounceLimit = newBounceLimit;
+        this.sortedBalls = newSortedBalls;
+        this.sortedCount = sorted;
+        // Allocated again on the next sort
+        this.sortedBand = null;
+        this.count = n;
+        this.palette.clear();
+        this.paletteIndex.clear();
+        this.palette.addAll(newPalette);
+        this.paletteIndex.putAll(newPaletteIndex);
+        this.maxRadius = 0;
+        for (int i = 0; i < n; i++) {
+            this.maxRadius = Math.max(this.maxRadius, this.radius[i]);
+        }
+        // Index the centers again
+        this.centers = new SpatialGrid(0, 0, this.gameEnvironment.getScreenWidth(),
+                this.gameEnvironment.getScreenHeight(), CENTER_CELL_SIZE);
+        this.centerCell = new int[capacity];
+        for (int i = 0; i < n; i++) {
+            this.centerCell[i] = this.centers.cellAt(this.x[i], this.y[i]);
+            this.centers.addToCell(this.centerCell[i], i);
+        }
+        // Sized again on first use
+        this.contactId = null;
+    }
+
+    /**
+     * Helper method to put the start of an array of doubles into a buffer in one bulk put.
+     *
+     * @param buffer The buffer
+     * @param values The array
+     * @param n      The number of values to put
+     */
+    private static void putDoubles(ByteBuffer buffer, double[] values, int n) {
+        buffer.asDoubleBuffer().put(values, 0, n);
+        buffer.position(buffer.position() + n * Double.BYTES);
+    }
+
+    /**
+     * Helper method to put the start of an array of ints into a buffer in one bulk put.
+     *
+     * @param buffer The buffer
+     * @param values The array
+     * @param n      The number of values to put
+     */
+    private static void putInts(ByteBuffer buffer, int[] values, int n) {
+        buffer.asIntBuffer().put(values, 0, n);
+        buffer.position(buffer.position() + n * Integer.BYTES);
+    }
+
+    /**
+     * Helper method to get doubles from a buffer in one bulk get.
+     *
+     * @param buffer   The buffer
+     * @param capacity The length of the new array
+     * @param n        The number of values to get
+     * @return The new array
+     */
+    private static double[] getDoubles(ByteBuffer buffer, int capacity, int n) {
+        double[] values = new double[capacity];
+        buffer.asDoubleBuffer().get(values, 0, n);
+        buffer.position(buffer.position() + n * Double.BYTES);
+        return values;
+    }
+
+    /**
+     * Helper method to get ints from a buffer in one bulk get.
+     *
+     * @param buffer   The buffer
+     * @param capacity The length of the new array
+     * @param n        The number of values to get
+     * @return The new array
+     */
+    private static int[] getInts(ByteBuffer buffer, int capacity, int n) {
+        int[] values = new int[capacity];
+        buffer.asIntBuffer().get(values, 0, n);
+        buffer.position(buffer.position() + n * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Get the game environment of the balls.
+     *
+     * @return The game environment
+     */
+    public GameEnvironment getGameEnvironment() {
+        return this.gameEnvironment;
+    }
+
+    /**
+     * Get the x-coordinate of the center of a ball.
+     *
+     * @param i The index of the ball
+     * @return The x-coordinate of the center
+     */
+    public double getX(int i) {
+        return this.x[i];
+    }
+
+    /**
+     * Get the y-coordinate of the center of a ball.
+     *
+     * @param i The index of the ball
+     * @return The y-coordinate of the center
+     */
+    public double getY(int i) {
+        return this.y[i];
+    }
+
+    /**
+     * Get the x-component of the velocity of a ball.
+     *
+     * @param i The index of the ball
+     * @return The change in x-coordinate per step
+     */
+    public double getDx(int i) {
+        return this.dx[i];
+    }
+
+    /**
+     * Get the y-component of the velocity of a ball.
+     *
+     * @param i The index of the ball
+     * @return The change in y-coordinate per step
+     */
+    public double getDy(int i) {
+        return this.dy[i];
+    }
+
+    /**
+     * Set the velocity of a ball.
+     *
+     * @param i  The index of the ball
+     * @param vx The change in x-coordinate per step
+     * @param vy The change in y-coordinate per step
+     */
+    public void setVelocity(int i, double vx, double vy) {
+        this.dx[i] = vx;
+        this.dy[i] = vy;
+    }
+
+    /**
+     * Get the radius of a ball.
+     *
+     * @param i The index of the ball
+     * @return The radius
+     */
+    public int getRadius(int i) {
+        return this.radius[i];
+    }
+
+    /**
+     * Get the color of a ball.
+     *
+     * @param i The index of the ball
+     * @return The color
+     */
+    public Color getColor(int i) {
+        return this.palette.get(this.colorIndex[i]);
+    }
+
+    /**
+     * Get the bounce limit of a ball.
+     *
+     * @param i The index of the ball
+     * @return The maximum number of bounces per step, 0 for a single slight move
+     */
+    public int getBounceLimit(int i) {
+        return this.bounceLimit[i];
+    }
+
+    /**
+     * Set the bounce limit of a ball. See {@link Ball#setBounceLimit(int)}.
+     *
+     * @param i     The index of the ball
+     * @param limit The maximum number of bounces per step, 0 for a single slight move
+     */
+    public void setBounceLimit(int i, int limit) {
+        this.bounceLimit[i] = limit;
+    }
+
+    /**
+     * Set the pool the balls find their collisions on. With a pool, each step first finds the
+     * collision of every ball in parallel and then applies them in index order; without one, the
+     * balls are stepped one after another. Both give the same result.
+     *
+     * @param forkJoinPool The pool, or null to step serially
+     */
+    public void setPool(ForkJoinPool forkJoinPool) {
+        this.pool = forkJoinPool;
+        if (forkJoinPool != null && this.queries == null) {
+            this.queries = ThreadLocal.withInitial(this.gameEnvironment::newQuery);
+        }
+    }
+
+    /**
+     * Get the pool the balls find their collisions on.
+     *
+     * @return The pool, or null if the balls are stepped serially
+     */
+    public ForkJoinPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * Set whether the balls collide elastically with each other, in addition to the collidables.
+     * The balls are tested against each other after all of them moved, so two balls that move
+     * more than the sum of their radii in one step towards each other may pass through.
+     *
+     * @param enabled True to make the balls collide with each other
+     */
+    public void setBallCollisions(boolean enabled) {
+        this.ballCollisions = enabled;
+    }
+
+    /**
+     * Get whether the balls collide with each other.
+     *
+     * @return True if the balls collide with each other
+     */
+    public boolean hasBallCollisions() {
+        return this.ballCollisions;
+    }
+
+    /**
+     * Set the bus every hit of a ball on a collidable is recorded on. Adding the system to a world
+     * sets the world's bus.
+     *
+     * @param bus The bus, or null to record no hits
+     */
+    public void setHitEventBus(HitEventBus bus) {
+        this.hitEvents = bus;
+    }
+
+    /**
+     * Get the bus the hits of the balls are recorded on.
+     *
+     * @return The bus, or null if no hits are recorded
+     */
+    public HitEventBus getHitEventBus() {
+        return this.hitEvents;
+    }
+
+    /**
+     * Move every ball one step.
+     */
+    @Override
+    public void timePassed() {
+        // Keep the current centers for drawing between this step and the next
+        System.arraycopy(this.x, 0, this.previousX, 0, this.count);
+        System.arraycopy(this.y, 0, this.previousY, 0, this.count);
+        if (this.pool != null && this.count > BATCH_SIZE) {
+            stepInParallel();
+        } else {
+            for (int i = 0; i < this.count; i++) {
+                step(i);
+            }
+        }
+        if (this.ballCollisions) {
+            collideBalls();
+        }
+    }
+
+    /**
+     * Helper method to bounce every pair of overlapping balls that move towards each other off
+     * each other, using sweep and prune along x within bands.
+     */
+    private void collideBalls() {
+        sortBalls();
+        int[] band = this.sortedBand;
+        double[] left = this.sortedLeft;
+        double widest = 2.0 * this.maxRadius;
+        int bandStart = 0;
+        while (bandStart < this.sortedCount) {
+            // Find the balls of this band and of the band below it
+            int bandEnd = bandStart + 1;
+            while (bandEnd < this.sortedCount && band[bandEnd] == band[bandStart]) {
+                bandEnd++;
+            }
+            int belowEnd = bandEnd;
+            while (belowEnd < this.sortedCount && band[belowEnd] == band[bandStart] + 1) {
+                belowEnd++;
+            }
+            int below = bandEnd;
+            for (int p = bandStart; p < bandEnd; p++) {
+                double right = this.sortedX[p] + this.sortedRadius[p];
+                // Only the balls that start before this one ends along x can overlap it
+                for (int q = p + 1; q < bandEnd && left[q] <= right; q++) {
+                    testPair(p, q);
+                }
+                // Skip the balls of the band below that end before this one starts
+                while (below < belowEnd && left[below] + widest < left[p]) {
+                    below++;
+                }
+                for (int q = below; q < belowEnd && left[q] <= right; q++) {
+                    testPair(p, q);
+                }
+            }
+            bandStart = bandEnd;
+        }
+    }
+
+    /**
+     * Helper method to test two balls of the sorted order exactly as circles, and bounce them off
+     * each other if they overlap.
+     *
+     * @param p The position of the first ball in the sorted order
+     * @param q The position of the second ball in the sorted order
+     */
+    private void testPair(int p, int q) {
+        double reach = this.sortedRadius[p] + this.sortedRadius[q];
+        double offsetY = this.sortedY[q] - this.sortedY[p];
+        if (offsetY > reach || offsetY < -reach) {
+            return;
+        }
+        double offsetX = this.sortedX[q] - this.sortedX[p];
+        double distanceSquared = offsetX * offsetX + offsetY * offsetY;
+        if (distanceSquared < reach * reach && distanceSquared > 0) {
+            collidePair(this.sortedBalls[p], this.sortedBalls[q], offsetX, offsetY, distanceSquared);
+        }
+    }
+
+    /**
+     * Helper method to repair the order of the balls by band and by the left side of their box.
+     * Balls added since the last step are appended first. The order changes little between steps,
+     * so insertion sort does close to linear work. The centers and radii are then copied in sorted
+     * order, so the sweep reads memory in sequence.
+     */
+    private void sortBalls() {
+        if (this.sortedBalls == null || this.sortedBalls.length < this.count || this.sortedBand == null) {
+            int capacity = this.x.length;
+            this.sortedBalls = this.sortedBalls == null ? new int[capacity] : Arrays.copyOf(this.sortedBalls, capacity);
+            this.sortedBand = new int[capacity];
+            this.sortedLeft = new double[capacity];
+            this.sortedX = new double[capacity];
+            this.sortedY = new double[capacity];
+            this.sortedRadius = new double[capacity];
+        }
+        int[] order = this.sortedBalls;
+        int[] band = this.sortedBand;
+        double[] left = this.sortedLeft;
+        while (this.sortedCount < this.count) {
+            order[this.sortedCount] = this.sortedCount;
+            this.sortedCount++;
+        }
+        // Two balls can only overlap if their centers are less than the widest ball apart
+        double bandHeight = Math.max(2.0 * this.maxRadius, 1);
+        for (int p = 0; p < this.sortedCount; p++) {
+            band[p] = (int) Math.floor(this.y[order[p]] / bandHeight);
+            left[p] = this.x[order[p]] - this.radius[order[p]];
+        }
+        for (int p = 1; p < this.sortedCount; p++) {
+            int ball = order[p];
+            int ballBand = band[p];
+            double key = left[p];
+            int q = p - 1;
+            while (q >= 0 && (band[q] > ballBand || (band[q] == ballBand && left[q] > key))) {
+                order[q + 1] = order[q];
+                band[q + 1] = band[q];
+                left[q + 1] = left[q];
+                q--;
+            }
+            order[q + 1] = ball;
+            band[q + 1] = ballBand;
+            left[q + 1] = key;
+        }
+        for (int p = 0; p < this.sortedCount; p++) {
+            this.sortedX[p] = this.x[order[p]];
+            this.sortedY[p] = this.y[order[p]];
+            this.sortedRadius[p] = this.radius[order[p]];
+        }
+    }
+
+    /**
+     * Helper method to bounce two overlapping balls off each other if they move towards each other.
+     * The balls have masses proportional to their areas, and both momentum and kinetic energy are
+     * kept: only the velocity components along the line between the centers change.
+     *
+     * @param i               The index of the first ball
+     * @param j               The index of the second ball
+     * @param offsetX         The x distance from the center of the first ball to the second
+     * @param offsetY         The y distance from the center of the first ball to the second
+     * @param distanceSquared The squared distance between the centers
+     */
+    private void collidePair(int i, int j, double offsetX, double offsetY, double distanceSquared) {
+        double distance = Math.sqrt(distanceSquared);
+        double normalX = offsetX / distance;
+        double normalY = offsetY / distance;
+        // The speed at which the second ball approaches the first along the normal
+        double approach = (this.dx[j] - this.dx[i]) * normalX + (this.dy[j] - this.dy[i]) * normalY;
+        if (approach >= 0) {
+            return;
+        }
+        double massI = (double) this.radius[i] * this.radius[i];
+        double massJ = (double) this.radius[j] * this.radius[j];
+        // The change in velocity of each ball along the normal
+        double changeI = 2 * massJ / (massI + massJ) * approach;
+        double changeJ = 2 * massI / (massI + massJ) * approach;
+        this.dx[i] += changeI * normalX;
+        this.dy[i] += changeI * normalY;
+        this.dx[j] -= changeJ * normalX;
+        this.dy[j] -= changeJ * normalY;
+    }
+
+    /**
+     * Helper method to move every ball one step in two phases.
+     * The first phase finds the first collision of every ball on the pool. The second applies them
+     * in index order, exactly as {@link #step(int)} would, and continues any further bounces
+     * serially. A hit callback that adds or moves a collidable makes the remaining results stale,
+     * so from then on the balls are stepped serially.
+     */
+    private void stepInParallel() {
+        if (this.contactId == null || this.contactId.length < this.count) {
+            this.contactId = new int[this.x.length];
+            this.contactTime = new double[this.x.length];
+            this.contactNormalX = new double[this.x.length];
+            this.contactNormalY = new double[this.x.length];
+        }
+        // Phase one: find the collisions while nothing changes the environment
+        this.gameEnvironment.refreshMovingCollidables();
+        int version = this.gameEnvironment.getVersion();
+        this.pool.invoke(new SweepTask(0, this.count));
+        // Phase two: apply them in order
+        for (int i = 0; i < this.count; i++) {
+            if (this.gameEnvironment.getVersion() != version) {
+                step(i);
+            } else if (this.contactId[i] < 0) {
+                this.x[i] += this.dx[i];
+                this.y[i] += this.dy[i];
+                updateCell(i);
+            } else {
+                collide(i, this.contactId[i], this.contactTime[i], this.contactNormalX[i], this.contactNormalY[i]);
+                updateCell(i);
+                // Count the moves the callback made, like the next query would
+                this.gameEnvironment.refreshMovingCollidables();
+            }
+        }
+    }
+
+    /**
+     * A task finding the first collision of a range of balls, splitting it among the pool.
+     */
+    private class SweepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L; // Version of the serialized form
+        private final int from; // The index of the first ball
+        private final int to; // The index after the last ball
+
+        /**
+         * Constructor to create a task for a range of balls.
+         *
+         * @param from The index of the first ball
+         * @param to   The index after the last ball
+         */
+        SweepTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > BATCH_SIZE) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new SweepTask(this.from, middle), new SweepTask(middle, this.to));
+                return;
+            }
+            CollisionQuery query = queries.get();
+            for (int i = this.from; i < this.to; i++) {
+                if (query.find(x[i], y[i], dx[i], dy[i], radius[i])) {
+                    contactId[i] = query.lastCollisionId();
+                    contactTime[i] = query.lastCollisionTime();
+                    contactNormalX[i] = query.lastCollisionNormalX();
+                    contactNormalY[i] = query.lastCollisionNormalY();
+                } else {
+                    contactId[i] = -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Draw every ball, changing the drawing color only when it differs from the previous ball's.
+     *
+     * @param surface The DrawSurface on which to draw the balls
+     */
+    @Override
+    public void drawOn(DrawSurface surface) {
+        int currentColor = -1;
+        for (int i = 0; i < this.count; i++) {
+            if (this.colorIndex[i] != currentColor) {
+                currentColor = this.colorIndex[i];
+                surface.setColor(this.palette.get(currentColor));
+            }
+            surface.fillCircle((int) this.x[i], (int) this.y[i], this.radius[i]);
+        }
+    }
+
+    /**
+     * Draw every ball part of the way between its center before and after the last step.
+     *
+     * @param surface The DrawSurface on which to draw the balls
+     * @param alpha   The fraction of the way from the previous center (0) to the current one (1)
+     */
+    @Override
+    public void drawOn(DrawSurface surface, double alpha) {
+        int currentColor = -1;
+        for (int i = 0; i < this.count; i++) {
+            if (this.colorIndex[i] != currentColor) {
+                currentColor = this.colorIndex[i];
+                surface.setColor(this.palette.get(currentColor));
+            }
+            double drawX = this.previousX[i] + (this.x[i] - this.previousX[i]) * alpha;
+            double drawY = this.previousY[i] + (this.y[i] - this.previousY[i]) * alpha;
+            surface.fillCircle((int) drawX, (int) drawY, this.radius[i]);
+        }
+    }
+
+    /**
+     * Draw a single ball.
+     *
+     * @param i       The index of the ball
+     * @param surface The DrawSurface on which to draw the ball
+     */
+    public void drawBall(int i, DrawSurface surface) {
+        surface.setColor(this.palette.get(this.colorIndex[i]));
+        surface.fillCircle((int) this.x[i], (int) this.y[i], this.radius[i]);
+    }
+
+    /**
+     * Move a single ball one step according to its velocity, handling collisions if they occur.
+     * See {@link Ball#moveOneStep()}.
+     *
+     * @param i The index of the ball
+     */
+    public void step(int i) {
+        GameEnvironment environment = this.gameEnvironment;
+        if (environment.sweepCircle(this.x[i], this.y[i], this.dx[i], this.dy[i], this.radius[i])) {
+            collide(i, environment.lastCollisionId(), environment.lastCollisionTime(),
+                    environment.lastCollisionNormalX(), environment.lastCollisionNormalY());
+        } else {
+            // Move the ball to the next position
+            this.x[i] += this.dx[i];
+            this.y[i] += this.dy[i];
+        }
+        updateCell(i);
+    }
+
+    /**
+     * Helper method to move a ball to the cell of its center in the grid of the centers, if it left
+     * its cell.
+     *
+     * @param i The index of the ball
+     */
+    private void updateCell(int i) {
+        int cell = this.centers.cellAt(this.x[i], this.y[i]);
+        if (cell != this.centerCell[i]) {
+            this.centers.removeFromCell(this.centerCell[i], i);
+            this.centers.addToCell(cell, i);
+            this.centerCell[i] = cell;
+        }
+    }
+
+    /**
+     * Check whether the center of any ball lies in a rectangle, as {@link Rectangle#contains(Point)}
+     * sees it. The centers are kept in a grid, so only the balls in the cells the rectangle overlaps
+     * are tested, however many balls there are elsewhere.
+     *
+     * @param rect The rectangle
+     * @return True if a center lies in the rectangle
+     */
+    public boolean anyCenterIn(Rectangle rect) {
+        SpatialGrid grid = this.centers;
+        // Points on the edges count, so the cells just beyond the edges are searched too
+        double margin = 2 * Line.EPSILON;
+        double left = rect.getUpperLeft().getX();
+        double top = rect.getUpperLeft().getY();
+        int lastColumn = grid.column(left + rect.getWidth() + margin);
+        int lastRow = grid.row(top + rect.getHeight() + margin);
+        for (int r = grid.row(top - margin); r <= lastRow; r++) {
+            for (int c = grid.column(left - margin); c <= lastColumn; c++) {
+                int[] ids = grid.cellIds(c, r);
+                int n = grid.cellCount(c, r);
+                for (int k = 0; k < n; k++) {
+                    if (rect.contains(this.x[ids[k]], this.y[ids[k]])) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper method to finish the step of a ball whose trajectory for the whole step reaches a
+     * collidable.
+     *
+     * @param i       The index of the ball
+     * @param id      The id of the collidable in the game environment
+     * @param time    The time of impact
+     * @param normalX The x component of the contact normal
+     * @param normalY The y component of the contact normal
+     */
+    private void collide(int i, int id, double time, double normalX, double normalY) {
+        double startX = this.x[i];
+        double startY = this.y[i];
+        double moveX = this.dx[i];
+        double moveY = this.dy[i];
+        Collidable hitObject = this.gameEnvironment.getCollidable(id);
+        Point contact = hitObject.getCollisionRectangle().closestBoundaryPoint(
+                startX + time * moveX, startY + time * moveY);
+        if (this.bounceLimit[i] == 0) {
+            // Move the ball slightly towards the position where it touches the object
+            this.x[i] = startX + moveX * time * MOVE_SLIGHTLY;
+            this.y[i] = startY + moveY * time * MOVE_SLIGHTLY;
+            bounce(i, hitObject, contact);
+            return;
+        }
+        // Move the ball to where it touches the object, keeping a tiny gap from its surface
+        this.x[i] = startX + moveX * time + normalX * SKIN;
+        this.y[i] = startY + moveY * time + normalY * SKIN;
+        bounce(i, hitObject, contact);
+        // Only the distance after the collision is left
+        continueBouncing(i, 1 - time);
+    }
+
+    /**
+     * Helper method to move a ball along the rest of the travel distance of its step after the first
+     * bounce, bouncing off each object in the order it is reached, until the distance is used up or
+     * the bounce limit is reached.
+     *
+     * @param i         The index of the ball
+     * @param remaining The fraction of the step's travel distance that is still left
+     */
+    private void continueBouncing(int i, double remaining) {
+        for (int bounces = 1; bounces < this.bounceLimit[i]; bounces++) {
+            double startX = this.x[i];
+            double startY = this.y[i];
+            double moveX = this.dx[i] * remaining;
+            double moveY = this.dy[i] * remaining;
+            if (!this.gameEnvironment.sweepCircle(startX, startY, moveX, moveY, this.radius[i])) {
+                // Move the ball to the end of the step
+                this.x[i] = startX + moveX;
+                this.y[i] = startY + moveY;
+                return;
+            }
+            // Move the ball to where it touches the object, keeping a tiny gap from its surface
+            double time = this.gameEnvironment.lastCollisionTime();
+            this.x[i] = startX + moveX * time + this.gameEnvironment.lastCollisionNormalX() * SKIN;
+            this.y[i] = startY + moveY * time + this.gameEnvironment.lastCollisionNormalY() * SKIN;
+            bounce(i, this.gameEnvironment.lastCollisionObject(), this.gameEnvironment.lastCollisionPoint());
+            // Only the distance after the collision is left
+            remaining *= 1 - time;
+        }
+    }
+
+    /**
+     * Helper method to notify the object of a collision and take the new velocity it returns.
+     * The hit is also recorded on the bus, if there is one.
+     *
+     * @param i         The index of the ball
+     * @param hitObject The object that was hit
+     * @param contact   The point where the ball touches the object
+     */
+    private void bounce(int i, Collidable hitObject, Point contact) {
+        if (this.hitEvents != null) {
+            this.hitEvents.record(hitObject, this, i, contact.getX(), contact.getY());
+        }
+        Velocity velocity = hitObject.hit(contact, new Velocity(this.dx[i], this.dy[i]));
+        this.dx[i] = velocity.getDx();
+        this.dy[i] = velocity.getDy();
+    }
+
+    /**
+     * Add the ball system to the game. Adding it again has no effect.
+     *
+     * @param g The game to add the system to
+     */
+    public void addToGame(Game g) {
+        addToWorld(g.getWorld());
+    }
+
+    /**
+     * Add the ball system to a world, recording its hits on the world's bus. Adding it again has no
+     * effect.
+     *
+     * @param w The world to add the system to
+     */
+    public void addToWorld(World w) {
+        if (this.world != w) {
+            this.world = w;
+            this.hitEvents = w.getHitEvents();
+            w.addSprite(this);
+        }
+    }
+}
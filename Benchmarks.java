@@ -0,0 +1,422 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A small benchmark suite for the geometry and collision hot paths.
+ * Each benchmark is warmed up, then timed over several iterations, and reports the time per
+ * operation and the bytes allocated per operation by the benchmark thread, which together give
+ * the allocation rate. Collision benchmarks run on the block layout of Game.initialize, the 7x7
+ * grid of Main, a screen densely filled with small blocks, and synthetic 10k and 100k block maps,
+ * with several ball counts, and blocks are removed and added again. Large ball counts
+ * are also stepped in parallel on the common fork/join pool, and with collisions between balls.
+ * Layouts small enough to fit an off-screen image are also drawn, block by block and through the
+ * cached background layer of SpriteCollection.
+ * Run with "java Benchmarks [name-filter]"; only benchmarks whose name contains the filter run.
+ */
+public class Benchmarks {
+    private static final long WARMUP_NANOS = 1_000_000_000L; // Warm-up time per benchmark
+    private static final long ITERATION_NANOS = 500_000_000L; // Time per measured iteration
+    private static final int ITERATIONS = 5; // Number of measured iterations
+    private static final int SAMPLES = 1024; // Number of precomputed inputs cycled through
+    private static final String[] LAYOUTS = {"game", "grid7x7", "dense", "synthetic10k", "synthetic100k"};
+    private static final int[] BALL_COUNTS = {1, 100, 10_000};
+    private static final int MAX_SURFACE_SIZE = 2048; // Largest world drawn by the render benchmarks
+    private static final int KERNEL_BATCH = 64; // Number of rectangles tested per call of the batch benchmarks
+    private static volatile Object sink; // Consumes results so they are not optimized away
+
+    /**
+     * An operation to benchmark.
+     */
+    private interface Operation {
+        /**
+         * Run the operation once.
+         *
+         * @param i The number of the call, used to pick an input
+         * @return A result to consume
+         */
+        Object run(int i);
+    }
+
+    /**
+     * A block layout together with free positions for balls.
+     */
+    private static class Layout {
+        private final GameEnvironment environment; // The environment holding the blocks
+        private final List<Block> blocks; // The blocks
+        private final List<Long> handles; // The handles of the blocks in the environment
+        private final Point[] freePoints; // Positions at least a ball radius away from any block
+
+        /**
+         * Constructor to create an empty layout.
+         *
+         * @param width      The width of the world
+         * @param height     The height of the world
+         * @param freePoints Positions at least a ball radius away from any block
+         */
+        Layout(int width, int height, Point[] freePoints) {
+            this.environment = new GameEnvironment(width, height);
+            this.blocks = new ArrayList<>();
+            this.handles = new ArrayList<>();
+            this.freePoints = freePoints;
+        }
+
+        /**
+         * Add a block to the layout.
+         *
+         * @param x      The x-coordinate of the upper-left corner
+         * @param y      The y-coordinate of the upper-left corner
+         * @param width  The width of the block
+         * @param height The height of the block
+         * @param color  The color of the block
+         */
+        void addBlock(double x, double y, double width, double height, Color color) {
+            Block block = new Block(new Rectangle(new Point(x, y), width, height), color);
+            this.handles.add(this.environment.addCollidable(block));
+            this.blocks.add(block);
+        }
+
+        /**
+         * Create a sprite collection holding the blocks and a ball system.
+         *
+         * @param balls The ball system
+         * @return The sprite collection
+         */
+        SpriteCollection spritesWith(BallSystem balls) {
+            SpriteCollection sprites = new SpriteCollection();
+            for (Block block : this.blocks) {
+                sprites.addSprite(block);
+            }
+            sprites.addSprite(balls);
+            return sprites;
+        }
+    }
+
+    /**
+     * Run the benchmarks.
+     *
+     * @param args An optional filter on benchmark names
+     */
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        System.out.printf("%-68s %14s %12s %12s%n", "benchmark", "ns/op", "B/op", "MB/s alloc");
+
+        // Geometry primitives
+        Random random = new Random(1);
+        Line[] lines = new Line[SAMPLES];
+        Line[] others = new Line[SAMPLES];
+        Rectangle[] rects = new Rectangle[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            lines[i] = randomLine(random, 100, 30);
+            others[i] = randomLine(random, 100, 30);
+            rects[i] = new Rectangle(new Point(random.nextDouble() * 80, random.nextDouble() * 80),
+                    5 + random.nextDouble() * 40, 5 + random.nextDouble() * 20);
+        }
+        run(filter, "Line.intersectionWith", i -> lines[i % SAMPLES].intersectionWith(others[i % SAMPLES]));
+        run(filter, "Rectangle.intersectionPoints", i -> rects[i % SAMPLES].intersectionPoints(lines[i % SAMPLES]));
+        run(filter, "Line.closestIntersectionToStartOfLine",
+                i -> lines[i % SAMPLES].closestIntersectionToStartOfLine(rects[i % SAMPLES]));
+
+        // A swept circle against a batch of rectangles, exactly and through the batch kernel
+        StaticRectangles packed = new StaticRectangles(SAMPLES);
+        int[] batch = new int[KERNEL_BATCH];
+        double[] entries = new double[KERNEL_BATCH];
+        for (int i = 0; i < SAMPLES; i++) {
+            packed.set(i, rects[i]);
+        }
+        for (int k = 0; k < KERNEL_BATCH; k++) {
+            batch[k] = k * 7 % SAMPLES;
+        }
+        RayHit hit = new RayHit();
+        run(filter, "Rectangle.sweptCircleHit [batch=" + KERNEL_BATCH + "]", i -> {
+            Line line = lines[i % SAMPLES];
+            int hits = 0;
+            for (int k = 0; k < KERNEL_BATCH; k++) {
+                if (rects[batch[k]].sweptCircleHit(line.startX(), line.startY(),
+                        line.endX() - line.startX(), line.endY() - line.startY(), 5, hit)) {
+                    hits++;
+                }
+            }
+            return hits;
+        });
+        run(filter, "StaticRectangles.firstEntry [batch=" + KERNEL_BATCH + "]", i -> {
+            Line line = lines[i % SAMPLES];
+            return packed.firstEntry(batch, KERNEL_BATCH, line.startX(), line.startY(),
+                    line.endX() - line.startX(), line.endY() - line.startY(), 5, entries);
+        });
+
+        // Collision queries and ball steps on each layout
+        for (String name : LAYOUTS) {
+            Layout layout = createLayout(name);
+            Line[] trajectories = new Line[SAMPLES];
+            for (int i = 0; i < SAMPLES; i++) {
+                Point p = layout.freePoints[random.nextInt(layout.freePoints.length)];
+                Velocity v = Velocity.fromAngleAndSpeed(random.nextDouble() * 360, 7);
+                trajectories[i] = new Line(p.getX(), p.getY(), p.getX() + v.getDx(), p.getY() + v.getDy());
+            }
+            GameEnvironment environment = layout.environment;
+            run(filter, "GameEnvironment.getClosestCollision [" + name + "]",
+                    i -> environment.getClosestCollision(trajectories[i % SAMPLES]));
+            run(filter, "GameEnvironment.getClosestCollision(radius) [" + name + "]",
+                    i -> environment.getClosestCollision(trajectories[i % SAMPLES], 5));
+            long[] handles = layout.handles.stream().mapToLong(Long::longValue).toArray();
+            run(filter, "GameEnvironment remove and add a block [" + name + "]", i -> {
+                int k = i % handles.length;
+                environment.removeCollidable(handles[k]);
+                handles[k] = environment.addCollidable(layout.blocks.get(k));
+                return environment;
+            });
+
+            for (int balls : BALL_COUNTS) {
+                BallSystem system = createBalls(layout, balls, random);
+                SpriteCollection sprites = layout.spritesWith(system);
+                run(filter, "Ball.moveOneStep [" + name + ", balls=" + balls + "]", i -> {
+                    system.step(i % balls);
+                    return system;
+                });
+                run(filter, "SpriteCollection.notifyAllTimePassed [" + name + ", balls=" + balls + "]", i -> {
+                    sprites.notifyAllTimePassed();
+                    return sprites;
+                });
+                if (balls > 1000) {
+                    system.setPool(ForkJoinPool.commonPool());
+                    run(filter, "SpriteCollection.notifyAllTimePassed parallel [" + name + ", balls=" + balls + "]",
+                            i -> {
+                                sprites.notifyAllTimePassed();
+                                return sprites;
+                            });
+                    system.setPool(null);
+                    system.setBallCollisions(true);
+                    run(filter, "SpriteCollection.notifyAllTimePassed ball collisions [" + name + ", balls=" + balls
+                            + "]", i -> {
+                                sprites.notifyAllTimePassed();
+                                return sprites;
+                            });
+                    system.setBallCollisions(false);
+                }
+            }
+
+            // Drawing, on an off-screen image standing in for the window
+            int width = environment.getScreenWidth();
+            int height = environment.getScreenHeight();
+            if (width <= MAX_SURFACE_SIZE && height <= MAX_SURFACE_SIZE) {
+                ImageSurface surface = new ImageSurface(width, height, Color.WHITE);
+                SpriteCollection scene = layout.spritesWith(createBalls(layout, 100, random));
+                run(filter, "Block.drawOn every block [" + name + "]", i -> {
+                    for (Block block : layout.blocks) {
+                        block.drawOn(surface);
+                    }
+                    return surface;
+                });
+                run(filter, "SpriteCollection.drawAllOn [" + name + ", balls=100]", i -> {
+                    scene.drawAllOn(surface);
+                    return surface;
+                });
+            }
+        }
+    }
+
+    /**
+     * Helper method to create a random line.
+     *
+     * @param random The random generator
+     * @param area   The size of the square area holding the start point
+     * @param length The maximal length of the line
+     * @return The line
+     */
+    private static Line randomLine(Random random, double area, double length) {
+        double x = random.nextDouble() * area;
+        double y = random.nextDouble() * area;
+        Velocity v = Velocity.fromAngleAndSpeed(random.nextDouble() * 360, random.nextDouble() * length);
+        return new Line(x, y, x + v.getDx(), y + v.getDy());
+    }
+
+    /**
+     * Helper method to build a named block layout.
+     *
+     * @param name The name of the layout
+     * @return The layout
+     */
+    private static Layout createLayout(String name) {
+        switch (name) {
+            case "game":
+                return createGameLayout();
+            case "grid7x7":
+                return createGridLayout(7);
+            case "dense":
+                return createDenseLayout();
+            case "synthetic10k":
+                return createGridLayout(100);
+            default:
+                return createGridLayout(317);
+        }
+    }
+
+    /**
+     * Helper method to build the border and six rows of blocks of Game.initialize.
+     *
+     * @return The layout
+     */
+    private static Layout createGameLayout() {
+        Point[] free = new Point[600];
+        for (int i = 0; i < free.length; i++) {
+            free[i] = new Point(30 + (i % 30) * 25, 300 + (i / 30) * 12);
+        }
+        Layout layout = new Layout(800, 600, free);
+        Color[] colors = {Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN, Color.BLUE, Color.MAGENTA};
+        for (int row = 0; row < 6; row++) {
+            int numBlocks = 12 - row;
+            for (int col = 0; col < numBlocks; col++) {
+                layout.addBlock(800 - 10 - (numBlocks - col) * 55, 120 + row * 23, 55, 23, colors[row]);
+            }
+        }
+        addBorders(layout, 800, 600);
+        return layout;
+    }
+
+    /**
+     * Helper method to build a square grid of 20x20 blocks with 30 pixel gaps, like Main.
+     *
+     * @param side The number of blocks per row and column
+     * @return The layout
+     */
+    private static Layout createGridLayout(int side) {
+        int size = 100 + side * 50;
+        Point[] free = new Point[side * side];
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                free[i * side + j] = new Point(50 + i * 50 + 35, 50 + j * 50 + 35);
+            }
+        }
+        Layout layout = new Layout(size, size, free);
+        addBorders(layout, size, size);
+        for (int i = 0; i < side; i++) {
+            for (int j = 0; j < side; j++) {
+                layout.addBlock(50 + i * 50, 50 + j * 50, 20, 20, Color.WHITE);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Helper method to fill an 800x600 screen with 8x8 blocks every 20 pixels.
+     *
+     * @return The layout
+     */
+    private static Layout createDenseLayout() {
+        int columns = 38;
+        int rows = 28;
+        Point[] free = new Point[columns * rows];
+        for (int i = 0; i < columns; i++) {
+            for (int j = 0; j < rows; j++) {
+                free[i * rows + j] = new Point(34 + i * 20, 34 + j * 20);
+            }
+        }
+        Layout layout = new Layout(800, 600, free);
+        addBorders(layout, 800, 600);
+        for (int i = 0; i < columns; i++) {
+            for (int j = 0; j < rows; j++) {
+                layout.addBlock(20 + i * 20, 20 + j * 20, 8, 8, Color.WHITE);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Helper method to add the four 10 pixel borders around a world.
+     *
+     * @param layout The layout
+     * @param width  The width of the world
+     * @param height The height of the world
+     */
+    private static void addBorders(Layout layout, int width, int height) {
+        layout.addBlock(0, 0, width, 10, Color.BLACK);
+        layout.addBlock(0, height - 10, width, 10, Color.BLACK);
+        layout.addBlock(0, 10, 10, height - 20, Color.BLACK);
+        layout.addBlock(width - 10, 10, 10, height - 20, Color.BLACK);
+    }
+
+    /**
+     * Helper method to create balls at free positions of a layout.
+     *
+     * @param layout The layout
+     * @param count  The number of balls
+     * @param random The random generator
+     * @return The ball system holding the balls
+     */
+    private static BallSystem createBalls(Layout layout, int count, Random random) {
+        BallSystem system = new BallSystem(layout.environment);
+        for (int i = 0; i < count; i++) {
+            Point p = layout.freePoints[random.nextInt(layout.freePoints.length)];
+            Ball ball = system.addBall(p, 5, Color.RED);
+            ball.setVelocity(Velocity.fromAngleAndSpeed(random.nextDouble() * 360, 7));
+        }
+        return system;
+    }
+
+    /**
+     * Helper method to warm up, measure and report a benchmark if it matches the filter.
+     *
+     * @param filter    The filter on benchmark names
+     * @param name      The name of the benchmark
+     * @param operation The operation to measure
+     */
+    private static void run(String filter, String name, Operation operation) {
+        if (!name.contains(filter)) {
+            return;
+        }
+        // Warm up until the compiler has settled
+        measure(operation, WARMUP_NANOS);
+        double bestNanos = Double.MAX_VALUE;
+        double bytes = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            double[] result = measure(operation, ITERATION_NANOS);
+            bestNanos = Math.min(bestNanos, result[0]);
+            bytes += result[1] / ITERATIONS;
+        }
+        double rate = bytes / bestNanos * 1e9 / (1024 * 1024);
+        System.out.printf("%-68s %14.1f %12.1f %12.1f%n", name, bestNanos, bytes, rate);
+    }
+
+    /**
+     * Helper method to call an operation repeatedly for a given time.
+     *
+     * @param operation The operation
+     * @param duration  The time to run for, in nanoseconds
+     * @return The nanoseconds per call and the bytes allocated per call
+     */
+    private static double[] measure(Operation operation, long duration) {
+        long calls = 0;
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            // Check the clock every batch of calls to keep its cost out of the measurement
+            for (int i = 0; i < 64; i++) {
+                sink = operation.run((int) (calls++ & Integer.MAX_VALUE));
+            }
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < duration);
+        long bytes = allocatedBytes() - bytesBefore;
+        return new double[] {(double) elapsed / calls, (double) bytes / calls};
+    }
+
+    /**
+     * Helper method to read the number of bytes allocated so far by the current thread.
+     *
+     * @return The allocated bytes, or 0 if the JVM does not report them
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
@@ -12,6 +12,10 @@ public class Block implements Collidable, Sprite {
     private final Rectangle collisionRectangle;
     // The color of the block
     private final Color color;
+    // The handle of the block in the environment of its world, or Handle.NONE
+    private long collidableHandle;
+    // The handle of the block in the sprites of its world, or Handle.NONE
+    private long spriteHandle;
 
     /**
      * Constructor to initialize the block.
@@ -24,6 +28,9 @@ public class Block implements Collidable, Sprite {
         this.collisionRectangle = collisionRectangle;
         // Initialize the color
         this.color = color;
+        // The block is in no world yet
+        this.collidableHandle = Handle.NONE;
+        this.spriteHandle = Handle.NONE;
     }
 
     /**
@@ -32,10 +39,69 @@ public class Block implements Collidable, Sprite {
      * @param game The game to add the block to
      */
     public void addToGame(Game game) {
+        // Add the block to the game's world
+        addToWorld(game.getWorld());
+    }
+
+    /**
+     * Add the block to a world.
+     *
+     * @param world The world to add the block to
+     */
+    public void addToWorld(World world) {
         // Add the block as a collidable object
-        game.addCollidable(this);
+        this.collidableHandle = world.addCollidable(this);
+        // Add the block as a sprite to be drawn
+        this.spriteHandle = world.addSprite(this);
+    }
+
+    /**
+     * Add the block to a world whose grid already holds the block's id, such as from the prebuilt
+     * index of a level file.
+     *
+     * @param world The world to add the block to
+     */
+    void addToWorldIndexed(World world) {
+        // Add the block as a collidable object, without bucketing it
+        this.collidableHandle = world.getEnvironment().addIndexedBlock(this);
         // Add the block as a sprite to be drawn
-        game.addSprite(this);
+        this.spriteHandle = world.addSprite(this);
+    }
+
+    /**
+     * Remove the block from the game.
+     *
+     * @param game The game to remove the block from
+     */
+    public void removeFromGame(Game game) {
+        // Remove the block from the game's world
+        removeFromWorld(game.getWorld());
+    }
+
+    /**
+     * Remove the block from the world it was added to. During a tick, the block stays until the
+     * tick ends.
+     *
+     * @param world The world to remove the block from
+     */
+    public void removeFromWorld(World world) {
+        // Remove the block from the collidable objects
+        world.removeCollidable(this.collidableHandle);
+        // Remove the block from the sprites to be drawn
+        world.removeSprite(this.spriteHandle);
+        // The handles are stale from now on
+        this.collidableHandle = Handle.NONE;
+        this.spriteHandle = Handle.NONE;
+    }
+
+    /**
+     * Get the color of the block.
+     *
+     * @return The color
+     */
+    public Color getColor() {
+        // Return the color
+        return this.color;
     }
 
     /**
@@ -66,6 +132,17 @@ public class Block implements Collidable, Sprite {
         );
     }
 
+    /**
+     * A block never moves or changes its color, so it is drawn into the cached background layer.
+     *
+     * @return True
+     */
+    @Override
+    public boolean isStatic() {
+        // The block always looks the same
+        return true;
+    }
+
     /**
      * Notify the block that a unit of time has passed.
      */
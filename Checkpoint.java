@@ -0,0 +1,240 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Saves a {@link World} to a compact binary checkpoint and restores it, through memory-mapped
+ * files. The balls are written with one bulk put per array straight from the arrays of the
+ * {@link BallSystem}, so saving and loading cost little more than copying memory.
+ * A checkpoint holds a header (magic number, format version, tick and world size), the paddle's
+ * rectangle, the rectangle and color of every block in id order, and the state of the balls. All
+ * values are little-endian. Collidables and sprites of other kinds are not saved.
+ * Files are written next to their destination and moved over it once complete, so a crash while
+ * saving leaves the previous checkpoint intact.
+ */
+public final class Checkpoint {
+    // Magic number at the start of a checkpoint, "BRKC"
+    private static final int MAGIC = 0x42524B43;
+    // Version of the format
+    private static final int VERSION = 1;
+    // Size of the header and the paddle, in bytes
+    private static final int HEADER_BYTES = 64;
+    // Size of a single block, in bytes: its rectangle and its color, padded to a multiple of 8
+    private static final int BLOCK_BYTES = 4 * Double.BYTES + 2 * Integer.BYTES;
+    // Largest width or height of a restored world, so a corrupt size cannot allocate a huge grid
+    private static final int MAX_SIDE = 16384;
+
+    /**
+     * Constructor hidden, since the class only has static methods.
+     */
+    private Checkpoint() {
+    }
+
+    /**
+     * Get the size of the checkpoint of a world.
+     *
+     * @param world The world
+     * @return The size in bytes
+     */
+    public static long sizeOf(World world) {
+        return HEADER_BYTES + (long) countBlocks(world.getEnvironment()) * BLOCK_BYTES
+                + world.getBallSystem().stateBytes();
+    }
+
+    /**
+     * Write the checkpoint of a world into a buffer, which must have {@link #sizeOf(World)} bytes
+     * remaining. The buffer is switched to little-endian order.
+     *
+     * @param world  The world
+     * @param buffer The buffer, written from its position on
+     */
+    public static void writeTo(World world, ByteBuffer buffer) {
+        GameEnvironment environment = world.getEnvironment();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int blocks = countBlocks(environment);
+        // Header
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(world.getTick());
+        buffer.putInt(environment.getScreenWidth());
+        buffer.putInt(environment.getScreenHeight());
+        buffer.putInt(blocks);
+        buffer.putInt(0);
+        // Paddle
+        putRectangle(buffer, world.getPaddle().getCollisionRectangle());
+        // Blocks, in id order so the restored blocks break ties in the same order
+        for (int id = 0; id < environment.getIdCount(); id++) {
+            Collidable c = environment.getCollidable(id);
+            if (c instanceof Block) {
+                putRectangle(buffer, c.getCollisionRectangle());
+                buffer.putInt(((Block) c).getColor().getRGB());
+                buffer.putInt(0);
+            }
+        }
+        // Balls
+        world.getBallSystem().saveState(buffer);
+    }
+
+    /**
+     * Create a world from a checkpoint in a buffer.
+     *
+     * @param buffer The buffer, read from its position on
+     * @return The restored world
+     * @throws IOException If the buffer does not hold a checkpoint, or the checkpoint is truncated
+     */
+    public static World readFrom(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES) {
+            throw new IOException("Not a checkpoint: " + buffer.remaining() + " bytes");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a checkpoint");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported checkpoint version " + version);
+        }
+        long tick = buffer.getLong();
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int blocks = buffer.getInt();
+        buffer.getInt();
+        if (width <= 0 || height <= 0 || width > MAX_SIDE || height > MAX_SIDE) {
+            throw new IOException("The checkpoint has an invalid world size " + width + "x" + height);
+        }
+        // The paddle's rectangle is the rest of the header
+        if (blocks < 0 || (long) blocks * BLOCK_BYTES > buffer.remaining() - 4 * Double.BYTES) {
+            throw new IOException("The checkpoint is truncated: " + blocks + " blocks need "
+                    + (long) blocks * BLOCK_BYTES + " bytes, " + (buffer.remaining() - 4 * Double.BYTES) + " left");
+        }
+        World world = new World(width, height);
+        world.setTick(tick);
+        world.getPaddle().setShape(getRectangle(buffer));
+        for (int i = 0; i < blocks; i++) {
+            Rectangle rect = getRectangle(buffer);
+            Color color = new Color(buffer.getInt(), true);
+            buffer.getInt();
+            new Block(rect, color).addToWorld(world);
+        }
+        BallSystem balls = world.getBallSystem();
+        balls.loadState(buffer);
+        if (balls.size() > 0) {
+            balls.addToWorld(world);
+        }
+        return world;
+    }
+
+    /**
+     * Save a world to a file through a memory-mapped buffer.
+     *
+     * @param world The world
+     * @param file  The file
+     * @throws IOException If the file cannot be written
+     */
+    public static void save(World world, Path file) throws IOException {
+        Path temporary = temporaryFor(file);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, sizeOf(world));
+            writeTo(world, mapped);
+            // The data must reach the disk before the rename does
+            mapped.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Save a checkpoint already written into a buffer to a file through a memory-mapped buffer.
+     *
+     * @param data The checkpoint, from the buffer's position to its limit
+     * @param file The file
+     * @throws IOException If the file cannot be written
+     */
+    public static void save(ByteBuffer data, Path file) throws IOException {
+        Path temporary = temporaryFor(file);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, data.remaining());
+            mapped.put(data.duplicate());
+            // The data must reach the disk before the rename does
+            mapped.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Restore a world from a file through a memory-mapped buffer.
+     *
+     * @param file The file
+     * @return The restored world
+     * @throws IOException If the file cannot be read, or is not a checkpoint or a truncated one
+     */
+    public static World load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return readFrom(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Helper method to count the blocks of an environment.
+     *
+     * @param environment The environment
+     * @return The number of blocks
+     */
+    private static int countBlocks(GameEnvironment environment) {
+        int blocks = 0;
+        for (Collidable c : environment.getCollidables()) {
+            if (c instanceof Block) {
+                blocks++;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Helper method to get the file a checkpoint is written to before it replaces another.
+     *
+     * @param file The destination of the checkpoint
+     * @return The temporary file, next to the destination
+     */
+    private static Path temporaryFor(Path file) {
+        return file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    /**
+     * Helper method to put a rectangle into a buffer.
+     *
+     * @param buffer The buffer
+     * @param rect   The rectangle
+     */
+    private static void putRectangle(ByteBuffer buffer, Rectangle rect) {
+        buffer.putDouble(rect.getUpperLeft().getX());
+        buffer.putDouble(rect.getUpperLeft().getY());
+        buffer.putDouble(rect.getWidth());
+        buffer.putDouble(rect.getHeight());
+    }
+
+    /**
+     * Helper method to get a rectangle from a buffer.
+     *
+     * @param buffer The buffer
+     * @return The rectangle
+     */
+    private static Rectangle getRectangle(ByteBuffer buffer) {
+        double x = buffer.getDouble();
+        double y = buffer.getDouble();
+        double width = buffer.getDouble();
+        double height = buffer.getDouble();
+        return new Rectangle(new Point(x, y), width, height);
+    }
+}
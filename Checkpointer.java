@@ -0,0 +1,148 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves periodic checkpoints of a world on a background thread.
+ * Every given number of ticks, the world is written into an off-heap buffer on the simulating
+ * thread, which only copies memory, and the buffer is then saved to the file on a background
+ * thread while the simulation goes on. A checkpoint that falls due while the previous one is still
+ * being saved is skipped rather than waited for. A failed save does not stop the simulation; the
+ * failure is kept and reported by {@link #close()}.
+ */
+public class Checkpointer {
+    // The file the checkpoints are saved to
+    private final Path file;
+    // The number of ticks between checkpoints
+    private final long interval;
+    // The thread saving the checkpoints
+    private final ExecutorService writer;
+    // The buffer the world is captured into, reused while large enough
+    private ByteBuffer buffer;
+    // The save in progress, or null
+    private Future<?> pending;
+    // The number of checkpoints saved
+    private volatile long saved;
+    // The number of checkpoints skipped because the previous one was still being saved
+    private long skipped;
+    // The time the simulating thread spent capturing the last checkpoint, in nanoseconds
+    private long captureNanos;
+    // The failure of the last save that failed, or null
+    private volatile IOException failure;
+
+    /**
+     * Constructor to create a checkpointer.
+     *
+     * @param file     The file the checkpoints are saved to
+     * @param interval The number of ticks between checkpoints
+     */
+    public Checkpointer(Path file, long interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("The interval must be positive, not " + interval);
+        }
+        this.file = file;
+        this.interval = interval;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Checkpoint the world if a checkpoint is due. Call this on the simulating thread after each
+     * tick.
+     *
+     * @param world The world
+     */
+    public void afterTick(World world) {
+        if (world.getTick() % this.interval != 0) {
+            return;
+        }
+        if (this.pending != null && !this.pending.isDone()) {
+            this.skipped++;
+            return;
+        }
+        long start = System.nanoTime();
+        long size = Checkpoint.sizeOf(world);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The world is too large to checkpoint: " + size + " bytes");
+        }
+        if (this.buffer == null || this.buffer.capacity() < size) {
+            this.buffer = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, size + size / 4));
+        }
+        this.buffer.clear();
+        Checkpoint.writeTo(world, this.buffer);
+        this.buffer.flip();
+        this.captureNanos = System.nanoTime() - start;
+        ByteBuffer data = this.buffer;
+        this.pending = this.writer.submit(() -> {
+            try {
+                Checkpoint.save(data, this.file);
+                this.saved++;
+            } catch (IOException e) {
+                this.failure = e;
+            }
+        });
+    }
+
+    /**
+     * Wait for the save in progress, if any, and stop the background thread.
+     *
+     * @throws IOException If a save failed
+     */
+    public void close() throws IOException {
+        this.writer.shutdown();
+        try {
+            this.writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (this.failure != null) {
+            throw this.failure;
+        }
+    }
+
+    /**
+     * Get the number of checkpoints saved.
+     *
+     * @return The number of checkpoints
+     */
+    public long getSaved() {
+        return this.saved;
+    }
+
+    /**
+     * Get the number of checkpoints skipped because the previous one was still being saved.
+     *
+     * @return The number of checkpoints
+     */
+    public long getSkipped() {
+        return this.skipped;
+    }
+
+    /**
+     * Get the time the simulating thread spent capturing the last checkpoint.
+     *
+     * @return The time in nanoseconds
+     */
+    public long getCaptureNanos() {
+        return this.captureNanos;
+    }
+
+    /**
+     * Get the failure of the last save that failed.
+     *
+     * @return The failure, or null if no save failed
+     */
+    public IOException getFailure() {
+        return this.failure;
+    }
+}
@@ -3,12 +3,19 @@
 
 /**
  * Represents information about a collision, including the collision point and the collidable object involved.
+ * It also holds the time of impact, as a fraction of the trajectory, and the outward normal of the
+ * collidable at the contact.
  */
 public class CollisionInfo {
     // The point at which the collision occurs
     private Point collisionPoint;
     // The collidable object involved in the collision
     private Collidable collisionObject;
+    // The fraction of the trajectory travelled when the collision occurs
+    private double time;
+    // The outward normal of the collidable at the contact
+    private double normalX;
+    private double normalY;
 
     /**
      * Constructor to initialize the collision information.
@@ -21,6 +28,27 @@ public class CollisionInfo {
         this.collisionPoint = collisionPoint;
         // Initialize the collidable object
         this.collisionObject = collisionObject;
+        // The time and normal are unknown
+        this.time = Double.NaN;
+    }
+
+    /**
+     * Constructor to initialize the collision information with the time of impact and contact normal.
+     *
+     * @param collisionPoint   The point at which the collision occurs
+     * @param collisionObject  The collidable object involved in the collision
+     * @param time             The fraction of the trajectory travelled when the collision occurs
+     * @param normalX          The x component of the outward normal at the contact
+     * @param normalY          The y component of the outward normal at the contact
+     */
+    public CollisionInfo(Point collisionPoint, Collidable collisionObject, double time,
+                         double normalX, double normalY) {
+        this(collisionPoint, collisionObject);
+        // Initialize the time of impact
+        this.time = time;
+        // Initialize the contact normal
+        this.normalX = normalX;
+        this.normalY = normalY;
     }
 
     /**
@@ -42,4 +70,31 @@ public class CollisionInfo {
         // Return the collidable object
         return collisionObject;
     }
+
+    /**
+     * Get the time of impact.
+     *
+     * @return The fraction of the trajectory travelled when the collision occurs, between 0 and 1
+     */
+    public double time() {
+        return time;
+    }
+
+    /**
+     * Get the x component of the outward normal of the collidable at the contact.
+     *
+     * @return The x component of the unit normal
+     */
+    public double normalX() {
+        return normalX;
+    }
+
+    /**
+     * Get the y component of the outward normal of the collidable at the contact.
+     *
+     * @return The y component of the unit normal
+     */
+    public double normalY() {
+        return normalY;
+    }
 }
@@ -0,0 +1,378 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.util.Arrays;
+
+/**
+ * The scratch state and result of trajectory queries against a {@link GameEnvironment}.
+ * The environment is only read by a query, so several threads may query it at once, each through
+ * a query of its own, as long as no collidable is added, removed or moved meanwhile. Moving collidables
+ * are seen where they were at the last {@link GameEnvironment#refreshMovingCollidables()}.
+ */
+public class CollisionQuery {
+    // Smallest batch worth running the batch kernel on; smaller ones are tested exactly right away
+    private static final int MIN_KERNEL_BATCH = 4;
+    // The environment being queried
+    private final GameEnvironment environment;
+    // The collidables of the environment, indexed by id, as of the start of the current query
+    private Collidable[] collidables;
+    // Visitor testing the leaves reached in the tree of moving collidables
+    private final AabbTree.Visitor movingVisitor;
+    // Stack used to walk the tree of moving collidables
+    private int[] stack;
+    // Per-id stamp of the last query that tested the collidable, so each one is tested once
+    private int[] visitStamps;
+    // Stamp of the current query
+    private int queryStamp;
+    // Holder reused for every rectangle test
+    private final RayHit rayHit;
+    // The ids of the static collidables along the current step of a query, tested as a batch
+    private int[] batch;
+    // The lower bound of the time of impact with each collidable of the batch
+    private double[] entries;
+    // Trajectory parameter of the closest hit found so far by the current query
+    private double closestT;
+    // Edge of the closest hit found so far by the current query
+    private int closestEdge;
+    // Contact normal of the closest hit found so far by the current query
+    private double closestNormalX;
+    private double closestNormalY;
+    // Id of the closest collidable found so far by the current query, or -1 if none
+    private int closestId;
+    // Start and extent of the trajectory of the current query
+    private double queryX;
+    private double queryY;
+    private double queryDx;
+    private double queryDy;
+    // Trajectory parameter matching the broad phase padding for the current query
+    private double queryMargin;
+    // Radius swept along the trajectory of the current query, 0 for a plain line
+    private double queryRadius;
+    // Number of queries run, for instrumentation
+    private long queryCount;
+    // Number of rectangles tested exactly by all queries, for instrumentation
+    private long testCount;
+
+    /**
+     * Constructor to create a query on an environment.
+     *
+     * @param environment The environment to query
+     */
+    public CollisionQuery(GameEnvironment environment) {
+        this.environment = environment;
+        this.collidables = environment.getSlots();
+        this.movingVisitor = this::visitMoving;
+        this.stack = new int[64];
+        this.visitStamps = new int[16];
+        this.rayHit = new RayHit();
+        this.batch = new int[64];
+        this.entries = new double[64];
+        this.closestId = -1;
+    }
+
+    /**
+     * Find the closest collision along a trajectory without creating any objects.
+     * Hits are compared by trajectory parameter, and ties are broken by the lower id. Only the grid
+     * cells along the trajectory are visited, and the walk stops once no unvisited cell can hold a
+     * closer hit. The result is read with the lastCollision methods and is valid until the next
+     * query.
+     *
+     * @param x1     The x-coordinate of the start of the trajectory
+     * @param y1     The y-coordinate of the start of the trajectory
+     * @param dx     The x extent of the trajectory
+     * @param dy     The y extent of the trajectory
+     * @param radius The radius of the circle swept along the trajectory, or 0 for a plain line
+     * @return True if a collision was found, false otherwise
+     */
+    public boolean find(double x1, double y1, double dx, double dy, double radius) {
+        // Start a new query
+        this.queryCount++;
+        long testsBefore = this.testCount;
+        this.collidables = this.environment.getSlots();
+        int collidableCount = this.environment.getIdCount();
+        if (this.visitStamps.length < collidableCount) {
+            this.visitStamps = Arrays.copyOf(this.visitStamps, Math.max(collidableCount, this.visitStamps.length * 2));
+        }
+        if (++this.queryStamp == Integer.MAX_VALUE) {
+            Arrays.fill(this.visitStamps, 0);
+            this.queryStamp = 1;
+        }
+        this.closestId = -1;
+        this.closestT = Double.POSITIVE_INFINITY;
+        this.closestEdge = RayHit.NO_EDGE;
+        this.queryX = x1;
+        this.queryY = y1;
+        this.queryDx = dx;
+        this.queryDy = dy;
+        this.queryRadius = radius;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        this.queryMargin = length == 0 ? Double.POSITIVE_INFINITY : 2 * GameEnvironment.PADDING / length;
+
+        // Test the collidables that may move, through the tree
+        AabbTree tree = this.environment.getMovingTree();
+        if (this.stack.length < tree.getStackSize()) {
+            this.stack = new int[tree.getStackSize() * 2];
+        }
+        tree.query(x1, y1, x1 + dx, y1 + dy, GameEnvironment.PADDING + radius, this.movingVisitor, this.stack);
+
+        // Walk the grid cells the trajectory passes through, in order, together with the ring of
+        // cells a swept circle can reach around them
+        SpatialGrid grid = this.environment.getGrid();
+        StaticRectangles rectangles = this.environment.getStaticRectangles();
+        double size = grid.getCellSize();
+        int ring = radius > 0 ? (int) Math.ceil((radius + GameEnvironment.PADDING) / size) : 0;
+        int column = grid.rawColumn(x1);
+        int row = grid.rawRow(y1);
+        int stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+        int stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+        // The trajectory parameter at which the next column and row boundaries are crossed
+        double tMaxX = boundaryParameter(grid.getOriginX(), column, size, x1, dx);
+        double tMaxY = boundaryParameter(grid.getOriginY(), row, size, y1, dy);
+        // The trajectory parameter needed to cross a whole cell
+        double tDeltaX = dx != 0 ? size / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = dy != 0 ? size / Math.abs(dy) : Double.POSITIVE_INFINITY;
+
+        while (true) {
+            // Test the collidables in the current cell and its ring, as one batch
+            int batchSize = 0;
+            for (int r = row - ring; r <= row + ring; r++) {
+                for (int c = column - ring; c <= column + ring; c++) {
+                    batchSize = addToBatch(grid.cellIds(c, r), grid.cellCount(c, r), batchSize);
+                }
+            }
+            if (batchSize > 0) {
+                testBatch(rectangles, batchSize);
+            }
+            double tNext = Math.min(tMaxX, tMaxY);
+            // Stop when the trajectory ends inside this cell
+            if (tNext > 1) {
+                break;
+            }
+            // Stop when every unvisited cell is further away than the closest hit
+            if (this.closestT < tNext - this.queryMargin) {
+                break;
+            }
+            // Step into the next cell
+            if (tMaxX < tMaxY) {
+                column += stepX;
+                tMaxX += tDeltaX;
+            } else {
+                row += stepY;
+                tMaxY += tDeltaY;
+            }
+        }
+        this.environment.countQuery(this.testCount - testsBefore);
+        return this.closestId >= 0;
+    }
+
+    /**
+     * Get the id of the collidable hit by the last successful query, which
+     * {@link GameEnvironment#getCollidable(int)} maps back to the collidable.
+     *
+     * @return The id of the collidable
+     */
+    public int lastCollisionId() {
+        return this.closestId;
+    }
+
+    /**
+     * Get the collidable hit by the last successful query.
+     *
+     * @return The collidable object
+     */
+    public Collidable lastCollisionObject() {
+        return this.collidables[this.closestId];
+    }
+
+    /**
+     * Get the time of impact of the last successful query.
+     *
+     * @return The fraction of the trajectory travelled when the collision occurs
+     */
+    public double lastCollisionTime() {
+        return this.closestT;
+    }
+
+    /**
+     * Get the edge of the collidable's rectangle hit by the last successful query.
+     *
+     * @return One of the edge constants of {@link RayHit}
+     */
+    public int lastCollisionEdge() {
+        return this.closestEdge;
+    }
+
+    /**
+     * Get the x component of the contact normal of the last successful query.
+     *
+     * @return The x component of the outward unit normal
+     */
+    public double lastCollisionNormalX() {
+        return this.closestNormalX;
+    }
+
+    /**
+     * Get the y component of the contact normal of the last successful query.
+     *
+     * @return The y component of the outward unit normal
+     */
+    public double lastCollisionNormalY() {
+        return this.closestNormalY;
+    }
+
+    /**
+     * Get the contact point of the last successful query of a swept circle.
+     *
+     * @return The point where the circle touches the collidable
+     */
+    public Point lastCollisionPoint() {
+        return lastCollisionObject().getCollisionRectangle().closestBoundaryPoint(
+                this.queryX + this.closestT * this.queryDx, this.queryY + this.closestT * this.queryDy);
+    }
+
+    /**
+     * Get the number of queries run through this query object.
+     *
+     * @return The query count
+     */
+    public long getQueryCount() {
+        return this.queryCount;
+    }
+
+    /**
+     * Get the number of rectangles tested exactly by all queries run through this query object.
+     * Each collidable is tested at most once per query, however many cells hold it, and those the
+     * batch kernel rules out are not tested at all.
+     *
+     * @return The rectangle test count
+     */
+    public long getRectangleTestCount() {
+        return this.testCount;
+    }
+
+    /**
+     * Helper method to test a moving collidable reached in the tree.
+     *
+     * @param id The id of the collidable
+     * @return The trajectory parameter beyond which no closer hit can be found
+     */
+    private double visitMoving(int id) {
+        test(id);
+        return this.closestT + this.queryMargin;
+    }
+
+    /**
+     * Helper method to find the trajectory parameter at which the next cell boundary is crossed
+     * along one axis.
+     *
+     * @param origin The grid origin along the axis
+     * @param cell   The cell the trajectory starts in along the axis
+     * @param size   The cell size
+     * @param from   The start coordinate of the trajectory along the axis
+     * @param delta  The change in coordinate along the trajectory
+     * @return The parameter of the next boundary, or infinity if the trajectory never crosses one
+     */
+    private static double boundaryParameter(double origin, int cell, double size, double from, double delta) {
+        if (delta > 0) {
+            return (origin + (cell + 1) * size - from) / delta;
+        }
+        if (delta < 0) {
+            return (origin + cell * size - from) / delta;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Helper method to add the ids of a cell that this query has not tested yet to the batch.
+     *
+     * @param ids   The ids of the cell
+     * @param count The number of ids in the cell
+     * @param size  The number of ids in the batch so far
+     * @return The number of ids in the batch
+     */
+    private int addToBatch(int[] ids, int count, int size) {
+        if (this.batch.length < size + count) {
+            int capacity = Math.max(size + count, this.batch.length * 2);
+            this.batch = Arrays.copyOf(this.batch, capacity);
+            this.entries = new double[capacity];
+        }
+        int n = size;
+        for (int i = 0; i < count; i++) {
+            int id = ids[i];
+            if (this.visitStamps[id] != this.queryStamp) {
+                this.visitStamps[id] = this.queryStamp;
+                this.batch[n++] = id;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Helper method to test the batch of static collidables against the current trajectory: the
+     * batch kernel rules out those that cannot be hit, and the exact test runs on the rest that may
+     * be hit before the closest hit so far, starting with the one the kernel finds first. Batches
+     * too small to gain from the kernel are tested exactly.
+     *
+     * @param rectangles The rectangles of the static collidables
+     * @param size       The number of ids in the batch
+     */
+    private void testBatch(StaticRectangles rectangles, int size) {
+        if (size < MIN_KERNEL_BATCH) {
+            for (int k = 0; k < size; k++) {
+                testExactly(this.batch[k]);
+            }
+            return;
+        }
+        int first = rectangles.firstEntry(this.batch, size, this.queryX, this.queryY, this.queryDx, this.queryDy,
+                this.queryRadius, this.entries);
+        if (first < 0) {
+            return;
+        }
+        testExactly(this.batch[first]);
+        for (int k = 0; k < size; k++) {
+            if (k != first && this.entries[k] <= this.closestT + StaticRectangles.SLACK) {
+                testExactly(this.batch[k]);
+            }
+        }
+    }
+
+    /**
+     * Helper method to test a single collidable against the current trajectory unless this query
+     * tested it already.
+     *
+     * @param id The id of the collidable
+     */
+    private void test(int id) {
+        // Skip collidables already tested by this query
+        if (this.visitStamps[id] == this.queryStamp) {
+            return;
+        }
+        this.visitStamps[id] = this.queryStamp;
+        testExactly(id);
+    }
+
+    /**
+     * Helper method to test a single collidable exactly against the current trajectory and keep
+     * it if it is the closest hit so far. Ties are broken by the lower id.
+     *
+     * @param id The id of the collidable
+     */
+    private void testExactly(int id) {
+        this.testCount++;
+        Rectangle rect = this.collidables[id].getCollisionRectangle();
+        boolean hit = this.queryRadius > 0 ? rect.sweptCircleHit(this.queryX, this.queryY, this.queryDx,
+                this.queryDy, this.queryRadius, this.rayHit)
+                : rect.boundaryHit(this.queryX, this.queryY, this.queryDx, this.queryDy, this.rayHit);
+        if (!hit) {
+            return;
+        }
+        double t = this.rayHit.getT();
+        if (t < this.closestT || (t == this.closestT && id < this.closestId)) {
+            this.closestT = t;
+            this.closestId = id;
+            this.closestEdge = this.rayHit.getEdge();
+            this.closestNormalX = this.rayHit.getNormalX();
+            this.closestNormalY = this.rayHit.getNormalY();
+        }
+    }
+}
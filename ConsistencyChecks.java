@@ -0,0 +1,547 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import biuoop.DrawSurface;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Randomized checks of the containers and queries whose invariants the rest of the game relies
+ * on, each against a brute-force model of what they should hold. The environment is checked
+ * through random additions, removals, deferred and repeated removals and moves of collidables:
+ * its collidables, handles, id reuse and membership version must match the model, and its
+ * queries, some of them nearly parallel to an axis or from far off the screen, must find the same
+ * hit as testing every collidable exactly. The sprite collection is
+ * checked the same way, including removals made while its sprites are notified. The batch kernel
+ * of {@link StaticRectangles} is checked against the exact tests of {@link Rectangle}, which it
+ * must never rule out a hit of, including for trajectories parallel or nearly parallel to an axis,
+ * starting on the side of a rectangle, or far off the screen.
+ * Run with "java ConsistencyChecks [name-filter [seed]]"; only checks whose name contains the filter
+ * run. Each check prints its number of mismatches, and the exit status is 1 if any was found.
+ */
+public class ConsistencyChecks {
+    private static final int OPERATIONS = 20_000; // Number of random operations per check
+    private static final int FULL_CHECK_PERIOD = 50; // Operations between full comparisons with the model
+    private static final int QUERIES = 50; // Number of queries compared in each full comparison
+    private static final int WIDTH = 800; // Width of the checked environments
+    private static final int HEIGHT = 600; // Height of the checked environments
+    private static final int KERNEL_BATCH = 64; // Number of rectangles in each batch given to the kernel
+    private static final double[] SCALES = {1, 1e4, 1e6}; // Distances from the screen the kernel is checked at
+    private static final double[] TINY_EXTENTS = { // Extents along an axis that are zero or nearly so
+        0, -0.0, Double.MIN_VALUE, -Double.MIN_VALUE, 1e-310, -1e-300, 1e-12, -1e-6
+    };
+
+    /**
+     * A randomized check.
+     */
+    private interface Check {
+        /**
+         * Run the check.
+         *
+         * @param random The source of the random operations
+         * @return The number of mismatches with the model
+         */
+        long run(Random random);
+    }
+
+    /**
+     * A collidable that is not a block, so the environment keeps it in the tree of collidables
+     * that may move, and whose rectangle can be swapped.
+     */
+    private static class Mover implements Collidable {
+        private Rectangle rect; // The current rectangle
+
+        /**
+         * Constructor to create a mover.
+         *
+         * @param rect The initial rectangle
+         */
+        Mover(Rectangle rect) {
+            this.rect = rect;
+        }
+
+        @Override
+        public Rectangle getCollisionRectangle() {
+            return this.rect;
+        }
+
+        @Override
+        public Velocity hit(Point collisionPoint, Velocity currentVelocity) {
+            return currentVelocity;
+        }
+    }
+
+    /**
+     * A sprite counting the times it was notified, which may remove another sprite when notified.
+     */
+    private static class CountingSprite implements Sprite {
+        private final boolean isStatic; // Whether the sprite is static
+        private int calls; // The number of times the sprite was notified
+        private SpriteCollection owner; // The collection to remove the target from, or null
+        private long target; // The handle of the sprite to remove when notified
+
+        /**
+         * Constructor to create a sprite.
+         *
+         * @param isStatic Whether the sprite is static
+         */
+        CountingSprite(boolean isStatic) {
+            this.isStatic = isStatic;
+            this.target = Handle.NONE;
+        }
+
+        @Override
+        public void drawOn(DrawSurface d) {
+        }
+
+        @Override
+        public boolean isStatic() {
+            return this.isStatic;
+        }
+
+        @Override
+        public void timePassed() {
+            this.calls++;
+            if (this.owner != null) {
+                this.owner.removeSprite(this.target);
+                this.owner = null;
+            }
+        }
+    }
+
+    /**
+     * Run the checks.
+     *
+     * @param args An optional filter on check names, and an optional seed
+     */
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        long mismatches = 0;
+        mismatches += run(filter, "GameEnvironment membership and queries", seed,
+                ConsistencyChecks::checkEnvironment);
+        mismatches += run(filter, "SpriteCollection membership and notification", seed,
+                ConsistencyChecks::checkSprites);
+        mismatches += run(filter, "StaticRectangles.firstEntry bounds", seed, ConsistencyChecks::checkKernel);
+        if (mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Helper method to run a check if its name passes the filter, and print its result.
+     *
+     * @param filter The filter on check names
+     * @param name   The name of the check
+     * @param seed   The seed of the random operations
+     * @param check  The check
+     * @return The number of mismatches, 0 if the check did not run
+     */
+    private static long run(String filter, String name, long seed, Check check) {
+        if (!name.contains(filter)) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        long mismatches = check.run(new Random(seed));
+        System.out.printf("%-60s %8d mismatches (%.1f s)%n", name, mismatches, (System.nanoTime() - start) / 1e9);
+        return mismatches;
+    }
+
+    /**
+     * Helper method to check the environment against a model of its collidables through random
+     * operations, comparing the whole environment and its queries with the model periodically.
+     *
+     * @param random The source of the random operations
+     * @return The number of mismatches
+     */
+    private static long checkEnvironment(Random random) {
+        GameEnvironment environment = new GameEnvironment(WIDTH, HEIGHT);
+        List<Long> handles = new ArrayList<>();
+        List<Collidable> collidables = new ArrayList<>();
+        List<Mover> movers = new ArrayList<>();
+        List<Long> stale = new ArrayList<>();
+        long mismatches = 0;
+        for (int op = 0; op < OPERATIONS; op++) {
+            int choice = random.nextInt(10);
+            int version = environment.getMembershipVersion();
+            // Adding more often than removing fills the environment up to a few thousand collidables
+            if (handles.isEmpty() || choice < 6) {
+                // Add a block or a mover; a free id must be reused before a new one is handed out
+                Rectangle rect = randomRectangle(random);
+                Collidable c = random.nextInt(4) == 0 ? new Mover(rect) : new Block(rect, Color.RED);
+                boolean hadFree = environment.hasFreeIds();
+                int idCount = environment.getIdCount();
+                long handle = environment.addCollidable(c);
+                int id = Handle.index(handle);
+                if (hadFree ? id >= idCount : id != idCount) {
+                    mismatches++;
+                }
+                if (environment.getCollidable(id) != c || environment.getMembershipVersion() != version + 1) {
+                    mismatches++;
+                }
+                handles.add(handle);
+                collidables.add(c);
+                if (c instanceof Mover) {
+                    movers.add((Mover) c);
+                }
+            } else if (choice < 8) {
+                // Remove a collidable, then remove it again through its now stale handle
+                int k = random.nextInt(handles.size());
+                long handle = handles.get(k);
+                if (!environment.removeCollidable(handle) || environment.removeCollidable(handle)
+                        || environment.contains(handle) || environment.getMembershipVersion() != version + 1) {
+                    mismatches++;
+                }
+                removeAt(handles, collidables, movers, k);
+                stale.add(handle);
+            } else if (choice < 9) {
+                // Remove a few collidables in a nested deferral, some of them twice
+                environment.beginDeferral();
+                environment.beginDeferral();
+                int count = Math.min(handles.size(), 1 + random.nextInt(4));
+                List<Long> removed = new ArrayList<>();
+                for (int n = 0; n < count; n++) {
+                    int k = random.nextInt(handles.size() - n);
+                    long handle = handles.get(k);
+                    if (!environment.removeCollidable(handle)) {
+                        mismatches++;
+                    }
+                    if (random.nextBoolean() && !environment.removeCollidable(handle)) {
+                        mismatches++;
+                    }
+                    removed.add(handle);
+                    // Keep the removed ones at the end of the model until the deferral ends
+                    Collections.swap(handles, k, handles.size() - 1 - n);
+                    Collections.swap(collidables, k, collidables.size() - 1 - n);
+                }
+                environment.endDeferral();
+                // Nothing is removed before the outermost deferral ends
+                if (environment.getCollidables().size() != handles.size()
+                        || environment.getMembershipVersion() != version) {
+                    mismatches++;
+                }
+                environment.endDeferral();
+                for (long handle : removed) {
+                    int k = handles.indexOf(handle);
+                    removeAt(handles, collidables, movers, k);
+                    stale.add(handle);
+                    if (environment.contains(handle)) {
+                        mismatches++;
+                    }
+                }
+                if (environment.getMembershipVersion() != version + count) {
+                    mismatches++;
+                }
+            } else if (!movers.isEmpty()) {
+                // Swap the rectangle of a mover
+                movers.get(random.nextInt(movers.size())).rect = randomRectangle(random);
+            }
+            if (environment.getCollidables().size() != handles.size()) {
+                mismatches++;
+            }
+            if (op % FULL_CHECK_PERIOD == 0) {
+                mismatches += compareEnvironment(environment, handles, collidables, stale, random);
+            }
+        }
+        return mismatches + compareEnvironment(environment, handles, collidables, stale, random);
+    }
+
+    /**
+     * Helper method to compare the whole environment with the model, and random queries with
+     * testing every collidable of the model exactly.
+     *
+     * @param environment The environment
+     * @param handles     The handles of the collidables of the model
+     * @param collidables The collidables of the model, matching the handles
+     * @param stale       The handles of removed collidables
+     * @param random      The source of the queries
+     * @return The number of mismatches
+     */
+    private static long compareEnvironment(GameEnvironment environment, List<Long> handles,
+                                           List<Collidable> collidables, List<Long> stale, Random random) {
+        long mismatches = 0;
+        Set<Collidable> expected = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int k = 0; k < handles.size(); k++) {
+            long handle = handles.get(k);
+            if (!environment.contains(handle)
+                    || environment.getCollidable(Handle.index(handle)) != collidables.get(k)) {
+                mismatches++;
+            }
+            expected.add(collidables.get(k));
+        }
+        for (long handle : stale) {
+            if (environment.contains(handle)) {
+                mismatches++;
+            }
+        }
+        List<Collidable> listed = environment.getCollidables();
+        if (listed.size() != expected.size() || !expected.containsAll(listed)) {
+            mismatches++;
+        }
+        RayHit hit = new RayHit();
+        for (int q = 0; q < QUERIES; q++) {
+            double x = random.nextDouble() * (WIDTH + 100) - 50;
+            double y = random.nextDouble() * (HEIGHT + 100) - 50;
+            double dx = randomExtent(random);
+            double dy = randomExtent(random);
+            if (random.nextInt(5) == 0) {
+                // From far off the screen, and outside the grid, to a point on it
+                x = (random.nextDouble() * 2 - 1) * SCALES[1];
+                y = (random.nextDouble() * 2 - 1) * SCALES[1];
+                dx = random.nextDouble() * WIDTH - x;
+                dy = random.nextDouble() * HEIGHT - y;
+            }
+            double radius = random.nextBoolean() ? 0 : 1 + random.nextInt(8);
+            // The closest hit of all, ties broken by the lower id as the queries do
+            double bestT = Double.POSITIVE_INFINITY;
+            int bestId = -1;
+            for (int k = 0; k < handles.size(); k++) {
+                Rectangle rect = collidables.get(k).getCollisionRectangle();
+                boolean found = radius > 0 ? rect.sweptCircleHit(x, y, dx, dy, radius, hit)
+                        : rect.boundaryHit(x, y, dx, dy, hit);
+                int id = Handle.index(handles.get(k));
+                if (found && (hit.getT() < bestT || (hit.getT() == bestT && id < bestId))) {
+                    bestT = hit.getT();
+                    bestId = id;
+                }
+            }
+            boolean found = environment.sweepCircle(x, y, dx, dy, radius);
+            boolean same = found ? environment.lastCollisionTime() == bestT && environment.lastCollisionId() == bestId
+                    : bestId < 0;
+            if (!same) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Helper method to check the batch kernel against the exact tests on random batches of
+     * rectangles. Every rectangle the exact test hits must get a bound no later than the time of the
+     * hit plus {@link StaticRectangles#SLACK}, which is what keeps the queries testing a batch
+     * through the kernel exact.
+     *
+     * @param random The source of the batches and trajectories
+     * @return The number of hits the kernel ruled out or bounded too late
+     */
+    private static long checkKernel(Random random) {
+        Rectangle[] rects = new Rectangle[KERNEL_BATCH];
+        StaticRectangles packed = new StaticRectangles(KERNEL_BATCH);
+        int[] ids = new int[KERNEL_BATCH];
+        double[] entries = new double[KERNEL_BATCH];
+        for (int k = 0; k < KERNEL_BATCH; k++) {
+            ids[k] = k;
+        }
+        RayHit hit = new RayHit();
+        long mismatches = 0;
+        for (int op = 0; op < OPERATIONS; op++) {
+            // A batch around a point on the screen or far off it, some of the rectangles flat
+            double scale = SCALES[random.nextInt(SCALES.length)];
+            double originX = (random.nextDouble() * 2 - 1) * scale;
+            double originY = (random.nextDouble() * 2 - 1) * scale;
+            for (int k = 0; k < KERNEL_BATCH; k++) {
+                double width = random.nextInt(8) == 0 ? 0 : random.nextDouble() * 40;
+                double height = random.nextInt(8) == 0 ? 0 : random.nextDouble() * 40;
+                rects[k] = new Rectangle(new Point(originX + random.nextDouble() * 200 - 100,
+                        originY + random.nextDouble() * 200 - 100), width, height);
+                packed.set(k, rects[k]);
+            }
+            // A trajectory among them, sometimes starting exactly on a side of one grown by the radius
+            double radius = random.nextInt(3) == 0 ? 0 : random.nextDouble() * 8;
+            double x = originX + random.nextDouble() * 240 - 120;
+            double y = originY + random.nextDouble() * 240 - 120;
+            Rectangle touched = rects[random.nextInt(KERNEL_BATCH)];
+            if (random.nextInt(4) == 0) {
+                x = random.nextBoolean() ? touched.getUpperLeft().getX() - radius
+                        : touched.getUpperLeft().getX() + touched.getWidth() + radius;
+            }
+            if (random.nextInt(4) == 0) {
+                y = random.nextBoolean() ? touched.getUpperLeft().getY() - radius
+                        : touched.getUpperLeft().getY() + touched.getHeight() + radius;
+            }
+            double dx = randomExtent(random);
+            double dy = randomExtent(random);
+            packed.firstEntry(ids, KERNEL_BATCH, x, y, dx, dy, radius, entries);
+            for (int k = 0; k < KERNEL_BATCH; k++) {
+                boolean found = radius > 0 ? rects[k].sweptCircleHit(x, y, dx, dy, radius, hit)
+                        : rects[k].boundaryHit(x, y, dx, dy, hit);
+                if (found && !(entries[k] <= hit.getT() + StaticRectangles.SLACK)) {
+                    mismatches++;
+                }
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Helper method to check the sprite collection against a model of its sprites through random
+     * operations, comparing the whole collection with the model periodically.
+     *
+     * @param random The source of the random operations
+     * @return The number of mismatches
+     */
+    private static long checkSprites(Random random) {
+        SpriteCollection sprites = new SpriteCollection();
+        List<Long> handles = new ArrayList<>();
+        List<CountingSprite> live = new ArrayList<>();
+        List<Long> stale = new ArrayList<>();
+        long mismatches = 0;
+        for (int op = 0; op < OPERATIONS; op++) {
+            int choice = random.nextInt(10);
+            if (handles.isEmpty() || choice < 5) {
+                CountingSprite s = new CountingSprite(random.nextBoolean());
+                handles.add(sprites.addSprite(s));
+                live.add(s);
+            } else if (choice < 8) {
+                int k = random.nextInt(handles.size());
+                long handle = handles.get(k);
+                if (!sprites.removeSprite(handle) || sprites.removeSprite(handle) || sprites.contains(handle)) {
+                    mismatches++;
+                }
+                removeAt(handles, live, null, k);
+                stale.add(handle);
+            } else {
+                // Notify every sprite while a few of them remove others, possibly the same ones
+                int[] before = new int[live.size()];
+                for (int k = 0; k < live.size(); k++) {
+                    before[k] = live.get(k).calls;
+                }
+                List<Long> targets = new ArrayList<>();
+                for (int n = random.nextInt(4); n > 0; n--) {
+                    CountingSprite remover = live.get(random.nextInt(live.size()));
+                    if (remover.owner != null) {
+                        continue;
+                    }
+                    remover.owner = sprites;
+                    remover.target = handles.get(random.nextInt(handles.size()));
+                    targets.add(remover.target);
+                }
+                // Sometimes notify within an outer deferral, which keeps the removals until it ends
+                boolean nested = random.nextBoolean();
+                if (nested) {
+                    sprites.beginDeferral();
+                }
+                sprites.notifyAllTimePassed();
+                if (nested) {
+                    if (sprites.size() != handles.size()) {
+                        mismatches++;
+                    }
+                    sprites.endDeferral();
+                }
+                // Every sprite is notified exactly once, including those removed meanwhile
+                for (int k = 0; k < live.size(); k++) {
+                    if (live.get(k).calls != before[k] + 1) {
+                        mismatches++;
+                    }
+                    live.get(k).owner = null;
+                }
+                for (long handle : targets) {
+                    int k = handles.indexOf(handle);
+                    if (k >= 0) {
+                        removeAt(handles, live, null, k);
+                        stale.add(handle);
+                    }
+                }
+            }
+            if (sprites.size() != handles.size()) {
+                mismatches++;
+            }
+            if (op % FULL_CHECK_PERIOD == 0) {
+                mismatches += compareSprites(sprites, handles, live, stale);
+            }
+        }
+        return mismatches + compareSprites(sprites, handles, live, stale);
+    }
+
+    /**
+     * Helper method to compare the whole sprite collection with the model.
+     *
+     * @param sprites The sprite collection
+     * @param handles The handles of the sprites of the model
+     * @param live    The sprites of the model, matching the handles
+     * @param stale   The handles of removed sprites
+     * @return The number of mismatches
+     */
+    private static long compareSprites(SpriteCollection sprites, List<Long> handles, List<CountingSprite> live,
+                                       List<Long> stale) {
+        long mismatches = 0;
+        Set<Sprite> expectedStatic = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int k = 0; k < handles.size(); k++) {
+            if (!sprites.contains(handles.get(k))) {
+                mismatches++;
+            }
+            if (live.get(k).isStatic()) {
+                expectedStatic.add(live.get(k));
+            }
+        }
+        for (long handle : stale) {
+            if (sprites.contains(handle)) {
+                mismatches++;
+            }
+        }
+        Sprite[] statics = sprites.getStaticSprites();
+        int staticCount = sprites.getStaticCount();
+        if (staticCount != expectedStatic.size()) {
+            mismatches++;
+        }
+        for (int k = 0; k < staticCount; k++) {
+            if (!expectedStatic.contains(statics[k])) {
+                mismatches++;
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Helper method to remove an entry of a model in constant time, moving the last entry into its
+     * place.
+     *
+     * @param handles The handles of the model
+     * @param entries The entries of the model, matching the handles
+     * @param movers  The movers among the entries, or null
+     * @param k       The position of the entry
+     * @param <T>     The type of the entries
+     */
+    private static <T> void removeAt(List<Long> handles, List<T> entries, List<Mover> movers, int k) {
+        T entry = entries.get(k);
+        if (movers != null && entry instanceof Mover) {
+            movers.remove(entry);
+        }
+        int last = handles.size() - 1;
+        handles.set(k, handles.get(last));
+        handles.remove(last);
+        entries.set(k, entries.get(last));
+        entries.remove(last);
+    }
+
+    /**
+     * Helper method to create a random extent of a trajectory along an axis, sometimes zero or
+     * nearly so.
+     *
+     * @param random The source of the extent
+     * @return The extent
+     */
+    private static double randomExtent(Random random) {
+        if (random.nextInt(4) == 0) {
+            return TINY_EXTENTS[random.nextInt(TINY_EXTENTS.length)];
+        }
+        return random.nextDouble() * 300 - 150;
+    }
+
+    /**
+     * Helper method to create a random rectangle, some of them partly outside the screen.
+     *
+     * @param random The source of the rectangle
+     * @return The rectangle
+     */
+    private static Rectangle randomRectangle(Random random) {
+        double x = random.nextDouble() * (WIDTH + 40) - 20;
+        double y = random.nextDouble() * (HEIGHT + 40) - 20;
+        return new Rectangle(new Point(x, y), 5 + random.nextDouble() * 30, 5 + random.nextDouble() * 20);
+    }
+}
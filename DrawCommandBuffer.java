@@ -0,0 +1,413 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import biuoop.DrawSurface;
+import java.awt.Color;
+import java.awt.Image;
+import java.awt.Polygon;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A DrawSurface that records the calls made on it into primitive arrays, to be replayed later on
+ * another surface, possibly on another thread. The arrays are reused after {@link #clear()}, so
+ * recording the same scene again creates no objects.
+ * The drawing color is kept as the state of each command rather than as a command of its own, and
+ * {@link #sort()} orders the commands by layer, then by their position within their sprite, then
+ * by color, so the replay changes color as rarely as possible. Keeping the position within the
+ * sprite means a sprite's later commands, like a border, still cover its earlier ones.
+ * Two recordings of the same sprites in different states make the same calls with different
+ * coordinates; {@link #replay(DrawSurface, DrawCommandBuffer, double)} draws the state part of the
+ * way between them.
+ */
+public class DrawCommandBuffer implements DrawSurface {
+    private static final byte DRAW_IMAGE = 0;
+    private static final byte DRAW_CIRCLE = 1;
+    private static final byte FILL_CIRCLE = 2;
+    private static final byte DRAW_OVAL = 3;
+    private static final byte FILL_OVAL = 4;
+    private static final byte DRAW_LINE = 5;
+    private static final byte DRAW_RECTANGLE = 6;
+    private static final byte FILL_RECTANGLE = 7;
+    private static final byte DRAW_POLYGON = 8;
+    private static final byte FILL_POLYGON = 9;
+    private static final byte DRAW_TEXT = 10;
+    // The number of int arguments of each command
+    private static final int[] ARGUMENTS = {2, 3, 3, 4, 4, 4, 4, 4, 0, 0, 3};
+    // The largest layer and position within a sprite told apart by the sort
+    private static final int MAX_ORDER = 255;
+    // The largest number of colors remembered before the palette is started over
+    private static final int MAX_COLORS = 0xFFFF;
+    private final int width; // The width reported to the sprites
+    private final int height; // The height reported to the sprites
+    private byte[] commands; // The recorded commands
+    private int[] argumentStart; // The index of the first int argument of each command
+    private int[] objectIndex; // The index of the object of each command, or -1 for none
+    private int[] colors; // The palette index of the drawing color of each command
+    private int[] keys; // The sort key of each command
+    private int[] order; // The commands in replay order
+    private int[] sortKeys; // Scratch keys for the sort
+    private int[] swapKeys; // More scratch keys for the sort
+    private int[] swapOrder; // Scratch order for the sort
+    private final int[] buckets; // Scratch counts for the sort
+    private boolean sorted; // Whether the order is sorted rather than the recording order
+    private int commandCount; // The number of recorded commands
+    private int[] arguments; // The int arguments of the commands, in order
+    private int argumentCount; // The number of recorded int arguments
+    private Object[] objects; // The images, polygons and texts of the commands, in order
+    private int objectCount; // The number of recorded objects
+    private final int[] replayed; // The arguments of the command being replayed
+    private Color[] palette; // The colors used, by palette index
+    private final Map<Color, Integer> paletteIndex; // The palette index of each color used
+    private int color; // The palette index of the current drawing color
+    private int layer; // The layer of the sprite being recorded
+    private int position; // The position of the next command within the sprite being recorded
+
+    /**
+     * Constructor to create an empty buffer for a surface of a given size.
+     *
+     * @param width  The width reported to the sprites
+     * @param height The height reported to the sprites
+     */
+    public DrawCommandBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.commands = new byte[64];
+        this.argumentStart = new int[64];
+        this.objectIndex = new int[64];
+        this.colors = new int[64];
+        this.keys = new int[64];
+        this.order = new int[64];
+        this.sortKeys = new int[64];
+        this.swapKeys = new int[64];
+        this.swapOrder = new int[64];
+        this.buckets = new int[256];
+        this.arguments = new int[256];
+        this.objects = new Object[16];
+        this.replayed = new int[4];
+        this.palette = new Color[16];
+        this.paletteIndex = new HashMap<>();
+        clear();
+    }
+
+    /**
+     * Forget the recorded commands, keeping the arrays for the next recording.
+     * The drawing color starts as black.
+     */
+    public void clear() {
+        Arrays.fill(this.objects, 0, this.objectCount, null);
+        this.commandCount = 0;
+        this.argumentCount = 0;
+        this.objectCount = 0;
+        this.sorted = false;
+        this.layer = 0;
+        this.position = 0;
+        if (this.paletteIndex.size() > MAX_COLORS) {
+            this.paletteIndex.clear();
+        }
+        setColor(Color.BLACK);
+    }
+
+    /**
+     * Start recording the commands of the next sprite.
+     *
+     * @param spriteLayer The layer of the sprite, see {@link Sprite#getLayer()}
+     */
+    public void beginSprite(int spriteLayer) {
+        this.layer = Math.max(0, Math.min(MAX_ORDER, spriteLayer));
+        this.position = 0;
+    }
+
+    /**
+     * Get the number of recorded commands.
+     *
+     * @return The command count
+     */
+    public int size() {
+        return this.commandCount;
+    }
+
+    /**
+     * Order the commands for replay by layer, then by position within their sprite, then by color,
+     * keeping the recording order among equals. Creates no objects.
+     */
+    public void sort() {
+        int n = this.commandCount;
+        int[] from = this.sortKeys;
+        int[] fromOrder = this.order;
+        int[] to = this.swapKeys;
+        int[] toOrder = this.swapOrder;
+        System.arraycopy(this.keys, 0, from, 0, n);
+        for (int i = 0; i < n; i++) {
+            fromOrder[i] = i;
+        }
+        // Least significant byte first; each pass is stable, so the whole sort is
+        int[] count = this.buckets;
+        for (int shift = 0; shift < 32 && n > 0; shift += 8) {
+            Arrays.fill(count, 0);
+            for (int i = 0; i < n; i++) {
+                count[(from[i] >>> shift) & 0xFF]++;
+            }
+            if (count[(from[0] >>> shift) & 0xFF] == n) {
+                // Every key has the same byte here
+                continue;
+            }
+            int total = 0;
+            for (int b = 0; b < 256; b++) {
+                int c = count[b];
+                count[b] = total;
+                total += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int slot = count[(from[i] >>> shift) & 0xFF]++;
+                to[slot] = from[i];
+                toOrder[slot] = fromOrder[i];
+            }
+            int[] swap = from;
+            from = to;
+            to = swap;
+            swap = fromOrder;
+            fromOrder = toOrder;
+            toOrder = swap;
+        }
+        // The passes may have left the result in the scratch arrays
+        this.sortKeys = from;
+        this.swapKeys = to;
+        this.order = fromOrder;
+        this.swapOrder = toOrder;
+        this.sorted = true;
+    }
+
+    /**
+     * Draw the recorded commands on a surface, in sorted order if {@link #sort()} was called.
+     *
+     * @param d The surface to draw on
+     */
+    public void replay(DrawSurface d) {
+        replay(d, null, 1);
+    }
+
+    /**
+     * Draw the recorded commands on a surface, with every coordinate part of the way from the one
+     * recorded by another buffer. If the other buffer recorded different commands, the commands of
+     * this buffer are drawn as they are.
+     *
+     * @param d     The surface to draw on
+     * @param from  The buffer holding the earlier state, or null
+     * @param alpha The fraction of the way from the earlier state (0) to this one (1)
+     */
+    public void replay(DrawSurface d, DrawCommandBuffer from, double alpha) {
+        int[] start = from != null && alpha < 1 && sameCommands(from) ? from.arguments : null;
+        int[] args = this.replayed;
+        int currentColor = -1;
+        for (int i = 0; i < this.commandCount; i++) {
+            int c = this.sorted ? this.order[i] : i;
+            if (this.colors[c] != currentColor) {
+                currentColor = this.colors[c];
+                d.setColor(this.palette[currentColor]);
+            }
+            byte command = this.commands[c];
+            int a = this.argumentStart[c];
+            for (int k = 0; k < ARGUMENTS[command]; k++) {
+                int end = this.arguments[a + k];
+                args[k] = start == null ? end : (int) Math.round(start[a + k] + (end - start[a + k]) * alpha);
+            }
+            Object object = this.objectIndex[c] < 0 ? null : this.objects[this.objectIndex[c]];
+            switch (command) {
+                case DRAW_IMAGE:
+                    d.drawImage(args[0], args[1], (Image) object);
+                    break;
+                case DRAW_CIRCLE:
+                    d.drawCircle(args[0], args[1], args[2]);
+                    break;
+                case FILL_CIRCLE:
+                    d.fillCircle(args[0], args[1], args[2]);
+                    break;
+                case DRAW_OVAL:
+                    d.drawOval(args[0], args[1], args[2], args[3]);
+                    break;
+                case FILL_OVAL:
+                    d.fillOval(args[0], args[1], args[2], args[3]);
+                    break;
+                case DRAW_LINE:
+                    d.drawLine(args[0], args[1], args[2], args[3]);
+                    break;
+                case DRAW_RECTANGLE:
+                    d.drawRectangle(args[0], args[1], args[2], args[3]);
+                    break;
+                case FILL_RECTANGLE:
+                    d.fillRectangle(args[0], args[1], args[2], args[3]);
+                    break;
+                case DRAW_POLYGON:
+                    d.drawPolygon((Polygon) object);
+                    break;
+                case FILL_POLYGON:
+                    d.fillPolygon((Polygon) object);
+                    break;
+                default:
+                    d.drawText(args[0], args[1], (String) object, args[2]);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Helper method to check whether another buffer recorded the same commands as this one.
+     *
+     * @param other The other buffer
+     * @return True if the commands are the same, whatever their arguments
+     */
+    private boolean sameCommands(DrawCommandBuffer other) {
+        return other.commandCount == this.commandCount && other.argumentCount == this.argumentCount
+                && Arrays.equals(this.commands, 0, this.commandCount, other.commands, 0, other.commandCount);
+    }
+
+    /**
+     * Helper method to record a command in the current color and make room for its arguments.
+     *
+     * @param command The command
+     * @param object  The object of the command, or null if it has none
+     */
+    private void add(byte command, Object object) {
+        int n = this.commandCount;
+        if (n == this.commands.length) {
+            int capacity = n * 2;
+            this.commands = Arrays.copyOf(this.commands, capacity);
+            this.argumentStart = Arrays.copyOf(this.argumentStart, capacity);
+            this.objectIndex = Arrays.copyOf(this.objectIndex, capacity);
+            this.colors = Arrays.copyOf(this.colors, capacity);
+            this.keys = Arrays.copyOf(this.keys, capacity);
+            this.order = Arrays.copyOf(this.order, capacity);
+            this.sortKeys = new int[capacity];
+            this.swapKeys = new int[capacity];
+            this.swapOrder = new int[capacity];
+        }
+        this.commands[n] = command;
+        this.argumentStart[n] = this.argumentCount;
+        this.colors[n] = this.color;
+        this.keys[n] = this.layer << 24 | Math.min(this.position, MAX_ORDER) << 16 | Math.min(this.color, MAX_COLORS);
+        this.position++;
+        if (this.argumentCount + 4 > this.arguments.length) {
+            this.arguments = Arrays.copyOf(this.arguments, this.arguments.length * 2);
+        }
+        if (object == null) {
+            this.objectIndex[n] = -1;
+        } else {
+            if (this.objectCount == this.objects.length) {
+                this.objects = Arrays.copyOf(this.objects, this.objectCount * 2);
+            }
+            this.objectIndex[n] = this.objectCount;
+            this.objects[this.objectCount++] = object;
+        }
+        this.commandCount++;
+        this.argumentCount += ARGUMENTS[command];
+    }
+
+    /**
+     * Helper method to record a command with up to four int arguments.
+     *
+     * @param command The command
+     * @param a       The first argument
+     * @param b       The second argument
+     * @param c       The third argument
+     * @param e       The fourth argument
+     */
+    private void add(byte command, int a, int b, int c, int e) {
+        int n = this.argumentCount;
+        add(command, null);
+        int[] args = this.arguments;
+        args[n] = a;
+        args[n + 1] = b;
+        args[n + 2] = c;
+        args[n + 3] = e;
+    }
+
+    @Override
+    public void drawImage(int x, int y, Image image) {
+        int n = this.argumentCount;
+        add(DRAW_IMAGE, image);
+        this.arguments[n] = x;
+        this.arguments[n + 1] = y;
+    }
+
+    @Override
+    public void drawCircle(int x, int y, int r) {
+        add(DRAW_CIRCLE, x, y, r, 0);
+    }
+
+    @Override
+    public void fillCircle(int x, int y, int r) {
+        add(FILL_CIRCLE, x, y, r, 0);
+    }
+
+    @Override
+    public void drawOval(int x, int y, int w, int h) {
+        add(DRAW_OVAL, x, y, w, h);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int w, int h) {
+        add(FILL_OVAL, x, y, w, h);
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        add(DRAW_LINE, x1, y1, x2, y2);
+    }
+
+    @Override
+    public void drawRectangle(int x, int y, int w, int h) {
+        add(DRAW_RECTANGLE, x, y, w, h);
+    }
+
+    @Override
+    public void fillRectangle(int x, int y, int w, int h) {
+        add(FILL_RECTANGLE, x, y, w, h);
+    }
+
+    @Override
+    public void drawPolygon(Polygon p) {
+        // Copy the polygon, since its owner may change it before the replay
+        add(DRAW_POLYGON, new Polygon(p.xpoints, p.ypoints, p.npoints));
+    }
+
+    @Override
+    public void fillPolygon(Polygon p) {
+        // Copy the polygon, since its owner may change it before the replay
+        add(FILL_POLYGON, new Polygon(p.xpoints, p.ypoints, p.npoints));
+    }
+
+    @Override
+    public void setColor(Color c) {
+        Integer index = this.paletteIndex.get(c);
+        if (index == null) {
+            index = this.paletteIndex.size();
+            if (index == this.palette.length) {
+                this.palette = Arrays.copyOf(this.palette, index * 2);
+            }
+            this.palette[index] = c;
+            this.paletteIndex.put(c, index);
+        }
+        this.color = index;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public void drawText(int x, int y, String text, int fontSize) {
+        int n = this.argumentCount;
+        add(DRAW_TEXT, text);
+        this.arguments[n] = x;
+        this.arguments[n + 1] = y;
+        this.arguments[n + 2] = fontSize;
+    }
+}
@@ -0,0 +1,314 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Where the time of each frame goes. A {@link GameLoop} and a {@link RenderThread} given the same
+ * stats record the time of every tick (update), every wait between wake-ups of the simulation
+ * (sleep), and the drawing and showing of every frame (draw and show) into
+ * {@link LatencyHistogram}s. After each tick the collision queries and rectangle tests of the
+ * tick are counted as well, ticks and frames that took longer than their period are counted
+ * as overruns, and frames the loops skipped or missed are counted as dropped.
+ * The stats can be registered as a JMX MBean and printed periodically as a summary. Loops without
+ * stats, and loops whose stats are disabled, only check a field per frame.
+ */
+public class FrameStats implements FrameStatsMBean {
+    // The name the stats are registered under by default
+    public static final String DEFAULT_NAME = "breakout:type=FrameStats";
+
+    /**
+     * The phases of a frame that are timed.
+     */
+    public enum Phase {
+        // Running a tick of the world
+        UPDATE,
+        // Drawing a frame
+        DRAW,
+        // Showing a drawn frame
+        SHOW,
+        // Waiting for the next wake-up of the simulation
+        SLEEP
+    }
+
+    // The histogram of the times of each phase, in nanoseconds, indexed by phase
+    private final LatencyHistogram[] phases;
+    // The number of collision queries in each tick
+    private final LatencyHistogram queriesPerTick;
+    // The number of rectangles tested by the collision queries of each tick
+    private final LatencyHistogram testsPerTick;
+    // The number of frames that took longer than the frame period
+    private final AtomicLong frameOverruns;
+    // The number of ticks that took longer than the real time they simulate
+    private final AtomicLong tickOverruns;
+    // The number of frames skipped or missed because the loops fell behind
+    private final AtomicLong droppedFrames;
+    // Whether timings are recorded
+    private volatile boolean enabled;
+    // The tick the query counts were last read after, or -1
+    private long lastTick;
+    // The total number of queries of the environment after the last tick
+    private long lastQueries;
+    // The total number of rectangle tests of the environment after the last tick
+    private long lastTests;
+    // The thread printing the periodic summary, or null
+    private ScheduledExecutorService reporter;
+    // The name the stats are registered under, or null
+    private ObjectName registeredName;
+
+    /**
+     * Constructor to create enabled stats with nothing recorded.
+     */
+    public FrameStats() {
+        this.phases = new LatencyHistogram[Phase.values().length];
+        for (int i = 0; i < this.phases.length; i++) {
+            this.phases[i] = new LatencyHistogram();
+        }
+        this.queriesPerTick = new LatencyHistogram();
+        this.testsPerTick = new LatencyHistogram();
+        this.frameOverruns = new AtomicLong();
+        this.tickOverruns = new AtomicLong();
+        this.droppedFrames = new AtomicLong();
+        this.enabled = true;
+        this.lastTick = -1;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Record the time of a phase.
+     *
+     * @param phase The phase
+     * @param nanos The time, in nanoseconds
+     */
+    public void record(Phase phase, long nanos) {
+        this.phases[phase.ordinal()].record(nanos);
+    }
+
+    /**
+     * Record a tick that just ran: its time, whether it overran, and the collision queries and
+     * rectangle tests it made. Call this on the simulating thread.
+     *
+     * @param world       The world, after the tick
+     * @param nanos       The time the tick took, in nanoseconds
+     * @param budgetNanos The real time the tick simulates, in nanoseconds
+     */
+    public void afterTick(World world, long nanos, long budgetNanos) {
+        record(Phase.UPDATE, nanos);
+        if (nanos > budgetNanos) {
+            this.tickOverruns.incrementAndGet();
+        }
+        GameEnvironment environment = world.getEnvironment();
+        long queries = environment.getQueryCount();
+        long tests = environment.getRectangleTestCount();
+        // Counts since a tick that was not recorded would span several ticks
+        if (world.getTick() == this.lastTick + 1) {
+            this.queriesPerTick.record(queries - this.lastQueries);
+            this.testsPerTick.record(tests - this.lastTests);
+        }
+        this.lastTick = world.getTick();
+        this.lastQueries = queries;
+        this.lastTests = tests;
+    }
+
+    /**
+     * Count a frame that took longer to draw and show than the frame period.
+     */
+    public void frameOverrun() {
+        this.frameOverruns.incrementAndGet();
+    }
+
+    /**
+     * Count frames skipped or missed because a loop fell behind.
+     *
+     * @param frames The number of frames
+     */
+    public void framesDropped(long frames) {
+        this.droppedFrames.addAndGet(frames);
+    }
+
+    /**
+     * Get the histogram of the times of a phase.
+     *
+     * @param phase The phase
+     * @return The histogram, in nanoseconds
+     */
+    public LatencyHistogram getHistogram(Phase phase) {
+        return this.phases[phase.ordinal()];
+    }
+
+    @Override
+    public long getTicks() {
+        return getHistogram(Phase.UPDATE).getCount();
+    }
+
+    @Override
+    public long getFrames() {
+        return getHistogram(Phase.DRAW).getCount();
+    }
+
+    @Override
+    public long getFrameOverruns() {
+        return this.frameOverruns.get();
+    }
+
+    @Override
+    public long getTickOverruns() {
+        return this.tickOverruns.get();
+    }
+
+    @Override
+    public long getDroppedFrames() {
+        return this.droppedFrames.get();
+    }
+
+    @Override
+    public double getUpdateP99Micros() {
+        return getHistogram(Phase.UPDATE).getPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getDrawP99Micros() {
+        return getHistogram(Phase.DRAW).getPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getShowP99Micros() {
+        return getHistogram(Phase.SHOW).getPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getSleepP99Micros() {
+        return getHistogram(Phase.SLEEP).getPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getMeanQueriesPerTick() {
+        return this.queriesPerTick.getMean();
+    }
+
+    @Override
+    public double getMeanRectangleTestsPerTick() {
+        return this.testsPerTick.getMean();
+    }
+
+    @Override
+    public long getMaxRectangleTestsPerTick() {
+        return this.testsPerTick.getMax();
+    }
+
+    @Override
+    public double percentileMicros(String phase, double percentile) {
+        return getHistogram(Phase.valueOf(phase.toUpperCase(Locale.ROOT))).getPercentile(percentile) / 1e3;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : this.phases) {
+            histogram.reset();
+        }
+        this.queriesPerTick.reset();
+        this.testsPerTick.reset();
+        this.frameOverruns.set(0);
+        this.tickOverruns.set(0);
+        this.droppedFrames.set(0);
+    }
+
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            LatencyHistogram h = getHistogram(phase);
+            summary.append(String.format(Locale.ROOT, "%-6s n=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus%n",
+                    phase.name().toLowerCase(Locale.ROOT), h.getCount(), h.getMean() / 1e3,
+                    h.getPercentile(50) / 1e3, h.getPercentile(99) / 1e3, h.getMax() / 1e3));
+        }
+        summary.append(String.format(Locale.ROOT, "per tick: queries mean=%.1f max=%d, rectangle tests mean=%.1f"
+                        + " p99=%d max=%d%n", this.queriesPerTick.getMean(), this.queriesPerTick.getMax(),
+                this.testsPerTick.getMean(), this.testsPerTick.getPercentile(99), this.testsPerTick.getMax()));
+        summary.append(String.format(Locale.ROOT, "overruns: %d frames, %d ticks; dropped: %d frames",
+                getFrameOverruns(), getTickOverruns(), getDroppedFrames()));
+        return summary.toString();
+    }
+
+    /**
+     * Register the stats with the platform MBean server under {@link #DEFAULT_NAME}.
+     *
+     * @throws JMException If the stats cannot be registered, such as when the name is taken
+     */
+    public void register() throws JMException {
+        register(DEFAULT_NAME);
+    }
+
+    /**
+     * Register the stats with the platform MBean server.
+     *
+     * @param name The object name to register under
+     * @throws JMException If the stats cannot be registered, such as when the name is taken
+     */
+    public synchronized void register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.registeredName = objectName;
+    }
+
+    /**
+     * Print the summary periodically on a background thread.
+     *
+     * @param periodMillis The time between summaries, in milliseconds
+     * @param out          Receives each summary
+     */
+    public synchronized void startReporting(long periodMillis, Consumer<String> out) {
+        stopReporting();
+        this.reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "frame-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reporter.scheduleAtFixedRate(() -> out.accept(getSummary()), periodMillis, periodMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop printing the periodic summary.
+     */
+    public synchronized void stopReporting() {
+        if (this.reporter != null) {
+            this.reporter.shutdownNow();
+            this.reporter = null;
+        }
+    }
+
+    /**
+     * Stop printing the periodic summary and unregister the stats from the MBean server.
+     */
+    public synchronized void close() {
+        stopReporting();
+        if (this.registeredName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(this.registeredName);
+            } catch (JMException e) {
+                // Already unregistered
+            }
+            this.registeredName = null;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+/**
+ * The management interface of {@link FrameStats}, through which JMX clients such as JConsole read
+ * the frame timings of a running game. Times are in microseconds.
+ */
+public interface FrameStatsMBean {
+
+    /**
+     * Check whether timings are being recorded.
+     *
+     * @return True if recording
+     */
+    boolean isEnabled();
+
+    /**
+     * Start or stop recording timings. While stopped, the loops only read a flag per frame.
+     *
+     * @param enabled True to record
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Get the number of ticks timed.
+     *
+     * @return The tick count
+     */
+    long getTicks();
+
+    /**
+     * Get the number of frames timed.
+     *
+     * @return The frame count
+     */
+    long getFrames();
+
+    /**
+     * Get the number of frames that took longer to draw and show than the frame period.
+     *
+     * @return The overrun count
+     */
+    long getFrameOverruns();
+
+    /**
+     * Get the number of ticks that took longer to run than the real time they simulate.
+     *
+     * @return The overrun count
+     */
+    long getTickOverruns();
+
+    /**
+     * Get the number of frames skipped or missed because the game fell behind.
+     *
+     * @return The dropped frame count
+     */
+    long getDroppedFrames();
+
+    /**
+     * Get the 99th percentile of the time of a tick.
+     *
+     * @return The time in microseconds
+     */
+    double getUpdateP99Micros();
+
+    /**
+     * Get the 99th percentile of the time spent drawing a frame.
+     *
+     * @return The time in microseconds
+     */
+    double getDrawP99Micros();
+
+    /**
+     * Get the 99th percentile of the time spent showing a drawn frame.
+     *
+     * @return The time in microseconds
+     */
+    double getShowP99Micros();
+
+    /**
+     * Get the 99th percentile of the time the simulation slept between wake-ups.
+     *
+     * @return The time in microseconds
+     */
+    double getSleepP99Micros();
+
+    /**
+     * Get the mean number of collision queries per tick.
+     *
+     * @return The mean count
+     */
+    double getMeanQueriesPerTick();
+
+    /**
+     * Get the mean number of rectangles tested by the collision queries of a tick.
+     *
+     * @return The mean count
+     */
+    double getMeanRectangleTestsPerTick();
+
+    /**
+     * Get the largest number of rectangles tested by the collision queries of a tick.
+     *
+     * @return The largest count
+     */
+    long getMaxRectangleTestsPerTick();
+
+    /**
+     * Get a summary of every timing and count, one line per phase.
+     *
+     * @return The summary
+     */
+    String getSummary();
+
+    /**
+     * Get a percentile of the time of a phase.
+     *
+     * @param phase      The name of the phase: update, draw, show or sleep
+     * @param percentile The percentile, from 0 to 100
+     * @return The time in microseconds
+     */
+    double percentileMicros(String phase, double percentile);
+
+    /**
+     * Forget every recorded timing and count.
+     */
+    void reset();
+}
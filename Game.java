@@ -3,196 +3,211 @@
 
 import biuoop.DrawSurface;
 import biuoop.GUI;
-import biuoop.Sleeper;
 import java.awt.Color;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Random;
 
 /**
- * The main game class that handles the game environment, sprites, and game logic.
+ * The main game class: a GUI window around a headless {@link World}.
+ * The world holds the game environment, sprites and game logic; the game feeds it the window's
+ * keyboard and runs it in a fixed-timestep {@link GameLoop}, while a {@link RenderThread} draws
+ * the snapshots the loop publishes into the window.
  */
 public class Game {
-    // Collection of all sprites in the game
-    private SpriteCollection sprites;
-    // Environment that holds all collidable objects
-    private GameEnvironment environment;
+    // The simulated world
+    private World world;
     // GUI for the game window
     private GUI gui;
-    // Sleeper to control the frame rate
-    private Sleeper sleeper;
-    // Paddle controlled by the player
-    private Paddle paddle;
+    // Loop that runs the world at a fixed tick rate
+    private GameLoop loop;
+    // Renderer that draws the world's snapshots into the window on its own thread
+    private RenderThread renderThread;
+    // Seed of the random generator the world was initialized with
+    private long seed;
+    // The level file the world was initialized from, or null for the seeded default level
+    private Path level;
+    // Records where the time of each frame goes, or null
+    private FrameStats stats;
     // Constant color for the paddle
-    public static final Color VERY_LIGHT_RED = new Color(255, 102, 102, 255);
-    // List to keep track of all balls in the game
-    public static List<Ball> balls = new ArrayList<>();
+    public static final Color VERY_LIGHT_RED = World.VERY_LIGHT_RED;
 
     /**
      * Constructor to initialize the game.
      */
     public Game() {
-        // Initialize the sprite collection
-        this.sprites = new SpriteCollection();
-        // Initialize the game environment with screen dimensions
-        this.environment = new GameEnvironment(800, 600);
+        // Initialize the world with screen dimensions
+        this.world = new World(800, 600);
         // Initialize the GUI with the title and dimensions
-        this.gui = new GUI("NEW GAME", this.environment.getScreenWidth(), this.environment.getScreenHeight());
-        // Initialize the sleeper
-        this.sleeper = new Sleeper();
-        // Initialize the paddle with position, size, color, and keyboard sensor
-        this.paddle = new Paddle(new Rectangle(new Point(400 - 60, 570),
-                90, 23), VERY_LIGHT_RED, gui.getKeyboardSensor(), 800);
-        // Add the paddle to the game
-        paddle.addToGame(this);
+        this.gui = new GUI("NEW GAME", this.world.getEnvironment().getScreenWidth(),
+                this.world.getEnvironment().getScreenHeight());
+        // Initialize the loop at 60 ticks and 60 frames per second
+        this.loop = new GameLoop(this.world, 60, 60);
+        // Read input from the window's keyboard
+        this.world.setInput(this.gui.getKeyboardSensor());
+        // Render the world into the window
+        this.world.setRenderer((w, alpha) -> {
+            // Get the drawing surface
+            DrawSurface d = this.gui.getDrawSurface();
+            // Draw all sprites on the surface, between the previous and current tick
+            w.drawOn(d, alpha);
+            // Show the drawn surface on the GUI
+            this.gui.show(d);
+        });
+    }
+
+    /**
+     * Get the loop that runs the game, to change its tick rate or fast-forward, or read its
+     * jitter statistics.
+     *
+     * @return The game loop
+     */
+    public GameLoop getLoop() {
+        return this.loop;
+    }
+
+    /**
+     * Get the renderer that draws the game while it runs.
+     *
+     * @return The render thread, or null before the game runs
+     */
+    public RenderThread getRenderThread() {
+        return this.renderThread;
+    }
+
+    /**
+     * Record the time of the ticks, frames and waits of the game into the given stats. Call this
+     * before running the game.
+     *
+     * @param frameStats The stats, or null to record nothing
+     */
+    public void setStats(FrameStats frameStats) {
+        this.stats = frameStats;
+        this.loop.setStats(frameStats);
+    }
+
+    /**
+     * Get the world simulated by the game.
+     *
+     * @return The world
+     */
+    public World getWorld() {
+        return this.world;
     }
 
     /**
      * Add a collidable object to the game environment.
      *
      * @param c The collidable object to add
+     * @return The handle of the collidable, used to remove it
      */
-    public void addCollidable(Collidable c) {
-        // Add the collidable to the environment
-        this.environment.addCollidable(c);
+    public long addCollidable(Collidable c) {
+        // Add the collidable to the world
+        return this.world.addCollidable(c);
     }
 
     /**
      * Add a sprite to the sprite collection.
      *
      * @param s The sprite to add
+     * @return The handle of the sprite, used to remove it
+     */
+    public long addSprite(Sprite s) {
+        // Add the sprite to the world
+        return this.world.addSprite(s);
+    }
+
+    /**
+     * Initialize a new game: create the Blocks, Balls, and Paddle,
+     * and add them to the game.
      */
-    public void addSprite(Sprite s) {
-        // Add the sprite to the collection
-        this.sprites.addSprite(s);
+    public void initialize() {
+        // Initialize the default level with a fresh seed
+        initialize(System.nanoTime());
     }
 
     /**
-     * Add a ball to the static list of balls.
+     * Initialize a new game from a given seed, which fixes the ball positions and angles.
      *
-     * @param b The ball to add
+     * @param randomSeed The seed of the random generator
      */
-    public void addBallToList(Ball b) {
-        // Add the ball to the list
-        balls.add(b);
+    public void initialize(long randomSeed) {
+        // Keep the seed, so the game can be recorded
+        this.seed = randomSeed;
+        this.level = null;
+        // Initialize the default level with random ball positions and angles
+        this.world.initialize(new Random(randomSeed));
     }
 
     /**
-     * Initialize a new game: create the Blocks, Balls, and Paddle,
-     * and add them to the game.
+     * Initialize a new game from a level file of either form, instead of the default level. A game
+     * initialized this way cannot be recorded.
+     *
+     * @param level The level file, as read by {@link LevelFile}
+     * @throws IOException If the level cannot be read
      */
-    public void initialize() {
-        // Width of each block
-        int blockWidth = 55;
-        // Height of each block
-        int blockHeight = 23;
-        // Vertical gap where blocks start
-        int heightGap = 120;
-        // Number of balls to create
-        int numOfBalls = 2;
-        // Random object to generate random values
-        Random random = new Random();
-
-        // List to hold boundary blocks
-        List<Collidable> blocks = new ArrayList<>();
-        // Create and add the upper boundary block
-        blocks.add(new Block(new Rectangle(new Point(0, 0), 800, 10), Color.BLACK));
-        // Create and add the lower boundary block
-        blocks.add(new Block(new Rectangle(new Point(0, 590), 800, 10), Color.BLACK));
-        // Create and add the left boundary block
-        blocks.add(new Block(new Rectangle(new Point(0, 10), 10, 580), Color.BLACK));
-        // Create and add the right boundary block
-        blocks.add(new Block(new Rectangle(new Point(790, 10), 10, 580), Color.BLACK));
-
-        // Array of colors for the rows of blocks
-        Color[] colors = {Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN, Color.BLUE, Color.MAGENTA};
-        // Screen width
-        int screenWidth = this.environment.getScreenWidth();
-        // Screen height
-        int screenHeight = this.environment.getScreenHeight();
-
-        // Loop to create rows of blocks
-        for (int row = 0; row < 6; row++) {
-            // Number of blocks in the current row
-            int numBlocks = 12 - row;
-            // Y-coordinate of the current row
-            int y = heightGap + row * blockHeight;
-            // Loop to create blocks in the current row
-            for (int col = 0; col < numBlocks; col++) {
-                // X-coordinate of the current block
-                int x = screenWidth - 10 - (numBlocks - col) * blockWidth;
-                // Upper-left point of the current block
-                Point upperLeft = new Point(x, y);
-                // Create the rectangle for the current block
-                Rectangle rect = new Rectangle(upperLeft, blockWidth, blockHeight);
-                // Create the block with the rectangle and color
-                Block block = new Block(rect, colors[row]);
-                // Add the block to the game
-                block.addToGame(this);
-            }
-        }
+    public void initialize(Path level) throws IOException {
+        // Stream the blocks and balls of the level into the world
+        LevelFile.loadInto(level, this.world);
+        this.level = level;
+    }
 
-        // Add boundary blocks to the environment
-        for (Collidable block : blocks) {
-            this.environment.addCollidable(block);
-        }
+    /**
+     * Get the seed the game was initialized with.
+     *
+     * @return The seed
+     */
+    public long getSeed() {
+        return this.seed;
+    }
 
-        // Add boundary blocks as sprites to the game
-        for (Collidable block : blocks) {
-            if (Block.class.isAssignableFrom(block.getClass())) {
-                this.sprites.addSprite((Block) block);
-            }
+    /**
+     * Start recording the seed and the keys of every tick, so the game can be replayed headless.
+     * Call this after initializing and before running the game. A replay rebuilds the world from
+     * the seed alone, so only games initialized from a seed can be recorded.
+     *
+     * @return The recording, to be written once the game stops
+     * @throws IllegalStateException If the game was initialized from a level file
+     */
+    public InputRecording startRecording() {
+        if (this.level != null) {
+            throw new IllegalStateException("A game initialized from the level file " + this.level
+                    + " cannot be recorded, since a replay rebuilds the world from the seed alone");
         }
+        // Sample the window's keyboard through the recording
+        InputRecording recording = InputRecording.record(this.seed, this.world, this.gui.getKeyboardSensor());
+        this.world.setInput(recording);
+        return recording;
+    }
 
-        // Loop to create balls
-        for (int i = 0; i < numOfBalls; i++) {
-            // Generate random X-coordinate for the ball's starting position
-            double startX = 30 + random.nextDouble() * (650 - 30);
-            // Generate random Y-coordinate for the ball's starting position
-            double startY = 500 + random.nextDouble();
-            // Create the ball with the starting position, radius, color, and environment
-            Ball ball = new Ball(new Point(startX, startY), 8, Color.black, 0, 0, screenWidth, this.environment);
-            // Set the velocity of the ball with a random angle and speed
-            ball.setVelocity(Velocity.fromAngleAndSpeed(random.nextInt(360), 7));
-            // Add the ball to the game
-            ball.addToGame(this);
-            // Add the ball to the list of balls
-            addBallToList(ball);
-        }
+    /**
+     * Close the game window.
+     */
+    public void close() {
+        this.gui.close();
     }
 
     /**
      * Run the game -- start the animation loop.
+     * The world is simulated on the calling thread and drawn on a separate render thread.
      */
     public void run() {
-        // Frames per second for the game
-        int framesPerSecond = 60;
-        // Milliseconds per frame to control frame rate
-        int millisecondsPerFrame = 1000 / framesPerSecond;
-
-        // Infinite loop to run the game
-        while (true) {
-            // Get the current time in milliseconds
-            long startTime = System.currentTimeMillis(); // timing
-
-            // Get the drawing surface
-            DrawSurface d = this.gui.getDrawSurface();
-            // Draw all sprites on the surface
-            this.sprites.drawAllOn(d);
-            // Show the drawn surface on the GUI
-            this.gui.show(d);
-
-            // Notify all sprites that time has passed
-            this.sprites.notifyAllTimePassed();
-
-            // Calculate the time used for drawing and updating
-            long usedTime = System.currentTimeMillis() - startTime;
-            // Calculate the remaining time to sleep to maintain frame rate
-            long milliSecondLeftToSleep = millisecondsPerFrame - usedTime;
-            // Sleep for the remaining time if needed
-            if (milliSecondLeftToSleep > 0) {
-                this.sleeper.sleepFor(milliSecondLeftToSleep);
-            }
+        int width = this.world.getEnvironment().getScreenWidth();
+        int height = this.world.getEnvironment().getScreenHeight();
+        // Hand snapshots of the world from the loop to the renderer
+        TripleBuffer<WorldSnapshot> snapshots = new TripleBuffer<>(() -> new WorldSnapshot(width, height));
+        this.loop.setSnapshotBuffer(snapshots);
+        // Start drawing the snapshots at 60 frames per second
+        this.renderThread = new RenderThread(snapshots, this.gui::getDrawSurface, this.gui::show, 60);
+        this.renderThread.setStats(this.stats);
+        Thread thread = new Thread(this.renderThread, "render");
+        thread.setDaemon(true);
+        thread.start();
+        // Run the world until the loop is stopped
+        try {
+            this.loop.run();
+        } finally {
+            this.renderThread.stop();
         }
     }
 }
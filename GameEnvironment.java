@@ -2,14 +2,81 @@
 // ID: 322624693
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Represents the game environment that holds all collidable objects and manages collisions.
+ * Blocks never move, so they are bucketed in a uniform grid and a trajectory query only
+ * tests the blocks in the cells the trajectory passes through. Any other collidable, such as
+ * the paddle, may swap its rectangle between queries, so it is kept in a dynamic AABB tree
+ * whose fat boxes absorb small moves and are reinserted only when left.
+ * Trajectories can be queried as a line, or as a circle swept along the line, which gives the
+ * time of impact and contact normal of a ball of that radius.
+ * Each collidable is stored under an id, which is handed out as a generational {@link Handle}.
+ * Removing a collidable takes constant time: the last collidable of the list takes its place and
+ * its id is reused by a later addition. Removals requested while removals are deferred, such as
+ * from a hit() during a tick, are applied when the deferral ends, so queries made meanwhile keep
+ * seeing the same collidables.
  */
 public class GameEnvironment {
-    // List of collidable objects in the environment
+    // Width and height of a single grid cell
+    private static final double CELL_SIZE = 32;
+    // Distance rectangles are grown by in the broad phase, covering rounding errors
+    static final double PADDING = 4 * Line.EPSILON;
+    // Distance the boxes of moving collidables are grown by in the tree
+    private static final double FAT_MARGIN = 8;
+    // List of collidable objects in the environment, in no particular order
     private List<Collidable> collidables;
+    // Collidable stored under each id, or null for a free id
+    private Collidable[] slots;
+    // Generation of each id, advanced when its collidable is removed
+    private int[] generations;
+    // Position in the list of the collidable under each id
+    private int[] positions;
+    // Id of the collidable at each position in the list
+    private int[] listIds;
+    // Index in the moving arrays of each id, or -1 for a static collidable
+    private int[] movingIndexes;
+    // Ids freed by removals, reused before new ones
+    private int[] freeIds;
+    // Number of entries in freeIds
+    private int freeCount;
+    // Number of ids handed out so far, free or not
+    private int idCount;
+    // Handles of the removals waiting for the deferral to end
+    private long[] pendingRemovals;
+    // Number of entries in pendingRemovals
+    private int pendingCount;
+    // Number of deferrals begun and not yet ended
+    private int deferDepth;
+    // Grid holding the ids (indexes in collidables) of the static collidables
+    private final SpatialGrid grid;
+    // Bounds of the rectangle of each static collidable, by id, for the batch tests of the queries
+    private final StaticRectangles staticRectangles;
+    // Tree holding the ids of the collidables that may move
+    private final AabbTree movingTree;
+    // Ids of the collidables that may move and are therefore kept out of the grid
+    private int[] movingIds;
+    // Tree leaf of each moving collidable
+    private int[] movingLeaves;
+    // Rectangle of each moving collidable when its leaf was last updated
+    private Rectangle[] movingRects;
+    // Number of valid entries in the moving arrays
+    private int movingCount;
+    // Number of changes to the collidables so far, so stale query results can be detected
+    private int version;
+    // Number of additions and removals of collidables so far
+    private int membershipVersion;
+    // Query used by the methods of the environment itself
+    private final CollisionQuery query;
+    // Number of trajectory queries run by all queries of the environment, added to by every thread
+    private final LongAdder queryCounter;
+    // Number of rectangles tested by all queries of the environment, added to by every thread
+    private final LongAdder testCounter;
+    // Holder for the hit of a plain line, used to find the hit point
+    private final RayHit lineHit;
     // Width of the game screen
     private final int screenWidth;
     // Height of the game screen
@@ -26,12 +93,33 @@ public class GameEnvironment {
         this.screenWidth = screenWidth;
         // Initialize the screen height
         this.screenHeight = screenHeight;
-        // Initialize the list of collidables
+        // Initialize the list of collidables and the arrays of their ids
         this.collidables = new ArrayList<>();
+        this.slots = new Collidable[16];
+        this.generations = new int[16];
+        this.positions = new int[16];
+        this.listIds = new int[16];
+        this.movingIndexes = new int[16];
+        this.freeIds = new int[16];
+        this.pendingRemovals = new long[16];
+        // Initialize the grid over the screen area
+        this.grid = new SpatialGrid(0, 0, screenWidth, screenHeight, CELL_SIZE);
+        this.staticRectangles = new StaticRectangles(16);
+        // Initialize the tree of moving collidables
+        this.movingTree = new AabbTree(FAT_MARGIN);
+        // Initialize the id arrays
+        this.movingIds = new int[4];
+        this.movingLeaves = new int[4];
+        this.movingRects = new Rectangle[4];
+        // Initialize the environment's own query and the reusable hit holder
+        this.queryCounter = new LongAdder();
+        this.testCounter = new LongAdder();
+        this.query = new CollisionQuery(this);
+        this.lineHit = new RayHit();
     }
 
     /**
-     * Get the list of collidable objects.
+     * Get the list of collidable objects. Removals reorder the list.
      *
      * @return The list of collidables
      */
@@ -64,41 +152,437 @@ public class GameEnvironment {
      * Add the given collidable to the environment.
      *
      * @param c The collidable to add
+     * @return The handle of the collidable, used to remove it
      */
-    public void addCollidable(Collidable c) {
-        // Add the collidable to the list
-        collidables.add(c);
+    public long addCollidable(Collidable c) {
+        return addCollidable(c, true);
+    }
+
+    /**
+     * Add a block whose id the caller has already put into the grid, or will, such as from a
+     * prebuilt index. Only valid while {@link #hasFreeIds()} is false, so the block takes the id
+     * {@link #getIdCount()} had before the call.
+     *
+     * @param block The block to add
+     * @return The handle of the block, used to remove it
+     */
+    long addIndexedBlock(Block block) {
+        return addCollidable(block, false);
+    }
+
+    /**
+     * Check whether ids of removed collidables wait to be reused, so new ids are not consecutive.
+     *
+     * @return True if there are free ids
+     */
+    boolean hasFreeIds() {
+        return this.freeCount > 0;
+    }
+
+    /**
+     * Helper method to add a collidable.
+     *
+     * @param c      The collidable to add
+     * @param bucket Whether to put a block into the grid
+     * @return The handle of the collidable
+     */
+    private long addCollidable(Collidable c, boolean bucket) {
+        // Reuse a freed id if there is one
+        int id;
+        if (this.freeCount > 0) {
+            id = this.freeIds[--this.freeCount];
+        } else {
+            if (this.idCount == this.slots.length) {
+                int capacity = this.idCount * 2;
+                this.slots = Arrays.copyOf(this.slots, capacity);
+                this.generations = Arrays.copyOf(this.generations, capacity);
+                this.positions = Arrays.copyOf(this.positions, capacity);
+                this.listIds = Arrays.copyOf(this.listIds, capacity);
+                this.movingIndexes = Arrays.copyOf(this.movingIndexes, capacity);
+                this.staticRectangles.ensureCapacity(capacity);
+            }
+            id = this.idCount++;
+        }
+        this.slots[id] = c;
+        // Add the collidable to the end of the list
+        this.positions[id] = this.collidables.size();
+        this.listIds[this.collidables.size()] = id;
+        this.collidables.add(c);
+        this.version++;
+        this.membershipVersion++;
+        if (c instanceof Block) {
+            // A block's rectangle never changes, so it can be mirrored and bucketed once
+            this.staticRectangles.set(id, c.getCollisionRectangle());
+            if (bucket) {
+                this.grid.insert(id, c.getCollisionRectangle(), PADDING);
+            }
+            this.movingIndexes[id] = -1;
+        } else {
+            if (this.movingCount == this.movingIds.length) {
+                this.movingIds = Arrays.copyOf(this.movingIds, this.movingCount * 2);
+                this.movingLeaves = Arrays.copyOf(this.movingLeaves, this.movingCount * 2);
+                this.movingRects = Arrays.copyOf(this.movingRects, this.movingCount * 2);
+            }
+            Rectangle rect = c.getCollisionRectangle();
+            this.movingIds[this.movingCount] = id;
+            this.movingLeaves[this.movingCount] = this.movingTree.insert(id, rect);
+            this.movingRects[this.movingCount] = rect;
+            this.movingIndexes[id] = this.movingCount;
+            this.movingCount++;
+        }
+        return Handle.of(id, this.generations[id]);
+    }
+
+    /**
+     * Check whether a handle refers to a collidable that is still in the environment. A collidable
+     * whose removal is deferred is still in it.
+     *
+     * @param handle The handle of the collidable
+     * @return True if the collidable is in the environment, false if it was removed
+     */
+    public boolean contains(long handle) {
+        int id = Handle.index(handle);
+        return id >= 0 && id < this.idCount && this.slots[id] != null
+                && this.generations[id] == Handle.generation(handle);
+    }
+
+    /**
+     * Get the collidable stored under an id, such as the one {@link #lastCollisionId()} reports.
+     *
+     * @param id The id of the collidable
+     * @return The collidable, or null if the id is free
+     */
+    public Collidable getCollidable(int id) {
+        return this.slots[id];
+    }
+
+    /**
+     * Remove a collidable from the environment in constant time. While removals are deferred, the
+     * removal is only queued and the collidable stays until the deferral ends.
+     *
+     * @param handle The handle returned when the collidable was added
+     * @return True if the handle referred to a collidable, false if it was already removed
+     */
+    public boolean removeCollidable(long handle) {
+        if (!contains(handle)) {
+            return false;
+        }
+        if (this.deferDepth > 0) {
+            if (this.pendingCount == this.pendingRemovals.length) {
+                this.pendingRemovals = Arrays.copyOf(this.pendingRemovals, this.pendingCount * 2);
+            }
+            this.pendingRemovals[this.pendingCount++] = handle;
+            return true;
+        }
+        remove(Handle.index(handle));
+        return true;
+    }
+
+    /**
+     * Start deferring removals until the matching {@link #endDeferral()}. Deferrals may be nested.
+     */
+    public void beginDeferral() {
+        this.deferDepth++;
+    }
+
+    /**
+     * End a deferral begun by {@link #beginDeferral()}, and apply the queued removals once the
+     * outermost deferral ends.
+     */
+    public void endDeferral() {
+        if (--this.deferDepth > 0) {
+            return;
+        }
+        for (int i = 0; i < this.pendingCount; i++) {
+            // A collidable may have been queued more than once
+            if (contains(this.pendingRemovals[i])) {
+                remove(Handle.index(this.pendingRemovals[i]));
+            }
+        }
+        this.pendingCount = 0;
+    }
+
+    /**
+     * Helper method to remove the collidable under an id at once.
+     *
+     * @param id The id of the collidable
+     */
+    private void remove(int id) {
+        Collidable c = this.slots[id];
+        int moving = this.movingIndexes[id];
+        if (moving < 0) {
+            this.grid.remove(id, c.getCollisionRectangle(), PADDING);
+        } else {
+            this.movingTree.remove(this.movingLeaves[moving]);
+            // Move the last moving collidable into the freed place
+            int last = --this.movingCount;
+            this.movingIds[moving] = this.movingIds[last];
+            this.movingLeaves[moving] = this.movingLeaves[last];
+            this.movingRects[moving] = this.movingRects[last];
+            this.movingRects[last] = null;
+            this.movingIndexes[this.movingIds[moving]] = moving;
+        }
+        // Move the last collidable of the list into the freed place
+        int position = this.positions[id];
+        int last = this.collidables.size() - 1;
+        int lastId = this.listIds[last];
+        this.collidables.set(position, this.collidables.get(last));
+        this.collidables.remove(last);
+        this.listIds[position] = lastId;
+        this.positions[lastId] = position;
+        // Free the id, making its handles stale
+        this.slots[id] = null;
+        this.generations[id]++;
+        if (this.freeCount == this.freeIds.length) {
+            this.freeIds = Arrays.copyOf(this.freeIds, this.freeCount * 2);
+        }
+        this.freeIds[this.freeCount++] = id;
+        this.version++;
+        this.membershipVersion++;
+    }
+
+    /**
+     * Get the number of changes to the collidables so far: additions, removals, and moves of
+     * collidables that may move, counted when {@link #refreshMovingCollidables()} sees them. A query result computed
+     * at one version is still valid while the version is unchanged.
+     *
+     * @return The version of the environment
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Get the number of additions and removals of collidables so far. Unlike
+     * {@link #getVersion()}, moves do not count, so the set of collidables under each id is
+     * unchanged while this number is.
+     *
+     * @return The membership version of the environment
+     */
+    int getMembershipVersion() {
+        return this.membershipVersion;
+    }
+
+    /**
+     * Create a query of its own for a thread that queries the environment alongside others. The
+     * environment keeps no reference to it, so a query dropped by its thread is simply collected.
+     *
+     * @return The new query
+     */
+    public CollisionQuery newQuery() {
+        return new CollisionQuery(this);
+    }
+
+    /**
+     * Count a finished query in the totals of the environment. Called by every query at the end
+     * of each of its queries, on whichever thread ran it.
+     *
+     * @param tests The number of rectangles the query tested
+     */
+    void countQuery(long tests) {
+        this.queryCounter.increment();
+        this.testCounter.add(tests);
+    }
+
+    /**
+     * Get the number of trajectory queries run against the environment by all of its queries.
+     * Read it on the simulating thread between ticks, when no other thread is querying.
+     *
+     * @return The query count
+     */
+    public long getQueryCount() {
+        return this.queryCounter.sum();
+    }
+
+    /**
+     * Get the number of rectangles tested exactly by all queries of the environment, not counting
+     * those the batch kernel ruled out. Read it on the simulating thread between ticks, when no
+     * other thread is querying.
+     *
+     * @return The rectangle test count
+     */
+    public long getRectangleTestCount() {
+        return this.testCounter.sum();
     }
 
     /**
      * Get the information about the closest collision that is going to occur.
+     * Hits are compared by trajectory parameter, and ties are broken by the lower id, which is
+     * insertion order until ids of removed collidables are reused. Only the grid cells along the
+     * trajectory are visited, and the walk stops once no unvisited cell can hold a closer hit.
      *
      * @param trajectory The trajectory line of the moving object
      * @return The collision information of the closest collision, or null if no collision occurs
      */
     public CollisionInfo getClosestCollision(Line trajectory) {
-        // Initialize the closest collision info
-        CollisionInfo closestCollision = null;
-        // Initialize the closest distance with the maximum value
-        double closestDistance = Double.MAX_VALUE;
-        // Loop through each collidable object
-        for (Collidable c : collidables) {
-            // Get the closest intersection point with the current collidable
-            Point intersect = trajectory.closestIntersectionToStartOfLine(c.getCollisionRectangle());
-            // Check if there is an intersection
-            if (intersect != null) {
-                // Calculate the distance from the start of the trajectory to the intersection point
-                double distance = trajectory.start().distance(intersect);
-                // Check if this is the closest intersection found so far
-                if (distance < closestDistance) {
-                    // Update the closest distance
-                    closestDistance = distance;
-                    // Update the closest collision info
-                    closestCollision = new CollisionInfo(intersect, c);
-                }
+        refreshMovingCollidables();
+        CollisionQuery q = this.query;
+        if (!q.find(trajectory.startX(), trajectory.startY(),
+                trajectory.endX() - trajectory.startX(), trajectory.endY() - trajectory.startY(), 0)) {
+            return null;
+        }
+        // Only a real hit creates objects
+        Collidable c = q.lastCollisionObject();
+        this.lineHit.set(q.lastCollisionTime(), q.lastCollisionEdge());
+        Point collisionPoint = c.getCollisionRectangle().hitPoint(trajectory.startX(), trajectory.startY(),
+                trajectory.endX() - trajectory.startX(), trajectory.endY() - trajectory.startY(), this.lineHit);
+        return new CollisionInfo(collisionPoint, c, q.lastCollisionTime(),
+                this.lineHit.getNormalX(), this.lineHit.getNormalY());
+    }
+
+    /**
+     * Get the information about the closest collision of a circle moving along a trajectory.
+     * The collision point is where the circle touches the collidable, the time is the fraction of
+     * the trajectory travelled by the center until then, and the normal points out of the collidable.
+     * A circle that already overlaps a collidable collides at time 0 if it moves further into it.
+     *
+     * @param trajectory The trajectory line of the center of the circle
+     * @param radius     The radius of the circle
+     * @return The collision information of the closest collision, or null if no collision occurs
+     */
+    public CollisionInfo getClosestCollision(Line trajectory, double radius) {
+        if (!sweepCircle(trajectory.startX(), trajectory.startY(),
+                trajectory.endX() - trajectory.startX(), trajectory.endY() - trajectory.startY(), radius)) {
+            return null;
+        }
+        // Only a real hit creates objects
+        return new CollisionInfo(lastCollisionPoint(), lastCollisionObject(), lastCollisionTime(),
+                lastCollisionNormalX(), lastCollisionNormalY());
+    }
+
+    /**
+     * Find the closest collision of a circle moving along a trajectory without creating any objects.
+     * This is the primitive form of {@link #getClosestCollision(Line, double)} for tight loops; the
+     * result is read with the lastCollision methods and is valid until the next query.
+     *
+     * @param x      The x-coordinate of the center at the start of the trajectory
+     * @param y      The y-coordinate of the center at the start of the trajectory
+     * @param dx     The x extent of the trajectory
+     * @param dy     The y extent of the trajectory
+     * @param radius The radius of the circle
+     * @return True if a collision occurs, false otherwise
+     */
+    public boolean sweepCircle(double x, double y, double dx, double dy, double radius) {
+        refreshMovingCollidables();
+        return this.query.find(x, y, dx, dy, radius);
+    }
+
+    /**
+     * Get the collidable hit by the last successful {@link #sweepCircle} query.
+     *
+     * @return The collidable object
+     */
+    public Collidable lastCollisionObject() {
+        return this.query.lastCollisionObject();
+    }
+
+    /**
+     * Get the id of the collidable hit by the last successful {@link #sweepCircle} query, which
+     * {@link #getCollidable(int)} maps back to the collidable.
+     *
+     * @return The id of the collidable
+     */
+    public int lastCollisionId() {
+        return this.query.lastCollisionId();
+    }
+
+    /**
+     * Get the time of impact of the last successful {@link #sweepCircle} query.
+     *
+     * @return The fraction of the trajectory travelled when the collision occurs
+     */
+    public double lastCollisionTime() {
+        return this.query.lastCollisionTime();
+    }
+
+    /**
+     * Get the x component of the contact normal of the last successful {@link #sweepCircle} query.
+     *
+     * @return The x component of the outward unit normal
+     */
+    public double lastCollisionNormalX() {
+        return this.query.lastCollisionNormalX();
+    }
+
+    /**
+     * Get the y component of the contact normal of the last successful {@link #sweepCircle} query.
+     *
+     * @return The y component of the outward unit normal
+     */
+    public double lastCollisionNormalY() {
+        return this.query.lastCollisionNormalY();
+    }
+
+    /**
+     * Get the contact point of the last successful {@link #sweepCircle} query.
+     *
+     * @return The point where the circle touches the collidable
+     */
+    public Point lastCollisionPoint() {
+        return this.query.lastCollisionPoint();
+    }
+
+    /**
+     * Move the tree leaf of every moving collidable whose rectangle was swapped since the last
+     * refresh. The tree only does work when a rectangle leaves its fat box. The queries of the
+     * environment itself refresh first; call this before querying through other queries.
+     */
+    public void refreshMovingCollidables() {
+        for (int i = 0; i < this.movingCount; i++) {
+            Rectangle rect = this.slots[this.movingIds[i]].getCollisionRectangle();
+            Rectangle previous = this.movingRects[i];
+            if (rect != previous) {
+                double dx = rect.getUpperLeft().getX() - previous.getUpperLeft().getX();
+                double dy = rect.getUpperLeft().getY() - previous.getUpperLeft().getY();
+                this.movingTree.move(this.movingLeaves[i], rect, dx, dy);
+                this.movingRects[i] = rect;
+                this.version++;
             }
         }
-        // Return the closest collision info
-        return closestCollision;
+    }
+
+    /**
+     * Get the number of ids handed out so far, which bounds every id.
+     *
+     * @return The number of ids
+     */
+    int getIdCount() {
+        return this.idCount;
+    }
+
+    /**
+     * Get the array of the collidables stored under each id. The array is replaced when it grows.
+     *
+     * @return The collidables by id
+     */
+    Collidable[] getSlots() {
+        return this.slots;
+    }
+
+    /**
+     * Get the grid holding the ids of the static collidables.
+     *
+     * @return The grid
+     */
+    SpatialGrid getGrid() {
+        return this.grid;
+    }
+
+    /**
+     * Get the bounds of the rectangles of the static collidables, by id.
+     *
+     * @return The rectangles
+     */
+    StaticRectangles getStaticRectangles() {
+        return this.staticRectangles;
+    }
+
+    /**
+     * Get the tree holding the ids of the collidables that may move.
+     *
+     * @return The tree
+     */
+    AabbTree getMovingTree() {
+        return this.movingTree;
     }
 }
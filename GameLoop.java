@@ -0,0 +1,368 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+/**
+ * A fixed-timestep loop that runs a World at a constant tick rate, independent of how long
+ * rendering takes. Real time is measured with System.nanoTime() and accumulated; every full tick
+ * period in the accumulator runs one tick, and frames are rendered in between, interpolated by the
+ * fraction of a tick left over. Frames are paced by a {@link Pacer}, and the lateness of every
+ * frame start (its jitter) is recorded. When the loop falls behind, an {@link OverloadPolicy}
+ * caps the catch-up ticks of a wake-up, skips frames and leaves out optional work, so the game
+ * keeps its speed as long as the ticks alone fit in real time.
+ * Given {@link FrameStats}, the loop records the time of every tick and wait into them.
+ * Given a snapshot buffer, the loop renders nothing itself: it publishes a {@link WorldSnapshot}
+ * after the ticks of each wake-up and sleeps until the next tick is due, leaving the frames to a
+ * {@link RenderThread}.
+ */
+public class GameLoop {
+    // Largest backlog of real time the loop keeps running ticks for, so a stall does not cause an
+    // endless burst of catch-up ticks
+    private static final long MAX_BACKLOG_NANOS = 250_000_000;
+    // The world being run
+    private final World world;
+    // Waits between frames
+    private final Pacer pacer;
+    // Decides what to leave out when the loop falls behind
+    private final OverloadPolicy overload;
+    // Simulated nanoseconds per tick
+    private long tickNanos;
+    // Real nanoseconds per rendered frame
+    private long frameNanos;
+    // Simulated time per real time
+    private double fastForward;
+    // Buffer the snapshots are published to, or null to render in the loop
+    private TripleBuffer<WorldSnapshot> snapshots;
+    // Whether the loop should keep running
+    private volatile boolean running;
+    // Number of ticks after which the loop stops, or 0 to run until stopped
+    private volatile long tickLimit;
+    // Saves periodic checkpoints of the world, or null
+    private Checkpointer checkpointer;
+    // Streams the state of the world after each tick, or null
+    private StatePublisher statePublisher;
+    // Records the timings of the ticks, frames and waits, or null
+    private volatile FrameStats stats;
+    // Number of frames rendered
+    private long frames;
+    // Number of ticks run
+    private volatile long ticks;
+    // Time spent running ticks, in nanoseconds
+    private volatile long simulationNanos;
+    // Number of wake-ups whose jitter was recorded
+    private long wakeUps;
+    // Sum of the jitter of all frames, in nanoseconds
+    private double jitterSum;
+    // Sum of the squared jitter of all frames
+    private double jitterSquaredSum;
+    // Largest jitter of a frame, in nanoseconds
+    private long maxJitter;
+
+    /**
+     * Constructor to create a loop for a world.
+     *
+     * @param world           The world to run
+     * @param ticksPerSecond  The tick rate of the simulation
+     * @param framesPerSecond The rate at which frames are rendered
+     */
+    public GameLoop(World world, double ticksPerSecond, double framesPerSecond) {
+        this.world = world;
+        this.pacer = new Pacer();
+        this.overload = new OverloadPolicy();
+        this.fastForward = 1;
+        setTickRate(ticksPerSecond);
+        setFrameRate(framesPerSecond);
+    }
+
+    /**
+     * Set the tick rate of the simulation.
+     *
+     * @param ticksPerSecond The number of ticks per simulated second
+     */
+    public void setTickRate(double ticksPerSecond) {
+        this.tickNanos = (long) (1e9 / ticksPerSecond);
+    }
+
+    /**
+     * Set the rate at which frames are rendered.
+     *
+     * @param framesPerSecond The number of frames per real second
+     */
+    public void setFrameRate(double framesPerSecond) {
+        this.frameNanos = (long) (1e9 / framesPerSecond);
+    }
+
+    /**
+     * Set how fast simulated time passes relative to real time.
+     *
+     * @param multiplier The fast-forward multiplier, 1 for real time
+     */
+    public void setFastForward(double multiplier) {
+        this.fastForward = multiplier;
+    }
+
+    /**
+     * Publish snapshots of the world to a buffer for a render thread instead of rendering in the
+     * loop. Must be set before {@link #run()}.
+     *
+     * @param buffer The snapshot buffer, or null to render in the loop
+     */
+    public void setSnapshotBuffer(TripleBuffer<WorldSnapshot> buffer) {
+        this.snapshots = buffer;
+    }
+
+    /**
+     * Set the checkpointer told about each tick, which saves periodic checkpoints of the world in
+     * the background.
+     *
+     * @param checkpoints The checkpointer, or null to save no checkpoints
+     */
+    public void setCheckpointer(Checkpointer checkpoints) {
+        this.checkpointer = checkpoints;
+    }
+
+    /**
+     * Set the publisher told about each tick, which streams the state of the world to its
+     * subscribers without waiting for them.
+     *
+     * @param publisher The publisher, or null to stream nothing
+     */
+    public void setStatePublisher(StatePublisher publisher) {
+        this.statePublisher = publisher;
+    }
+
+    /**
+     * Get the policy deciding what the loop leaves out when it falls behind, to tune it or read
+     * how many frames it dropped.
+     *
+     * @return The overload policy
+     */
+    public OverloadPolicy getOverloadPolicy() {
+        return this.overload;
+    }
+
+    /**
+     * Set the stats the loop records the time of each tick and wait into, along with the frames
+     * it renders itself.
+     *
+     * @param frameStats The stats, or null to record nothing
+     */
+    public void setStats(FrameStats frameStats) {
+        this.stats = frameStats;
+    }
+
+    /**
+     * Stop the loop once a number of ticks were run in total.
+     *
+     * @param limit The number of ticks, or 0 to run until {@link #stop()} is called
+     */
+    public void setTickLimit(long limit) {
+        this.tickLimit = limit;
+    }
+
+    /**
+     * Run the loop until {@link #stop()} is called, the tick limit is reached or the thread is
+     * interrupted.
+     */
+    public void run() {
+        this.running = true;
+        long previous = System.nanoTime();
+        long nextWakeUp = previous;
+        double accumulator = 0;
+        while (this.running) {
+            long now = System.nanoTime();
+            recordJitter(now - nextWakeUp);
+            // Add the real time since the previous frame, scaled by the fast-forward multiplier
+            long elapsed = now - previous;
+            accumulator += elapsed * this.fastForward;
+            previous = now;
+            // Read the stats once per wake-up, so disabled stats cost a single check
+            FrameStats timings = this.stats;
+            if (timings != null && !timings.isEnabled()) {
+                timings = null;
+            }
+            long droppedBefore = this.overload.getDroppedFrames();
+            // Run the ticks that are due, up to the ticks of a frame and the catch-up limit
+            boolean stepped = accumulator >= this.tickNanos;
+            long tickStart = now;
+            int limit = (int) Math.ceil(this.frameNanos * this.fastForward / this.tickNanos)
+                    + this.overload.getMaxCatchUpTicks();
+            for (int n = 0; n < limit && this.running && accumulator >= this.tickNanos; n++) {
+                this.world.step();
+                this.ticks++;
+                if (timings != null) {
+                    long tickEnd = System.nanoTime();
+                    timings.afterTick(this.world, tickEnd - tickStart, (long) (this.tickNanos / this.fastForward));
+                    tickStart = tickEnd;
+                }
+                accumulator -= this.tickNanos;
+                if (this.checkpointer != null) {
+                    this.checkpointer.afterTick(this.world);
+                }
+                if (this.statePublisher != null) {
+                    this.statePublisher.afterTick(this.world);
+                }
+                if (this.tickLimit > 0 && this.ticks >= this.tickLimit) {
+                    this.running = false;
+                }
+            }
+            // Ticks left over stay due, but give up the time of a backlog too large to ever catch up
+            double maxBacklog = MAX_BACKLOG_NANOS * this.fastForward;
+            if (accumulator > maxBacklog) {
+                long dropped = (long) Math.ceil((accumulator - maxBacklog) / this.tickNanos);
+                this.overload.dropTicks(dropped);
+                accumulator -= dropped * this.tickNanos;
+            }
+            boolean behind = accumulator >= this.tickNanos;
+            this.simulationNanos += System.nanoTime() - now;
+            if (this.snapshots != null) {
+                // Hand the new tick to the render thread and sleep until the next one is due
+                if (stepped && this.overload.shouldRender(behind)) {
+                    // A degraded loop leaves out the previous tick, so frames are not interpolated
+                    this.snapshots.back().capture(this.world, now, (long) (this.tickNanos / this.fastForward),
+                            !this.overload.isDegraded());
+                    this.snapshots.publish();
+                }
+                // Go on right away if ticks are still due
+                nextWakeUp = now + Math.max(0, (long) ((this.tickNanos - accumulator) / this.fastForward));
+            } else if (this.overload.shouldRender(behind)) {
+                // Render between the previous and the current tick
+                long renderStart = System.nanoTime();
+                this.world.render(Math.min(1, accumulator / this.tickNanos));
+                this.frames++;
+                if (timings != null) {
+                    // The renderer draws and shows in one call, so both count as drawing
+                    long renderNanos = System.nanoTime() - renderStart;
+                    timings.record(FrameStats.Phase.DRAW, renderNanos);
+                    if (renderNanos > this.frameNanos) {
+                        timings.frameOverrun();
+                    }
+                }
+                nextWakeUp = nextFrame(nextWakeUp);
+            } else {
+                nextWakeUp = nextFrame(nextWakeUp);
+            }
+            this.overload.recordLoad(System.nanoTime() - now, elapsed);
+            if (timings != null && this.overload.getDroppedFrames() != droppedBefore) {
+                timings.framesDropped(this.overload.getDroppedFrames() - droppedBefore);
+            }
+            boolean waited;
+            if (timings != null) {
+                long sleepStart = System.nanoTime();
+                waited = this.pacer.waitUntil(nextWakeUp);
+                timings.record(FrameStats.Phase.SLEEP, System.nanoTime() - sleepStart);
+            } else {
+                waited = this.pacer.waitUntil(nextWakeUp);
+            }
+            if (!waited) {
+                // Interrupted, so stop instead of spinning through waits that return at once
+                this.running = false;
+            }
+        }
+    }
+
+    /**
+     * Helper method to find when the next frame of a loop rendering its own frames is due,
+     * skipping and counting the frames that were missed entirely.
+     *
+     * @param previousFrame The time the frame of this wake-up was due
+     * @return The time the next frame is due
+     */
+    private long nextFrame(long previousFrame) {
+        long next = previousFrame + this.frameNanos;
+        long late = System.nanoTime() - next;
+        if (late > this.frameNanos) {
+            long missed = late / this.frameNanos;
+            this.overload.dropFrames(missed);
+            next += missed * this.frameNanos;
+        }
+        return next;
+    }
+
+    /**
+     * Get the number of frames dropped because the loop fell behind. With a snapshot buffer, these
+     * are snapshots not published; the render thread counts its own dropped frames.
+     *
+     * @return The number of frames
+     */
+    public long getDroppedFrames() {
+        return this.overload.getDroppedFrames();
+    }
+
+    /**
+     * Stop the loop after the current frame.
+     */
+    public void stop() {
+        this.running = false;
+    }
+
+    /**
+     * Helper method to record how late a frame started.
+     *
+     * @param jitter The lateness of the frame start, in nanoseconds
+     */
+    private void recordJitter(long jitter) {
+        this.wakeUps++;
+        this.jitterSum += jitter;
+        this.jitterSquaredSum += (double) jitter * jitter;
+        this.maxJitter = Math.max(this.maxJitter, jitter);
+    }
+
+    /**
+     * Get the number of frames rendered by the loop itself, which is 0 with a snapshot buffer.
+     *
+     * @return The frame count
+     */
+    public long getFrames() {
+        return this.frames;
+    }
+
+    /**
+     * Get the number of ticks run.
+     *
+     * @return The tick count
+     */
+    public long getTicks() {
+        return this.ticks;
+    }
+
+    /**
+     * Get the time spent running ticks, excluding rendering and waiting. Divided by
+     * {@link #getTicks()} it gives the cost of a tick.
+     *
+     * @return The simulation time, in nanoseconds
+     */
+    public long getSimulationNanos() {
+        return this.simulationNanos;
+    }
+
+    /**
+     * Get the average lateness of a frame start, or of a wake-up with a snapshot buffer.
+     *
+     * @return The mean jitter, in nanoseconds
+     */
+    public double getMeanJitter() {
+        return this.wakeUps == 0 ? 0 : this.jitterSum / this.wakeUps;
+    }
+
+    /**
+     * Get the standard deviation of the lateness of frame starts or wake-ups.
+     *
+     * @return The jitter standard deviation, in nanoseconds
+     */
+    public double getJitterDeviation() {
+        if (this.wakeUps == 0) {
+            return 0;
+        }
+        double mean = getMeanJitter();
+        return Math.sqrt(Math.max(0, this.jitterSquaredSum / this.wakeUps - mean * mean));
+    }
+
+    /**
+     * Get the largest lateness of a frame start or wake-up.
+     *
+     * @return The maximal jitter, in nanoseconds
+     */
+    public long getMaxJitter() {
+        return this.maxJitter;
+    }
+}
@@ -0,0 +1,202 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+/**
+ * A game running in a {@link SessionHost}: a headless world ticked at a fixed rate. Instead of a
+ * thread sleeping between ticks, each tick is a short task the host's {@link TimingWheel} hands to
+ * the host's executor once it is due, and the task schedules the next tick when it ends, so a
+ * session holds no thread while it waits and its ticks never overlap.
+ * A session that falls more than a few ticks behind gives up the time rather than bursting through
+ * catch-up ticks, as the {@link GameLoop} does. A tick that throws stops its own session only.
+ * The world belongs to the session's ticks while it runs; other threads should only feed it input
+ * through a thread-safe {@link biuoop.KeyboardSensor} and read the session's counters.
+ */
+public class GameSession {
+    // Largest number of ticks a session runs late before giving up the time
+    private static final int MAX_BACKLOG_TICKS = 5;
+    // The number identifying the session in its host
+    private final long id;
+    // The host running the session
+    private final SessionHost host;
+    // The world being run
+    private final World world;
+    // Nanoseconds per tick
+    private final long tickNanos;
+    // The time each tick took, in nanoseconds
+    private final LatencyHistogram tickLatency;
+    // How late each tick started after it was due, in nanoseconds
+    private final LatencyHistogram lateness;
+    // The task running a tick, created once
+    private final Runnable tickTask;
+    // The System.nanoTime() the next tick is due at, only touched by the ticks
+    private long deadline;
+    // Number of ticks run
+    private volatile long ticks;
+    // Number of ticks whose time was given up because the session fell behind
+    private volatile long skippedTicks;
+    // Whether the session keeps scheduling ticks
+    private volatile boolean running;
+    // The exception that stopped the session, or null
+    private volatile Throwable failure;
+
+    /**
+     * Constructor to create a session; the host schedules its first tick.
+     *
+     * @param host           The host running the session
+     * @param id             The number identifying the session in its host
+     * @param world          The world to run
+     * @param ticksPerSecond The tick rate of the world
+     * @param firstDeadline  The System.nanoTime() the first tick is due at
+     */
+    GameSession(SessionHost host, long id, World world, double ticksPerSecond, long firstDeadline) {
+        this.host = host;
+        this.id = id;
+        this.world = world;
+        this.tickNanos = (long) (1e9 / ticksPerSecond);
+        this.tickLatency = new LatencyHistogram();
+        this.lateness = new LatencyHistogram();
+        this.tickTask = this::tick;
+        this.deadline = firstDeadline;
+        this.running = true;
+    }
+
+    /**
+     * Get the System.nanoTime() the next tick is due at.
+     *
+     * @return The deadline
+     */
+    long getDeadline() {
+        return this.deadline;
+    }
+
+    /**
+     * Get the task running a tick of the session.
+     *
+     * @return The task
+     */
+    Runnable getTickTask() {
+        return this.tickTask;
+    }
+
+    /**
+     * Helper method to run a tick, record its timings and schedule the next one.
+     */
+    private void tick() {
+        if (!this.running) {
+            return;
+        }
+        long start = System.nanoTime();
+        this.lateness.record(start - this.deadline);
+        try {
+            this.world.step();
+        } catch (RuntimeException | Error e) {
+            this.failure = e;
+            this.running = false;
+            this.host.remove(this);
+            return;
+        }
+        long end = System.nanoTime();
+        this.tickLatency.record(end - start);
+        this.ticks++;
+        this.deadline += this.tickNanos;
+        // Give up the time of the ticks a session fell too far behind on
+        long late = end - this.deadline;
+        if (late > MAX_BACKLOG_TICKS * this.tickNanos) {
+            long skipped = late / this.tickNanos;
+            this.skippedTicks += skipped;
+            this.deadline += skipped * this.tickNanos;
+        }
+        if (this.running) {
+            this.host.schedule(this);
+        }
+    }
+
+    /**
+     * Stop the session and remove it from its host. A tick already running finishes.
+     */
+    public void stop() {
+        this.running = false;
+        this.host.remove(this);
+    }
+
+    /**
+     * Helper method to stop the session without removing it, for a host that is closing.
+     */
+    void halt() {
+        this.running = false;
+    }
+
+    /**
+     * Get the number identifying the session in its host.
+     *
+     * @return The id
+     */
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * Get the world being run. Only read it from other threads once the session stopped.
+     *
+     * @return The world
+     */
+    public World getWorld() {
+        return this.world;
+    }
+
+    /**
+     * Check whether the session keeps running ticks.
+     *
+     * @return True if running
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Get the exception thrown by the tick that stopped the session.
+     *
+     * @return The exception, or null if no tick failed
+     */
+    public Throwable getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * Get the number of ticks run.
+     *
+     * @return The tick count
+     */
+    public long getTicks() {
+        return this.ticks;
+    }
+
+    /**
+     * Get the number of ticks whose time was given up because the session fell behind, which
+     * slowed its game down.
+     *
+     * @return The number of ticks
+     */
+    public long getSkippedTicks() {
+        return this.skippedTicks;
+    }
+
+    /**
+     * Get the histogram of the time each tick took.
+     *
+     * @return The histogram, in nanoseconds
+     */
+    public LatencyHistogram getTickLatency() {
+        return this.tickLatency;
+    }
+
+    /**
+     * Get the histogram of how late each tick started after it was due, which grows when the
+     * host's threads cannot keep up with its sessions.
+     *
+     * @return The histogram, in nanoseconds
+     */
+    public LatencyHistogram getLateness() {
+        return this.lateness;
+    }
+}
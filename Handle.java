@@ -0,0 +1,50 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+/**
+ * Generational handles to the entries of containers that reuse the slots of removed entries.
+ * A handle packs the index of a slot with the generation the slot had when the entry was added.
+ * Removing the entry advances the generation of its slot, so older handles to the slot are seen
+ * to be stale instead of reaching whatever entry is stored there next.
+ */
+public final class Handle {
+    // A handle that never refers to an entry
+    public static final long NONE = -1L;
+
+    /**
+     * Constructor hidden, since the class only has static methods.
+     */
+    private Handle() {
+    }
+
+    /**
+     * Create a handle.
+     *
+     * @param index      The index of the slot
+     * @param generation The generation of the slot
+     * @return The handle
+     */
+    public static long of(int index, int generation) {
+        return ((long) generation << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get the index of the slot a handle refers to.
+     *
+     * @param handle The handle
+     * @return The index of the slot, negative for {@link #NONE}
+     */
+    public static int index(long handle) {
+        return (int) handle;
+    }
+
+    /**
+     * Get the generation of the slot a handle was created with.
+     *
+     * @param handle The handle
+     * @return The generation
+     */
+    public static int generation(long handle) {
+        return (int) (handle >>> 32);
+    }
+}
@@ -0,0 +1,98 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Runs the default level headless, with no window and no pacing, and reports the tick rate.
+ * With "--replay file" it replays a recording made by "java Ass3Game --record file" as fast as
+ * possible, and checks that the world ends in the recorded state. With "--sessions count" it runs
+ * that many worlds at 60 ticks per second in a {@link SessionHost} for a while and reports their
+ * tick latency.
+ */
+public class HeadlessGame {
+
+    /**
+     * The main method to run the simulation.
+     *
+     * @param args Optional number of ticks to run (default 100000) and random seed, --replay and a
+     *             recording file, or --sessions, a number of sessions and optional seconds (default 10).
+     */
+    public static void main(String[] args) {
+        if (args.length > 1 && args[0].equals("--replay")) {
+            System.exit(replay(args[1]) ? 0 : 1);
+        }
+        if (args.length > 1 && args[0].equals("--sessions")) {
+            runSessions(Integer.parseInt(args[1]), args.length > 2 ? Double.parseDouble(args[2]) : 10);
+            return;
+        }
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        // Create and initialize a world without a renderer
+        World world = new World(800, 600);
+        world.initialize(new Random(seed));
+        // Run the ticks as fast as possible
+        long start = System.nanoTime();
+        world.step(ticks);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d ticks in %.3f s (%.0f ticks/s)%n", ticks, seconds, ticks / seconds);
+    }
+
+    /**
+     * Replay a recording headless and compare the final state with the recorded one.
+     *
+     * @param file The recording file
+     * @return True if the replay ended in the recorded state
+     */
+    public static boolean replay(String file) {
+        InputRecording recording;
+        try {
+            recording = InputRecording.read(Paths.get(file));
+        } catch (IOException e) {
+            System.err.println("Cannot read the recording: " + e.getMessage());
+            return false;
+        }
+        // Rebuild the recorded world and feed it the recorded keys
+        World world = new World(recording.getWidth(), recording.getHeight());
+        world.initialize(new Random(recording.getSeed()));
+        world.setInput(recording);
+        long start = System.nanoTime();
+        world.step((int) recording.getTickCount());
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long hash = world.stateHash();
+        boolean same = hash == recording.getFinalHash();
+        System.out.printf("Replayed %d ticks in %.3f s (%.0f ticks/s), final state %016x %s recorded %016x%n",
+                recording.getTickCount(), seconds, recording.getTickCount() / seconds, hash,
+                same ? "matches" : "DIFFERS FROM", recording.getFinalHash());
+        return same;
+    }
+
+    /**
+     * Run many worlds at once in a session host and print a summary every second.
+     *
+     * @param count   The number of sessions
+     * @param seconds How long to run them
+     */
+    public static void runSessions(int count, double seconds) {
+        Random seeds = new Random();
+        try (SessionHost host = new SessionHost()) {
+            for (int i = 0; i < count; i++) {
+                World world = new World(800, 600);
+                world.initialize(new Random(seeds.nextLong()));
+                host.start(world, 60);
+            }
+            long end = System.nanoTime() + (long) (seconds * 1e9);
+            while (System.nanoTime() < end) {
+                try {
+                    Thread.sleep(Math.max(1, Math.min(1000, (end - System.nanoTime()) / 1_000_000)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                System.out.println(host.getSummary());
+            }
+        }
+    }
+}
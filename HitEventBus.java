@@ -0,0 +1,263 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the hits between balls and collidables during a step and hands them to the listeners in
+ * one batch afterwards. Each hit is written into a ring of preallocated parallel arrays, so
+ * recording a hit creates no objects and listener work stays out of the collision loop. The ring
+ * grows only when a single step records more hits than it holds.
+ * Hits are recorded on the thread that commits the ball steps, which is the calling thread even
+ * when the collisions are found in parallel, so the order of the hits is the same either way.
+ */
+public class HitEventBus {
+    private static final int INITIAL_CAPACITY = 256; // Initial number of hits the ring holds
+    private Collidable[] collidables; // The collidable hit by each hit
+    private BallSystem[] systems; // The system of the ball of each hit
+    private int[] balls; // The index of the ball of each hit in its system
+    private double[] pointX; // The x-coordinate of the contact point of each hit
+    private double[] pointY; // The y-coordinate of the contact point of each hit
+    private long[] ticks; // The tick of each hit
+    private int mask; // The capacity of the ring minus one, the capacity being a power of two
+    private long head; // The number of hits recorded so far
+    private long tail; // The number of hits dispatched so far
+    private int batchSize; // The number of hits in the batch being dispatched, or 0 outside dispatch
+    private long tick; // The tick that recorded hits are stamped with
+    private final List<HitListener> listeners; // The listeners, in the order they were added
+
+    /**
+     * Constructor to create an empty bus with no listeners.
+     */
+    public HitEventBus() {
+        this.collidables = new Collidable[INITIAL_CAPACITY];
+        this.systems = new BallSystem[INITIAL_CAPACITY];
+        this.balls = new int[INITIAL_CAPACITY];
+        this.pointX = new double[INITIAL_CAPACITY];
+        this.pointY = new double[INITIAL_CAPACITY];
+        this.ticks = new long[INITIAL_CAPACITY];
+        this.mask = INITIAL_CAPACITY - 1;
+        this.listeners = new ArrayList<>();
+    }
+
+    /**
+     * Add a listener to be notified of every following batch.
+     *
+     * @param listener The listener
+     */
+    public void addListener(HitListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param listener The listener
+     */
+    public void removeListener(HitListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Set the tick that the hits recorded from now on are stamped with.
+     *
+     * @param current The tick
+     */
+    public void setTick(long current) {
+        this.tick = current;
+    }
+
+    /**
+     * Record a hit, to be dispatched with the next batch.
+     *
+     * @param collidable The collidable that was hit
+     * @param system     The system of the ball that hit it
+     * @param ball       The index of the ball in its system
+     * @param x          The x-coordinate of the contact point
+     * @param y          The y-coordinate of the contact point
+     */
+    public void record(Collidable collidable, BallSystem system, int ball, double x, double y) {
+        if (this.head - this.tail > this.mask) {
+            grow();
+        }
+        int slot = (int) this.head & this.mask;
+        this.collidables[slot] = collidable;
+        this.systems[slot] = system;
+        this.balls[slot] = ball;
+        this.pointX[slot] = x;
+        this.pointY[slot] = y;
+        this.ticks[slot] = this.tick;
+        this.head++;
+    }
+
+    /**
+     * Hand the hits recorded since the last dispatch to every listener as one batch. Hits recorded
+     * by the listeners themselves wait for the next dispatch.
+     */
+    public void dispatch() {
+        if (this.head == this.tail || this.batchSize > 0) {
+            return;
+        }
+        this.batchSize = (int) (this.head - this.tail);
+        for (int i = 0; i < this.listeners.size(); i++) {
+            this.listeners.get(i).hitsOccurred(this);
+        }
+        // Let go of the objects of the batch
+        for (int i = 0; i < this.batchSize; i++) {
+            int slot = (int) (this.tail + i) & this.mask;
+            this.collidables[slot] = null;
+            this.systems[slot] = null;
+        }
+        this.tail += this.batchSize;
+        this.batchSize = 0;
+    }
+
+    /**
+     * Get the number of hits in the batch being dispatched.
+     *
+     * @return The number of hits, or 0 outside a dispatch
+     */
+    public int size() {
+        return this.batchSize;
+    }
+
+    /**
+     * Get the collidable that was hit.
+     *
+     * @param i The index of the hit in the batch
+     * @return The collidable
+     */
+    public Collidable getCollidable(int i) {
+        return this.collidables[slot(i)];
+    }
+
+    /**
+     * Get the system of the ball that hit.
+     *
+     * @param i The index of the hit in the batch
+     * @return The ball system
+     */
+    public BallSystem getBallSystem(int i) {
+        return this.systems[slot(i)];
+    }
+
+    /**
+     * Get the index in its system of the ball that hit.
+     *
+     * @param i The index of the hit in the batch
+     * @return The index of the ball
+     */
+    public int getBall(int i) {
+        return this.balls[slot(i)];
+    }
+
+    /**
+     * Get the x-coordinate of the point where the ball touched the collidable.
+     *
+     * @param i The index of the hit in the batch
+     * @return The x-coordinate of the contact point
+     */
+    public double getX(int i) {
+        return this.pointX[slot(i)];
+    }
+
+    /**
+     * Get the y-coordinate of the point where the ball touched the collidable.
+     *
+     * @param i The index of the hit in the batch
+     * @return The y-coordinate of the contact point
+     */
+    public double getY(int i) {
+        return this.pointY[slot(i)];
+    }
+
+    /**
+     * Get the tick of the hit.
+     *
+     * @param i The index of the hit in the batch
+     * @return The tick
+     */
+    public long getTick(int i) {
+        return this.ticks[slot(i)];
+    }
+
+    /**
+     * Get the number of hits the ring holds before it grows.
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return this.mask + 1;
+    }
+
+    /**
+     * Get the number of hits recorded so far.
+     *
+     * @return The number of hits
+     */
+    public long getRecorded() {
+        return this.head;
+    }
+
+    /**
+     * Helper method to find the slot of a hit of the batch being dispatched.
+     *
+     * @param i The index of the hit in the batch
+     * @return The slot in the arrays
+     */
+    private int slot(int i) {
+        if (i < 0 || i >= this.batchSize) {
+            throw new IndexOutOfBoundsException("Hit " + i + " of a batch of " + this.batchSize);
+        }
+        return (int) (this.tail + i) & this.mask;
+    }
+
+    /**
+     * Helper method to double the capacity of the ring, keeping the hits in order.
+     */
+    private void grow() {
+        int capacity = (this.mask + 1) * 2;
+        this.collidables = unwrap(this.collidables, capacity);
+        this.systems = unwrap(this.systems, capacity);
+        int start = (int) this.tail & this.mask;
+        int[] newBalls = new int[capacity];
+        double[] newX = new double[capacity];
+        double[] newY = new double[capacity];
+        long[] newTicks = new long[capacity];
+        int first = this.balls.length - start;
+        System.arraycopy(this.balls, start, newBalls, 0, first);
+        System.arraycopy(this.balls, 0, newBalls, first, start);
+        System.arraycopy(this.pointX, start, newX, 0, first);
+        System.arraycopy(this.pointX, 0, newX, first, start);
+        System.arraycopy(this.pointY, start, newY, 0, first);
+        System.arraycopy(this.pointY, 0, newY, first, start);
+        System.arraycopy(this.ticks, start, newTicks, 0, first);
+        System.arraycopy(this.ticks, 0, newTicks, first, start);
+        this.balls = newBalls;
+        this.pointX = newX;
+        this.pointY = newY;
+        this.ticks = newTicks;
+        // The ring is full, so the hits now fill the start of the new arrays
+        this.head -= this.tail;
+        this.tail = 0;
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Helper method to copy a full ring of objects into a larger array, oldest first.
+     *
+     * @param ring     The ring
+     * @param capacity The length of the new array
+     * @param <T>      The type of the objects
+     * @return The new array
+     */
+    private <T> T[] unwrap(T[] ring, int capacity) {
+        int start = (int) this.tail & this.mask;
+        T[] result = Arrays.copyOf(ring, capacity);
+        System.arraycopy(ring, start, result, 0, ring.length - start);
+        System.arraycopy(ring, 0, result, ring.length - start, start);
+        return result;
+    }
+}
@@ -0,0 +1,17 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+/**
+ * A HitListener is notified of the hits between balls and collidables, in batches, after the step
+ * in which they happened rather than from inside the collision loop.
+ */
+public interface HitListener {
+    /**
+     * Notifies the listener of a batch of hits. The hits are read from the bus by their index in
+     * the batch, from 0 to {@link HitEventBus#size()} - 1, in the order they happened, and only
+     * during this call.
+     *
+     * @param hits The bus holding the batch.
+     */
+    void hitsOccurred(HitEventBus hits);
+}
@@ -0,0 +1,145 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import biuoop.DrawSurface;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+
+/**
+ * A DrawSurface that draws into an off-screen image, so sprites can be drawn once and the image
+ * blitted onto the window's surface in a single call. The image is either transparent, or opaque
+ * and filled with a background color, which blits several times faster.
+ */
+public class ImageSurface implements DrawSurface {
+    // The image drawn into
+    private final BufferedImage image;
+    // The graphics of the image
+    private final Graphics2D graphics;
+    // The color the image is cleared to, transparent if the image has no background
+    private final Color background;
+
+    /**
+     * Constructor to create a transparent surface of a given size.
+     *
+     * @param width  The width of the surface
+     * @param height The height of the surface
+     */
+    public ImageSurface(int width, int height) {
+        this(width, height, null);
+    }
+
+    /**
+     * Constructor to create a surface of a given size filled with a background color.
+     *
+     * @param width      The width of the surface
+     * @param height     The height of the surface
+     * @param background The opaque background color, or null for a transparent surface
+     */
+    public ImageSurface(int width, int height, Color background) {
+        this.image = new BufferedImage(Math.max(width, 1), Math.max(height, 1),
+                background == null ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        this.background = background == null ? new Color(0, 0, 0, 0) : background;
+        this.graphics = this.image.createGraphics();
+        clear();
+        this.graphics.setColor(Color.BLACK);
+    }
+
+    /**
+     * Get the image drawn into.
+     *
+     * @return The image
+     */
+    public BufferedImage getImage() {
+        return this.image;
+    }
+
+    /**
+     * Fill the whole surface with its background again.
+     */
+    public void clear() {
+        this.graphics.setBackground(this.background);
+        this.graphics.clearRect(0, 0, this.image.getWidth(), this.image.getHeight());
+    }
+
+    /**
+     * Release the graphics of the image. The surface cannot be drawn on afterwards.
+     */
+    public void dispose() {
+        this.graphics.dispose();
+    }
+
+    @Override
+    public void drawImage(int x, int y, Image img) {
+        this.graphics.drawImage(img, x, y, null);
+    }
+
+    @Override
+    public void drawCircle(int x, int y, int r) {
+        this.graphics.drawOval(x - r, y - r, 2 * r, 2 * r);
+    }
+
+    @Override
+    public void fillCircle(int x, int y, int r) {
+        this.graphics.fillOval(x - r, y - r, 2 * r, 2 * r);
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        this.graphics.drawOval(x, y, width, height);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        this.graphics.fillOval(x, y, width, height);
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        this.graphics.drawLine(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void drawRectangle(int x, int y, int width, int height) {
+        this.graphics.drawRect(x, y, width, height);
+    }
+
+    @Override
+    public void fillRectangle(int x, int y, int width, int height) {
+        this.graphics.fillRect(x, y, width, height);
+    }
+
+    @Override
+    public void drawPolygon(Polygon p) {
+        this.graphics.drawPolygon(p);
+    }
+
+    @Override
+    public void fillPolygon(Polygon p) {
+        this.graphics.fillPolygon(p);
+    }
+
+    @Override
+    public void setColor(Color color) {
+        this.graphics.setColor(color);
+    }
+
+    @Override
+    public int getWidth() {
+        return this.image.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return this.image.getHeight();
+    }
+
+    @Override
+    public void drawText(int x, int y, String text, int fontSize) {
+        this.graphics.setFont(new Font("Arial", Font.PLAIN, fontSize));
+        this.graphics.drawString(text, x, y);
+    }
+}
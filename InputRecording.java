@@ -0,0 +1,304 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import biuoop.KeyboardSensor;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * A recording of everything that makes a run of the world reproducible: the seed of its random
+ * generator and the keys pressed in every tick, packed one bit per key per tick.
+ * While recording, the keys of a source sensor are sampled once at the start of each tick and
+ * appended; while replaying, the keys of each tick are read back from the recording. Either way
+ * the world reads the keys through the recording, so both runs see exactly the same input.
+ * A recording is saved with the hash of the final state of the world, so a replay can check that
+ * it ended in the same state.
+ * The file holds a magic number, a format version, the seed, the world size, the names of the
+ * recorded keys, the number of ticks, the packed key bits and the final hash.
+ */
+public class InputRecording implements TickInput {
+    // Magic number at the start of a recording file, "BRKR"
+    private static final int MAGIC = 0x42524B52;
+    // Version of the file format
+    private static final int VERSION = 1;
+    // Keys recorded by default, which are all the keys the game reads
+    private static final String[] DEFAULT_KEYS = {
+        KeyboardSensor.LEFT_KEY, KeyboardSensor.RIGHT_KEY, KeyboardSensor.SPACE_KEY
+    };
+    // Largest number of keys a recording can hold
+    private static final int MAX_KEYS = 64;
+    // The seed of the world's random generator
+    private final long seed;
+    // The width of the world
+    private final int width;
+    // The height of the world
+    private final int height;
+    // The recorded keys, each owning one bit per tick
+    private final String[] keys;
+    // The sensor sampled while recording, or null while replaying
+    private final KeyboardSensor source;
+    // The key bits of all ticks, keys.length bits per tick
+    private long[] bits;
+    // The number of ticks recorded
+    private long tickCount;
+    // The keys pressed in the current tick, one bit per key
+    private long current;
+    // The hash of the final state of the world, once known
+    private long finalHash;
+
+    /**
+     * Constructor to create a recording.
+     *
+     * @param seed      The seed of the world's random generator
+     * @param width     The width of the world
+     * @param height    The height of the world
+     * @param keys      The keys to record
+     * @param source    The sensor to sample, or null to replay
+     * @param bits      The key bits of the recorded ticks
+     * @param tickCount The number of recorded ticks
+     */
+    private InputRecording(long seed, int width, int height, String[] keys, KeyboardSensor source,
+                           long[] bits, long tickCount) {
+        if (keys.length == 0 || keys.length > MAX_KEYS) {
+            throw new IllegalArgumentException("A recording holds 1 to " + MAX_KEYS + " keys, not " + keys.length);
+        }
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        this.keys = keys;
+        this.source = source;
+        this.bits = bits;
+        this.tickCount = tickCount;
+    }
+
+    /**
+     * Start recording the keys the game reads from a sensor.
+     *
+     * @param seed   The seed the world's random generator was created with
+     * @param world  The world, for its size
+     * @param source The sensor to sample at the start of each tick
+     * @return The recording, to be set as the world's input
+     */
+    public static InputRecording record(long seed, World world, KeyboardSensor source) {
+        GameEnvironment environment = world.getEnvironment();
+        return new InputRecording(seed, environment.getScreenWidth(), environment.getScreenHeight(),
+                DEFAULT_KEYS.clone(), source, new long[64], 0);
+    }
+
+    /**
+     * Read a recording from a file, to replay it.
+     *
+     * @param file The file
+     * @return The recording, to be set as the world's input
+     * @throws IOException If the file cannot be read or is not a recording
+     */
+    public static InputRecording read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a recording");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " has unsupported recording version " + version);
+            }
+            long seed = in.readLong();
+            int width = in.readInt();
+            int height = in.readInt();
+            int keyCount = in.readUnsignedByte();
+            if (keyCount == 0 || keyCount > MAX_KEYS) {
+                throw new IOException(file + " records " + keyCount + " keys");
+            }
+            String[] keys = new String[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                keys[i] = in.readUTF();
+            }
+            long tickCount = in.readLong();
+            if (tickCount < 0 || tickCount > (long) Integer.MAX_VALUE * 64 / keyCount) {
+                throw new IOException(file + " records " + tickCount + " ticks");
+            }
+            // The bits of the ticks and the final hash must be in the file before they are allocated
+            long needed = (long) wordsFor(tickCount * keyCount) * Long.BYTES + Long.BYTES;
+            if (needed > Files.size(file)) {
+                throw new IOException(file + " is truncated: " + tickCount + " ticks need " + needed + " bytes of "
+                        + Files.size(file));
+            }
+            long[] bits = new long[wordsFor(tickCount * keyCount)];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            InputRecording recording = new InputRecording(seed, width, height, keys, null, bits, tickCount);
+            recording.finalHash = in.readLong();
+            return recording;
+        }
+    }
+
+    /**
+     * Write the recording to a file.
+     *
+     * @param file      The file
+     * @param stateHash The hash of the final state of the world, as {@link World#stateHash()}
+     * @throws IOException If the file cannot be written
+     */
+    public void write(Path file, long stateHash) throws IOException {
+        this.finalHash = stateHash;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(this.seed);
+            out.writeInt(this.width);
+            out.writeInt(this.height);
+            out.writeByte(this.keys.length);
+            for (String key : this.keys) {
+                out.writeUTF(key);
+            }
+            out.writeLong(this.tickCount);
+            int words = wordsFor(this.tickCount * this.keys.length);
+            for (int i = 0; i < words; i++) {
+                out.writeLong(this.bits[i]);
+            }
+            out.writeLong(this.finalHash);
+        }
+    }
+
+    /**
+     * Sample the keys of a new tick while recording, or load the recorded keys of the tick while
+     * replaying. Ticks past the end of a replay have no keys pressed.
+     *
+     * @param tick The number of the tick, counting from 0
+     */
+    @Override
+    public void beginTick(long tick) {
+        int keyCount = this.keys.length;
+        if (this.source == null) {
+            this.current = tick < this.tickCount ? readBits(tick * keyCount, keyCount) : 0;
+            return;
+        }
+        if (tick != this.tickCount) {
+            throw new IllegalStateException("Tick " + tick + " recorded after " + this.tickCount + " ticks");
+        }
+        long pressed = 0;
+        for (int k = 0; k < keyCount; k++) {
+            if (this.source.isPressed(this.keys[k])) {
+                pressed |= 1L << k;
+            }
+        }
+        int words = wordsFor((this.tickCount + 1) * keyCount);
+        if (words > this.bits.length) {
+            this.bits = Arrays.copyOf(this.bits, Math.max(words, this.bits.length * 2));
+        }
+        writeBits(this.tickCount * keyCount, keyCount, pressed);
+        this.tickCount++;
+        this.current = pressed;
+    }
+
+    /**
+     * Check whether a key is pressed in the current tick. Keys that are not recorded are never
+     * pressed.
+     *
+     * @param key The name of the key
+     * @return True if the key is pressed
+     */
+    @Override
+    public boolean isPressed(String key) {
+        for (int k = 0; k < this.keys.length; k++) {
+            if (this.keys[k].equals(key)) {
+                return (this.current & (1L << k)) != 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the seed of the world's random generator.
+     *
+     * @return The seed
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * Get the width of the recorded world.
+     *
+     * @return The width
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Get the height of the recorded world.
+     *
+     * @return The height
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Get the number of ticks recorded.
+     *
+     * @return The number of ticks
+     */
+    public long getTickCount() {
+        return this.tickCount;
+    }
+
+    /**
+     * Get the hash of the final state of the recorded run.
+     *
+     * @return The hash, or 0 if the recording was not written or read yet
+     */
+    public long getFinalHash() {
+        return this.finalHash;
+    }
+
+    /**
+     * Helper method to get the number of longs holding a number of bits.
+     *
+     * @param bitCount The number of bits
+     * @return The number of longs
+     */
+    private static int wordsFor(long bitCount) {
+        return (int) ((bitCount + 63) >>> 6);
+    }
+
+    /**
+     * Helper method to read up to 64 bits, which may span two longs.
+     *
+     * @param position The index of the first bit
+     * @param count    The number of bits
+     * @return The bits, lowest first
+     */
+    private long readBits(long position, int count) {
+        int word = (int) (position >>> 6);
+        int shift = (int) (position & 63);
+        long value = this.bits[word] >>> shift;
+        if (shift + count > 64) {
+            value |= this.bits[word + 1] << (64 - shift);
+        }
+        return count == 64 ? value : value & ((1L << count) - 1);
+    }
+
+    /**
+     * Helper method to write up to 64 bits past the last written bit, which may span two longs.
+     *
+     * @param position The index of the first bit
+     * @param count    The number of bits
+     * @param value    The bits, lowest first
+     */
+    private void writeBits(long position, int count, long value) {
+        int word = (int) (position >>> 6);
+        int shift = (int) (position & 63);
+        this.bits[word] |= value << shift;
+        if (shift != 0 && shift + count > 64) {
+            this.bits[word + 1] |= value >>> (64 - shift);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative values, such as durations in nanoseconds, with a bounded relative
+ * error. Values below 8 get a bucket each; every power of two above is split into 8 buckets, so a
+ * value is only known to within an eighth of itself. The buckets are allocated once, so recording
+ * creates no objects. The exact count, sum and maximum are kept as well.
+ * Recording and reading are synchronized, so one thread may record while another reads.
+ */
+public class LatencyHistogram {
+    // Number of buckets each power of two is split into, as a power of two
+    private static final int SUB_BUCKET_BITS = 3;
+    // Number of buckets each power of two is split into
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Number of buckets, enough for every non-negative long
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    // Number of values in each bucket
+    private final long[] counts;
+    // Number of values recorded
+    private long count;
+    // Sum of the values recorded
+    private long sum;
+    // Largest value recorded
+    private long max;
+
+    /**
+     * Constructor to create an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.counts = new long[BUCKETS];
+    }
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     *
+     * @param value The value
+     */
+    public synchronized void record(long value) {
+        long v = Math.max(0, value);
+        this.counts[bucketOf(v)]++;
+        this.count++;
+        this.sum += v;
+        this.max = Math.max(this.max, v);
+    }
+
+    /**
+     * Add every value recorded by another histogram, such as to sum up the histograms of many
+     * threads or sessions.
+     *
+     * @param other The other histogram
+     */
+    public void add(LatencyHistogram other) {
+        long[] otherCounts;
+        long otherCount;
+        long otherSum;
+        long otherMax;
+        synchronized (other) {
+            otherCounts = other.counts.clone();
+            otherCount = other.count;
+            otherSum = other.sum;
+            otherMax = other.max;
+        }
+        synchronized (this) {
+            for (int i = 0; i < BUCKETS; i++) {
+                this.counts[i] += otherCounts[i];
+            }
+            this.count += otherCount;
+            this.sum += otherSum;
+            this.max = Math.max(this.max, otherMax);
+        }
+    }
+
+    /**
+     * Remove every recorded value.
+     */
+    public synchronized void reset() {
+        Arrays.fill(this.counts, 0);
+        this.count = 0;
+        this.sum = 0;
+        this.max = 0;
+    }
+
+    /**
+     * Get the number of values recorded.
+     *
+     * @return The count
+     */
+    public synchronized long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Get the mean of the values recorded.
+     *
+     * @return The mean, or 0 if nothing was recorded
+     */
+    public synchronized double getMean() {
+        return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+
+    /**
+     * Get the largest value recorded.
+     *
+     * @return The maximum, or 0 if nothing was recorded
+     */
+    public synchronized long getMax() {
+        return this.max;
+    }
+
+    /**
+     * Get a percentile of the values recorded: the upper end of the bucket holding the value below
+     * which the given share of the values lie, capped by the maximum.
+     *
+     * @param percentile The percentile, from 0 to 100
+     * @return The value at the percentile, or 0 if nothing was recorded
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (this.count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * this.count));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += this.counts[bucket];
+            if (seen >= rank) {
+                return Math.min(this.max, upperBound(bucket));
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * Helper method to find the bucket of a value.
+     *
+     * @param value The non-negative value
+     * @return The index of the bucket
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Helper method to find the largest value of a bucket.
+     *
+     * @param bucket The index of the bucket
+     * @return The largest value the bucket holds
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (1L << exponent) + sub * width;
+        return lower + (width - 1);
+    }
+}
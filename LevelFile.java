@@ -0,0 +1,706 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads and writes levels: the size of the world, its blocks and its balls.
+ * The text form is for authoring. Each line holds one entry, and a # at the start of a line or
+ * followed by a space starts a comment:
+ * <pre>
+ * size width height
+ * block x y width height color
+ * ball x y radius color dx dy [bounceLimit]
+ * </pre>
+ * Colors are names such as red or lightgray, or #rrggbb or #aarrggbb in hexadecimal.
+ * The binary form is for production. It is little-endian, and holds:
+ * <ul>
+ * <li>a header with the magic number, the version, the size, the counts and the offsets of the
+ * palette and the index;</li>
+ * <li>fixed-size records of the blocks and then the balls, whose colors are palette indexes;</li>
+ * <li>the palette;</li>
+ * <li>optionally, the cells of the {@link SpatialGrid} of the blocks, so a loader with the same
+ * grid fills its cells in bulk instead of bucketing every block.</li>
+ * </ul>
+ * Both forms are loaded by streaming every entry straight into the world, without collecting
+ * them first.
+ */
+public final class LevelFile {
+    // Magic number at the start of a binary level, "BRKL"
+    private static final int MAGIC = 0x42524B4C;
+    // Version of the binary format
+    private static final int VERSION = 1;
+    // Flag set in the header when the level holds an index
+    private static final int HAS_INDEX = 1;
+    // Size of the header, in bytes
+    private static final int HEADER_BYTES = 48;
+    // Size of a block record: its rectangle, its color and padding
+    private static final int BLOCK_BYTES = 4 * Double.BYTES + 2 * Integer.BYTES;
+    // Size of a ball record: its center and velocity, radius, color and bounce limit, and padding
+    private static final int BALL_BYTES = 4 * Double.BYTES + 4 * Integer.BYTES;
+    // Size of the geometry of the index: cell size, padding, columns and rows
+    private static final int INDEX_HEADER_BYTES = 2 * Double.BYTES + 2 * Integer.BYTES;
+    // Largest width or height of the world of a binary level
+    private static final int MAX_SIDE = 16384;
+    // Colors known by name in the text form
+    private static final Map<String, Color> COLOR_NAMES = new HashMap<>();
+
+    static {
+        COLOR_NAMES.put("black", Color.BLACK);
+        COLOR_NAMES.put("blue", Color.BLUE);
+        COLOR_NAMES.put("cyan", Color.CYAN);
+        COLOR_NAMES.put("darkgray", Color.DARK_GRAY);
+        COLOR_NAMES.put("gray", Color.GRAY);
+        COLOR_NAMES.put("green", Color.GREEN);
+        COLOR_NAMES.put("lightgray", Color.LIGHT_GRAY);
+        COLOR_NAMES.put("magenta", Color.MAGENTA);
+        COLOR_NAMES.put("orange", Color.ORANGE);
+        COLOR_NAMES.put("pink", Color.PINK);
+        COLOR_NAMES.put("red", Color.RED);
+        COLOR_NAMES.put("white", Color.WHITE);
+        COLOR_NAMES.put("yellow", Color.YELLOW);
+    }
+
+    /**
+     * Constructor hidden, since the class only has static methods.
+     */
+    private LevelFile() {
+    }
+
+    /**
+     * Convert a level between forms. A level is written in the text form if the output file name
+     * ends with .txt, and in the binary form with an index otherwise.
+     *
+     * @param args The input file and the output file
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java LevelFile input output");
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            World world = load(Paths.get(args[0]));
+            long loaded = System.nanoTime();
+            if (args[1].endsWith(".txt")) {
+                writeText(world, Paths.get(args[1]));
+            } else {
+                writeBinary(world, Paths.get(args[1]), true);
+            }
+            System.out.printf("Loaded %d collidables in %.1f ms, written in %.1f ms%n",
+                    world.getEnvironment().getCollidables().size(), (loaded - start) / 1e6,
+                    (System.nanoTime() - loaded) / 1e6);
+        } catch (IOException e) {
+            System.err.println("Cannot convert the level: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Load a level of either form into a new world of the level's size.
+     *
+     * @param file The level file
+     * @return The world
+     * @throws IOException If the file cannot be read or is not a level
+     */
+    public static World load(Path file) throws IOException {
+        if (isBinary(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                readHeader(buffer, file);
+                int width = buffer.getInt(8);
+                int height = buffer.getInt(12);
+                if (width <= 0 || height <= 0 || width > MAX_SIDE || height > MAX_SIDE) {
+                    throw new IOException(file + " has an invalid world size " + width + "x" + height);
+                }
+                World world = new World(width, height);
+                readBinary(buffer, world, file);
+                return world;
+            }
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return readText(reader, file, null);
+        }
+    }
+
+    /**
+     * Load the blocks and balls of a level of either form into an existing world, whatever the size
+     * of the level.
+     *
+     * @param file  The level file
+     * @param world The world
+     * @throws IOException If the file cannot be read or is not a level
+     */
+    public static void loadInto(Path file, World world) throws IOException {
+        if (isBinary(file)) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                readHeader(buffer, file);
+                readBinary(buffer, world, file);
+            }
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            readText(reader, file, world);
+        }
+    }
+
+    /**
+     * Write the blocks and balls of a world as a text level.
+     *
+     * @param world The world
+     * @param file  The file
+     * @throws IOException If the file cannot be written
+     */
+    public static void writeText(World world, Path file) throws IOException {
+        GameEnvironment environment = world.getEnvironment();
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("size " + environment.getScreenWidth() + " " + environment.getScreenHeight());
+            out.newLine();
+            for (int id = 0; id < environment.getIdCount(); id++) {
+                Collidable c = environment.getCollidable(id);
+                if (c instanceof Block) {
+                    Rectangle rect = c.getCollisionRectangle();
+                    out.write("block " + rect.getUpperLeft().getX() + " " + rect.getUpperLeft().getY() + " "
+                            + rect.getWidth() + " " + rect.getHeight() + " " + colorName(((Block) c).getColor()));
+                    out.newLine();
+                }
+            }
+            BallSystem balls = world.getBallSystem();
+            for (int i = 0; i < balls.size(); i++) {
+                out.write("ball " + balls.getX(i) + " " + balls.getY(i) + " " + balls.getRadius(i) + " "
+                        + colorName(balls.getColor(i)) + " " + balls.getDx(i) + " " + balls.getDy(i) + " "
+                        + balls.getBounceLimit(i));
+                out.newLine();
+            }
+        }
+    }
+
+    /**
+     * Write the blocks and balls of a world as a binary level through a memory-mapped buffer.
+     *
+     * @param world     The world
+     * @param file      The file
+     * @param withIndex Whether to include the cells of the grid of the blocks
+     * @throws IOException If the file cannot be written
+     */
+    public static void writeBinary(World world, Path file, boolean withIndex) throws IOException {
+        GameEnvironment environment = world.getEnvironment();
+        BallSystem balls = world.getBallSystem();
+        // Number the blocks in id order
+        int[] ordinals = new int[environment.getIdCount()];
+        int blocks = 0;
+        for (int id = 0; id < ordinals.length; id++) {
+            ordinals[id] = environment.getCollidable(id) instanceof Block ? blocks++ : -1;
+        }
+        // Count the indexed ids of the blocks
+        SpatialGrid grid = environment.getGrid();
+        int cells = grid.getColumns() * grid.getRows();
+        long indexedIds = 0;
+        if (withIndex) {
+            for (int cell = 0; cell < cells; cell++) {
+                indexedIds += blocksIn(grid, cell, ordinals);
+            }
+        }
+        List<Color> palette = new ArrayList<>();
+        Map<Color, Integer> paletteIndex = new HashMap<>();
+        for (int id = 0; id < ordinals.length; id++) {
+            if (ordinals[id] >= 0) {
+                colorIndex(((Block) environment.getCollidable(id)).getColor(), palette, paletteIndex);
+            }
+        }
+        for (int i = 0; i < balls.size(); i++) {
+            colorIndex(balls.getColor(i), palette, paletteIndex);
+        }
+        long paletteOffset = HEADER_BYTES + (long) blocks * BLOCK_BYTES + (long) balls.size() * BALL_BYTES;
+        long indexOffset = paletteOffset + (long) palette.size() * Integer.BYTES;
+        long size = indexOffset + (withIndex ? INDEX_HEADER_BYTES + (cells + indexedIds) * Integer.BYTES : 0);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(environment.getScreenWidth());
+            buffer.putInt(environment.getScreenHeight());
+            buffer.putInt(blocks);
+            buffer.putInt(balls.size());
+            buffer.putInt(palette.size());
+            buffer.putInt(withIndex ? HAS_INDEX : 0);
+            buffer.putLong(paletteOffset);
+            buffer.putLong(withIndex ? indexOffset : 0);
+            for (int id = 0; id < ordinals.length; id++) {
+                if (ordinals[id] >= 0) {
+                    Block block = (Block) environment.getCollidable(id);
+                    Rectangle rect = block.getCollisionRectangle();
+                    buffer.putDouble(rect.getUpperLeft().getX());
+                    buffer.putDouble(rect.getUpperLeft().getY());
+                    buffer.putDouble(rect.getWidth());
+                    buffer.putDouble(rect.getHeight());
+                    buffer.putInt(paletteIndex.get(block.getColor()));
+                    buffer.putInt(0);
+                }
+            }
+            for (int i = 0; i < balls.size(); i++) {
+                buffer.putDouble(balls.getX(i));
+                buffer.putDouble(balls.getY(i));
+                buffer.putDouble(balls.getDx(i));
+                buffer.putDouble(balls.getDy(i));
+                buffer.putInt(balls.getRadius(i));
+                buffer.putInt(paletteIndex.get(balls.getColor(i)));
+                buffer.putInt(balls.getBounceLimit(i));
+                buffer.putInt(0);
+            }
+            for (Color color : palette) {
+                buffer.putInt(color.getRGB());
+            }
+            if (withIndex) {
+                buffer.putDouble(grid.getCellSize());
+                buffer.putDouble(GameEnvironment.PADDING);
+                buffer.putInt(grid.getColumns());
+                buffer.putInt(grid.getRows());
+                // The number of ids of each cell, then the ids of all cells
+                for (int cell = 0; cell < cells; cell++) {
+                    buffer.putInt(blocksIn(grid, cell, ordinals));
+                }
+                for (int cell = 0; cell < cells; cell++) {
+                    int[] ids = grid.cellIds(cell % grid.getColumns(), cell / grid.getColumns());
+                    int count = grid.cellCount(cell % grid.getColumns(), cell / grid.getColumns());
+                    for (int i = 0; i < count; i++) {
+                        if (ordinals[ids[i]] >= 0) {
+                            buffer.putInt(ordinals[ids[i]]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper method to check whether a level file is in the binary form.
+     *
+     * @param file The level file
+     * @return True if the file starts with the magic number of a binary level
+     * @throws IOException If the file cannot be read
+     */
+    private static boolean isBinary(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                continue;
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Helper method to check the header of a binary level.
+     *
+     * @param buffer The level, in little-endian order
+     * @param file   The level file, for messages
+     * @throws IOException If the level is not supported
+     */
+    private static void readHeader(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a level");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " has unsupported level version " + buffer.getInt(4));
+        }
+    }
+
+    /**
+     * Helper method to stream the blocks and balls of a binary level into a world. The whole level
+     * is checked first, so a corrupt level adds nothing.
+     *
+     * @param buffer The level, in little-endian order
+     * @param world  The world
+     * @param file   The level file, for messages
+     * @throws IOException If the level is corrupt
+     */
+    private static void readBinary(ByteBuffer buffer, World world, Path file) throws IOException {
+        GameEnvironment environment = world.getEnvironment();
+        checkRecords(buffer, file);
+        int blocks = buffer.getInt(16);
+        int ballCount = buffer.getInt(20);
+        int paletteSize = buffer.getInt(24);
+        boolean hasIndex = (buffer.getInt(28) & HAS_INDEX) != 0;
+        long paletteOffset = buffer.getLong(32);
+        long indexOffset = buffer.getLong(40);
+        Color[] palette = new Color[paletteSize];
+        for (int i = 0; i < paletteSize; i++) {
+            palette[i] = new Color(buffer.getInt((int) paletteOffset + i * Integer.BYTES), true);
+        }
+        // The index holds block numbers, which match ids only if the blocks take consecutive ids
+        SpatialGrid grid = environment.getGrid();
+        boolean useIndex = hasIndex && !environment.hasFreeIds()
+                && buffer.getDouble((int) indexOffset) == grid.getCellSize()
+                && buffer.getDouble((int) indexOffset + Double.BYTES) == GameEnvironment.PADDING
+                && buffer.getInt((int) indexOffset + 2 * Double.BYTES) == grid.getColumns()
+                && buffer.getInt((int) indexOffset + 2 * Double.BYTES + Integer.BYTES) == grid.getRows()
+                && grid.getOriginX() == 0 && grid.getOriginY() == 0;
+        if (useIndex) {
+            checkIndex(buffer, grid, file);
+        }
+        int idBase = environment.getIdCount();
+        buffer.position(HEADER_BYTES);
+        for (int i = 0; i < blocks; i++) {
+            double x = buffer.getDouble();
+            double y = buffer.getDouble();
+            double width = buffer.getDouble();
+            double height = buffer.getDouble();
+            Color color = palette[buffer.getInt()];
+            buffer.getInt();
+            Block block = new Block(new Rectangle(new Point(x, y), width, height), color);
+            if (useIndex) {
+                block.addToWorldIndexed(world);
+            } else {
+                block.addToWorld(world);
+            }
+        }
+        for (int i = 0; i < ballCount; i++) {
+            double x = buffer.getDouble();
+            double y = buffer.getDouble();
+            double dx = buffer.getDouble();
+            double dy = buffer.getDouble();
+            int radius = buffer.getInt();
+            Color color = palette[buffer.getInt()];
+            int bounceLimit = buffer.getInt();
+            buffer.getInt();
+            addBall(world, x, y, radius, color, dx, dy, bounceLimit);
+        }
+        if (useIndex) {
+            // Fill the cells in bulk, the counts first and then the ids
+            int cells = grid.getColumns() * grid.getRows();
+            int countsStart = (int) indexOffset + INDEX_HEADER_BYTES;
+            buffer.position(countsStart + cells * Integer.BYTES);
+            IntBuffer ids = buffer.asIntBuffer();
+            for (int cell = 0; cell < cells; cell++) {
+                grid.appendCell(cell, ids, buffer.getInt(countsStart + cell * Integer.BYTES), idBase);
+            }
+        }
+    }
+
+    /**
+     * Helper method to check the counts and offsets of a binary level against its size, and the
+     * palette index of every record against the size of the palette.
+     *
+     * @param buffer The level, in little-endian order
+     * @param file   The level file, for messages
+     * @throws IOException If the level is corrupt
+     */
+    private static void checkRecords(ByteBuffer buffer, Path file) throws IOException {
+        int blocks = buffer.getInt(16);
+        int ballCount = buffer.getInt(20);
+        int paletteSize = buffer.getInt(24);
+        long paletteOffset = buffer.getLong(32);
+        long indexOffset = buffer.getLong(40);
+        if (blocks < 0 || ballCount < 0 || paletteSize < 0) {
+            throw new IOException(file + " has invalid counts: " + blocks + " blocks, " + ballCount + " balls, "
+                    + paletteSize + " colors");
+        }
+        long recordsEnd = HEADER_BYTES + (long) blocks * BLOCK_BYTES + (long) ballCount * BALL_BYTES;
+        if (paletteOffset != recordsEnd) {
+            throw new IOException(file + " has its palette at " + paletteOffset + " instead of after its records at "
+                    + recordsEnd);
+        }
+        long paletteEnd = paletteOffset + (long) paletteSize * Integer.BYTES;
+        if (paletteEnd > buffer.capacity()) {
+            throw new IOException(file + " is truncated: its palette ends at " + paletteEnd + " of "
+                    + buffer.capacity() + " bytes");
+        }
+        if ((buffer.getInt(28) & HAS_INDEX) != 0
+                && (indexOffset < paletteEnd || indexOffset > buffer.capacity() - INDEX_HEADER_BYTES)) {
+            throw new IOException(file + " is truncated: its index at " + indexOffset + " does not fit in "
+                    + buffer.capacity() + " bytes");
+        }
+        for (int i = 0; i < blocks + ballCount; i++) {
+            int colorOffset = i < blocks ? HEADER_BYTES + i * BLOCK_BYTES + 4 * Double.BYTES
+                    : HEADER_BYTES + blocks * BLOCK_BYTES + (i - blocks) * BALL_BYTES + 4 * Double.BYTES
+                    + Integer.BYTES;
+            int color = buffer.getInt(colorOffset);
+            if (color < 0 || color >= paletteSize) {
+                throw new IOException(file + " has color " + color + " out of a palette of " + paletteSize);
+            }
+        }
+    }
+
+    /**
+     * Helper method to check the index of a binary level against the grid it is loaded into. The
+     * counts must fit in the level, and every block must be listed exactly once in each cell its
+     * padded rectangle overlaps and in no other, so the grid can later remove it.
+     *
+     * @param buffer The level, in little-endian order, already checked by {@link #checkRecords}
+     * @param grid   The grid, of the same geometry as the index
+     * @param file   The level file, for messages
+     * @throws IOException If the index is corrupt
+     */
+    private static void checkIndex(ByteBuffer buffer, SpatialGrid grid, Path file) throws IOException {
+        int blocks = buffer.getInt(16);
+        int cells = grid.getColumns() * grid.getRows();
+        long countsStart = buffer.getLong(40) + INDEX_HEADER_BYTES;
+        long idsStart = countsStart + (long) cells * Integer.BYTES;
+        long ids = 0;
+        for (int cell = 0; cell < cells && idsStart <= buffer.capacity(); cell++) {
+            int count = buffer.getInt((int) countsStart + cell * Integer.BYTES);
+            if (count < 0) {
+                throw new IOException(file + " has " + count + " ids in cell " + cell);
+            }
+            ids += count;
+        }
+        if (idsStart + ids * Integer.BYTES > buffer.capacity()) {
+            throw new IOException(file + " is truncated: its index needs " + (idsStart + ids * Integer.BYTES)
+                    + " of " + buffer.capacity() + " bytes");
+        }
+        // The cells each block's padded rectangle overlaps, as bucketed by SpatialGrid.insert
+        int[] firstColumn = new int[blocks];
+        int[] lastColumn = new int[blocks];
+        int[] firstRow = new int[blocks];
+        int[] lastRow = new int[blocks];
+        // The number of cells each block must still be found in, and the last cell it was found in
+        int[] missing = new int[blocks];
+        int[] lastCell = new int[blocks];
+        double padding = GameEnvironment.PADDING;
+        for (int i = 0; i < blocks; i++) {
+            int offset = HEADER_BYTES + i * BLOCK_BYTES;
+            double x = buffer.getDouble(offset);
+            double y = buffer.getDouble(offset + Double.BYTES);
+            firstColumn[i] = grid.column(x - padding);
+            lastColumn[i] = grid.column(x + buffer.getDouble(offset + 2 * Double.BYTES) + padding);
+            firstRow[i] = grid.row(y - padding);
+            lastRow[i] = grid.row(y + buffer.getDouble(offset + 3 * Double.BYTES) + padding);
+            missing[i] = (lastColumn[i] - firstColumn[i] + 1) * (lastRow[i] - firstRow[i] + 1);
+            lastCell[i] = -1;
+        }
+        int position = (int) idsStart;
+        for (int cell = 0; cell < cells; cell++) {
+            int column = cell % grid.getColumns();
+            int row = cell / grid.getColumns();
+            int count = buffer.getInt((int) countsStart + cell * Integer.BYTES);
+            for (int i = 0; i < count; i++, position += Integer.BYTES) {
+                int id = buffer.getInt(position);
+                if (id < 0 || id >= blocks) {
+                    throw new IOException(file + " indexes block " + id + " of " + blocks);
+                }
+                if (lastCell[id] == cell) {
+                    throw new IOException(file + " indexes block " + id + " twice in cell " + cell);
+                }
+                if (column < firstColumn[id] || column > lastColumn[id] || row < firstRow[id] || row > lastRow[id]) {
+                    throw new IOException(file + " indexes block " + id + " in cell " + cell + " it is not in");
+                }
+                lastCell[id] = cell;
+                missing[id]--;
+            }
+        }
+        for (int i = 0; i < blocks; i++) {
+            if (missing[i] != 0) {
+                throw new IOException(file + " indexes block " + i + " in too few cells");
+            }
+        }
+    }
+
+    /**
+     * Helper method to stream the entries of a text level into a world.
+     *
+     * @param reader The reader of the level
+     * @param file   The level file, for messages
+     * @param target The world, or null to create one when the size is read
+     * @return The world
+     * @throws IOException If the level cannot be read or has an invalid line
+     */
+    private static World readText(BufferedReader reader, Path file, World target) throws IOException {
+        World world = target;
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            String[] parts = stripComment(line).trim().split("\\s+");
+            if (parts[0].isEmpty()) {
+                continue;
+            }
+            try {
+                switch (parts[0]) {
+                    case "size":
+                        expect(parts, 3, 3);
+                        if (world == null) {
+                            world = new World(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                        }
+                        break;
+                    case "block":
+                        expect(parts, 6, 6);
+                        requireWorld(world);
+                        new Block(new Rectangle(new Point(Double.parseDouble(parts[1]), Double.parseDouble(parts[2])),
+                                Double.parseDouble(parts[3]), Double.parseDouble(parts[4])),
+                                parseColor(parts[5])).addToWorld(world);
+                        break;
+                    case "ball":
+                        expect(parts, 7, 8);
+                        requireWorld(world);
+                        addBall(world, Double.parseDouble(parts[1]), Double.parseDouble(parts[2]),
+                                Integer.parseInt(parts[3]), parseColor(parts[4]), Double.parseDouble(parts[5]),
+                                Double.parseDouble(parts[6]),
+                                parts.length > 7 ? Integer.parseInt(parts[7]) : World.BOUNCES_PER_TICK);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown entry " + parts[0]);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException(file + ":" + number + ": " + e.getMessage());
+            }
+        }
+        if (world == null) {
+            throw new IOException(file + " has no size");
+        }
+        return world;
+    }
+
+    /**
+     * Helper method to remove the comment from a line of a text level. A comment starts at a # at
+     * the start of the line or followed by a space, so hexadecimal colors are not comments.
+     *
+     * @param line The line
+     * @return The line without its comment
+     */
+    private static String stripComment(String line) {
+        for (int i = line.indexOf('#'); i >= 0; i = line.indexOf('#', i + 1)) {
+            if (line.substring(0, i).isBlank() || i + 1 == line.length()
+                    || Character.isWhitespace(line.charAt(i + 1))) {
+                return line.substring(0, i);
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Helper method to check the number of parts of a text entry.
+     *
+     * @param parts The parts
+     * @param min   The smallest number of parts
+     * @param max   The largest number of parts
+     */
+    private static void expect(String[] parts, int min, int max) {
+        if (parts.length < min || parts.length > max) {
+            throw new IllegalArgumentException(parts[0] + " takes " + (min - 1)
+                    + (max > min ? " to " + (max - 1) : "") + " values, not " + (parts.length - 1));
+        }
+    }
+
+    /**
+     * Helper method to check that the size of a text level came before its objects.
+     *
+     * @param world The world, or null if the size was not read yet
+     */
+    private static void requireWorld(World world) {
+        if (world == null) {
+            throw new IllegalArgumentException("the size must come first");
+        }
+    }
+
+    /**
+     * Helper method to parse a color of the text form.
+     *
+     * @param text The name of the color, or its hexadecimal value after a #
+     * @return The color
+     */
+    private static Color parseColor(String text) {
+        if (text.startsWith("#") && (text.length() == 7 || text.length() == 9)) {
+            long value = Long.parseLong(text.substring(1), 16);
+            return text.length() == 7 ? new Color((int) value) : new Color((int) value, true);
+        }
+        Color color = COLOR_NAMES.get(text.toLowerCase(Locale.ROOT));
+        if (color == null) {
+            throw new IllegalArgumentException("unknown color " + text);
+        }
+        return color;
+    }
+
+    /**
+     * Helper method to format a color for the text form.
+     *
+     * @param color The color
+     * @return The color in hexadecimal after a #
+     */
+    private static String colorName(Color color) {
+        if (color.getAlpha() == 255) {
+            return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+        }
+        return String.format("#%08x", color.getRGB());
+    }
+
+    /**
+     * Helper method to add a ball to a world, like the balls of the default level.
+     *
+     * @param world       The world
+     * @param x           The x-coordinate of the center
+     * @param y           The y-coordinate of the center
+     * @param radius      The radius
+     * @param color       The color
+     * @param dx          The x component of the velocity
+     * @param dy          The y component of the velocity
+     * @param bounceLimit The maximum number of bounces per step
+     */
+    private static void addBall(World world, double x, double y, int radius, Color color, double dx, double dy,
+                                int bounceLimit) {
+        Ball ball = world.getBallSystem().addBall(new Point(x, y), radius, color);
+        ball.setVelocity(dx, dy);
+        ball.setBounceLimit(bounceLimit);
+        ball.addToWorld(world);
+    }
+
+    /**
+     * Helper method to count the blocks among the ids of a grid cell.
+     *
+     * @param grid     The grid
+     * @param cell     The index of the cell
+     * @param ordinals The number of the block with each id, or -1 for other collidables
+     * @return The number of blocks
+     */
+    private static int blocksIn(SpatialGrid grid, int cell, int[] ordinals) {
+        int[] ids = grid.cellIds(cell % grid.getColumns(), cell / grid.getColumns());
+        int count = grid.cellCount(cell % grid.getColumns(), cell / grid.getColumns());
+        int blocks = 0;
+        for (int i = 0; i < count; i++) {
+            if (ordinals[ids[i]] >= 0) {
+                blocks++;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Helper method to find or add a color in a palette.
+     *
+     * @param color        The color
+     * @param palette      The palette
+     * @param paletteIndex The index of each color in the palette
+     * @return The index of the color
+     */
+    private static int colorIndex(Color color, List<Color> palette, Map<Color, Integer> paletteIndex) {
+        Integer index = paletteIndex.get(color);
+        if (index == null) {
+            index = palette.size();
+            palette.add(color);
+            paletteIndex.put(color, index);
+        }
+        return index;
+    }
+}
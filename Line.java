@@ -1,8 +1,6 @@
 // Name: Yonatan Omer
 // ID: 322624693
 
-import java.util.List;
-
 /**
  * Represents a line segment in 2D space.
  */
@@ -50,7 +48,9 @@ public class Line {
      * @return The length of the line
      */
     public double length() {
-        return Math.sqrt(Math.pow(this.x2 - this.x1, 2) + Math.pow(this.y2 - this.y1, 2));
+        double dx = this.x2 - this.x1;
+        double dy = this.y2 - this.y1;
+        return Math.sqrt(dx * dx + dy * dy);
     }
 
     /**
@@ -80,6 +80,42 @@ public class Line {
         return new Point(this.x2, this.y2);
     }
 
+    /**
+     * Method to get the x-coordinate of the start point without creating a Point.
+     *
+     * @return The x-coordinate of the start point
+     */
+    public double startX() {
+        return this.x1;
+    }
+
+    /**
+     * Method to get the y-coordinate of the start point without creating a Point.
+     *
+     * @return The y-coordinate of the start point
+     */
+    public double startY() {
+        return this.y1;
+    }
+
+    /**
+     * Method to get the x-coordinate of the end point without creating a Point.
+     *
+     * @return The x-coordinate of the end point
+     */
+    public double endX() {
+        return this.x2;
+    }
+
+    /**
+     * Method to get the y-coordinate of the end point without creating a Point.
+     *
+     * @return The y-coordinate of the end point
+     */
+    public double endY() {
+        return this.y2;
+    }
+
     /**
      * Method to check if a point lies on the line segment.
      *
@@ -162,6 +198,17 @@ public class Line {
                 && threshold(this.x2, other.x1, EPSILON) && threshold(this.y2, other.y1, EPSILON));
     }
 
+    /**
+     * Finds where this line first reaches the boundary of a rectangle, without allocating.
+     *
+     * @param rect The rectangle to check for intersection with
+     * @param hit  The holder that receives the line parameter and the edge of the hit
+     * @return True if the line reaches the rectangle boundary, false otherwise
+     */
+    public boolean closestIntersection(Rectangle rect, RayHit hit) {
+        return rect.boundaryHit(this.x1, this.y1, this.x2 - this.x1, this.y2 - this.y1, hit);
+    }
+
     /**
      * Finds the closest intersection point to the start of the line with a given rectangle.
      *
@@ -169,22 +216,10 @@ public class Line {
      * @return The closest intersection point to the start of the line, or null if no intersection
      */
     public Point closestIntersectionToStartOfLine(Rectangle rect) {
-        List<Point> intersections = rect.intersectionPoints(this);
-        if (intersections.isEmpty()) {
+        RayHit hit = new RayHit();
+        if (!closestIntersection(rect, hit)) {
             return null;
         }
-        Point closestPoint = null;
-        double closestDistance = Double.MAX_VALUE;
-        Point start = this.start();
-
-        for (Point p : intersections) {
-            double distance = start.distance(p);
-            if (distance < closestDistance) {
-                closestDistance = distance;
-                closestPoint = p;
-            }
-        }
-
-        return closestPoint;
+        return rect.hitPoint(this.x1, this.y1, this.x2 - this.x1, this.y2 - this.y1, hit);
     }
 }
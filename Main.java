@@ -43,11 +43,14 @@ public class Main {
         }
 
         Ball[] balls = new Ball[numBlocksPerRow * numBlocksPerColumn];
+        // כל הכדורים במערכת אחת כדי שיתנגשו זה בזה
+        BallSystem ballSystem = new BallSystem(ge);
+        ballSystem.setBallCollisions(true);
 
         // יצירת כדורים
         for (int i = 0; i < numBlocksPerRow; i++) {
             for (int j = 0; j < numBlocksPerColumn; j++) {
-                balls[j + i * numBlocksPerRow] = new Ball(new Point(400, 300), 5, Color.RED, 800, 600, 800,ge);
+                balls[j + i * numBlocksPerRow] = ballSystem.addBall(new Point(400, 300), 5, Color.RED);
                 balls[j + i * numBlocksPerRow].setVelocity(Velocity.fromAngleAndSpeed(rnd.nextInt(360), 5));
             }
         }
@@ -64,11 +67,12 @@ public class Main {
                 }
             }
 
-            // ציור והזזת כדורים
+            // ציור כדורים
             for (Ball ball : balls) {
                 ball.drawOn(d);
-                ball.moveOneStep();
             }
+            // הזזת כל הכדורים יחד, כולל התנגשויות ביניהם
+            ballSystem.timePassed();
 
             gui.show(d);
         }
@@ -0,0 +1,178 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+/**
+ * Decides how a {@link GameLoop} degrades when its ticks and frames no longer fit in real time, so
+ * the game keeps its speed as long as the ticks alone fit.
+ * <ul>
+ * <li>Frames are skipped while ticks are still due after a wake-up, but never more than a given
+ * number in a row, so the display never freezes.</li>
+ * <li>A wake-up runs the ticks of one frame and at most a given number of catch-up ticks; the
+ * rest stay due for the next wake-ups rather than delaying the frame further.</li>
+ * <li>Once the smoothed share of real time the loop spends busy rises above a threshold, the loop
+ * is degraded and leaves out optional work, such as recording the previous tick for interpolated
+ * frames, until the share falls below a lower threshold.</li>
+ * </ul>
+ * The policy is used by the loop's thread; its counters may be read from any thread.
+ */
+public class OverloadPolicy {
+    // Weight of the newest wake-up in the smoothed load
+    private static final double SMOOTHING = 0.1;
+    // Largest number of ticks a single wake-up runs beyond the ticks of a frame
+    private int maxCatchUpTicks;
+    // Largest number of frames skipped in a row
+    private int maxSkippedFrames;
+    // Load above which the loop is degraded
+    private double degradeLoad;
+    // Load below which a degraded loop recovers
+    private double recoverLoad;
+    // Number of frames skipped since the last frame rendered
+    private int skippedInRow;
+    // Smoothed share of real time the loop spends busy
+    private volatile double load;
+    // Whether the loop leaves out optional work
+    private volatile boolean degraded;
+    // Number of frames skipped in total
+    private volatile long droppedFrames;
+    // Number of ticks whose time was given up because the backlog grew too large
+    private volatile long droppedTicks;
+
+    /**
+     * Constructor to create a policy running up to 5 catch-up ticks per wake-up, skipping up to 4
+     * frames in a row, and degrading above a load of 0.9 until it falls below 0.6.
+     */
+    public OverloadPolicy() {
+        this.maxCatchUpTicks = 5;
+        this.maxSkippedFrames = 4;
+        this.degradeLoad = 0.9;
+        this.recoverLoad = 0.6;
+    }
+
+    /**
+     * Set the largest number of ticks a single wake-up runs beyond the ticks of a frame.
+     *
+     * @param ticks The number of ticks
+     */
+    public void setMaxCatchUpTicks(int ticks) {
+        this.maxCatchUpTicks = Math.max(0, ticks);
+    }
+
+    /**
+     * Get the largest number of ticks a single wake-up runs beyond the ticks of a frame.
+     *
+     * @return The number of ticks
+     */
+    public int getMaxCatchUpTicks() {
+        return this.maxCatchUpTicks;
+    }
+
+    /**
+     * Set the largest number of frames skipped in a row while behind.
+     *
+     * @param frames The number of frames, 0 to never skip
+     */
+    public void setMaxSkippedFrames(int frames) {
+        this.maxSkippedFrames = Math.max(0, frames);
+    }
+
+    /**
+     * Set the loads at which the loop is degraded and recovers.
+     *
+     * @param degrade The load above which the loop is degraded
+     * @param recover The load below which a degraded loop recovers, at most the first
+     */
+    public void setLoadThresholds(double degrade, double recover) {
+        if (recover > degrade) {
+            throw new IllegalArgumentException("The recovery load " + recover + " is above the degrading load "
+                    + degrade);
+        }
+        this.degradeLoad = degrade;
+        this.recoverLoad = recover;
+    }
+
+    /**
+     * Decide whether to render the frame of a wake-up.
+     *
+     * @param behind Whether ticks are still due after the wake-up ran its ticks
+     * @return True to render the frame, false to skip it
+     */
+    public boolean shouldRender(boolean behind) {
+        if (!behind || this.skippedInRow >= this.maxSkippedFrames) {
+            this.skippedInRow = 0;
+            return true;
+        }
+        this.skippedInRow++;
+        this.droppedFrames++;
+        return false;
+    }
+
+    /**
+     * Count frames that were never attempted because the loop woke up too late for them.
+     *
+     * @param frames The number of frames
+     */
+    public void dropFrames(long frames) {
+        this.droppedFrames += frames;
+    }
+
+    /**
+     * Count ticks whose time was given up because the backlog grew too large to catch up.
+     *
+     * @param ticks The number of ticks
+     */
+    public void dropTicks(long ticks) {
+        this.droppedTicks += ticks;
+    }
+
+    /**
+     * Record how busy a wake-up was, and degrade or recover the loop accordingly.
+     *
+     * @param busyNanos    The time the wake-up spent on ticks and frames
+     * @param elapsedNanos The real time since the previous wake-up
+     */
+    public void recordLoad(long busyNanos, long elapsedNanos) {
+        double sample = elapsedNanos <= 0 ? 1 : Math.min(1, (double) busyNanos / elapsedNanos);
+        this.load += (sample - this.load) * SMOOTHING;
+        if (this.degraded ? this.load < this.recoverLoad : this.load > this.degradeLoad) {
+            this.degraded = !this.degraded;
+        }
+    }
+
+    /**
+     * Check whether the loop leaves out optional work.
+     *
+     * @return True if degraded
+     */
+    public boolean isDegraded() {
+        return this.degraded;
+    }
+
+    /**
+     * Get the smoothed share of real time the loop spends busy.
+     *
+     * @return The load, between 0 and 1
+     */
+    public double getLoad() {
+        return this.load;
+    }
+
+    /**
+     * Get the number of frames skipped because ticks were due or missed because the loop woke up
+     * too late.
+     *
+     * @return The number of frames
+     */
+    public long getDroppedFrames() {
+        return this.droppedFrames;
+    }
+
+    /**
+     * Get the number of ticks whose time was given up because the backlog grew too large, which
+     * slowed the game down.
+     *
+     * @return The number of ticks
+     */
+    public long getDroppedTicks() {
+        return this.droppedTicks;
+    }
+}
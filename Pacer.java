@@ -0,0 +1,54 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits until a deadline given in System.nanoTime() units, precisely and without burning a core.
+ * Long waits sleep, which is cheap but only accurate to about a millisecond; the last stretch is
+ * parked, and the final few microseconds are spun, which is exact but keeps the thread busy.
+ */
+public class Pacer {
+    // Remaining time above which the thread sleeps
+    private static final long SLEEP_THRESHOLD_NANOS = 2_000_000;
+    // Remaining time above which the thread parks
+    private static final long PARK_THRESHOLD_NANOS = 100_000;
+
+    /**
+     * Wait until the given time, unless the thread is interrupted. An interrupted thread returns at
+     * once and keeps its interrupt status, so a loop calling this in turn should stop on false
+     * instead of calling it again.
+     *
+     * @param deadline The time to wait for, in System.nanoTime() units
+     * @return True if the deadline was reached, false if the thread was interrupted
+     */
+    public boolean waitUntil(long deadline) {
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+        long remaining = deadline - System.nanoTime();
+        // Sleep while the deadline is far away, waking up a little early
+        while (remaining > SLEEP_THRESHOLD_NANOS) {
+            try {
+                Thread.sleep((remaining - SLEEP_THRESHOLD_NANOS / 2) / 1_000_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            remaining = deadline - System.nanoTime();
+        }
+        // Park for most of what is left; an interrupt makes parking return at once
+        while (remaining > PARK_THRESHOLD_NANOS) {
+            LockSupport.parkNanos(remaining - PARK_THRESHOLD_NANOS);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            remaining = deadline - System.nanoTime();
+        }
+        // Spin for the rest
+        while (deadline - System.nanoTime() > 0) {
+            Thread.onSpinWait();
+        }
+        return true;
+    }
+}
@@ -13,9 +13,14 @@ import biuoop.KeyboardSensor;
 public class Paddle implements Sprite, Collidable {
     private KeyboardSensor keyboard;
     private Rectangle paddleShape;
+    private Rectangle previousShape;
     private final Color color;
     private int gameWidth;
+    // The balls the paddle may not move onto, set when the paddle is added to a world
+    private BallSystem balls;
     public static final double EPSILON = 0.001;
+    // The distance the paddle moves per time unit
+    private static final int SPEED = 7;
 
     /**
      * Helper method to compare two doubles for equality within a small margin.
@@ -39,17 +44,27 @@ public class Paddle implements Sprite, Collidable {
      */
     public Paddle(Rectangle paddleShape, Color color, KeyboardSensor keyboard, int gameWidth) {
         this.paddleShape = paddleShape;
+        this.previousShape = paddleShape;
         this.color = color;
         this.keyboard = keyboard;
         this.gameWidth = gameWidth;
     }
 
+    /**
+     * Get the color of the paddle.
+     *
+     * @return The color
+     */
+    public Color getColor() {
+        return this.color;
+    }
+
     /**
      * Moves the paddle left by 7 pixels.
      * If the paddle reaches the left edge of the screen, it wraps around to the right edge.
      */
     public void moveLeft() {
-        double newX = this.paddleShape.getUpperLeft().getX() - 7; // Move left by 7 pixels
+        double newX = this.paddleShape.getUpperLeft().getX() - SPEED; // Move left by 7 pixels
         double newY = this.paddleShape.getUpperLeft().getY(); // Y coordinate remains the same
         if (newX < 10) {
             newX = gameWidth - 10 - paddleShape.getWidth(); // Set newX to the rightmost position
@@ -57,10 +72,8 @@ public class Paddle implements Sprite, Collidable {
         Rectangle newPaddle = new Rectangle(new Point(newX, newY),
                 this.paddleShape.getWidth(), this.paddleShape.getHeight());
         // Check for collisions with balls
-        for (Ball ball : Game.balls) {
-            if (newPaddle.contains(ball.getCenter())) {
-                return;
-            }
+        if (this.balls != null && this.balls.anyCenterIn(newPaddle)) {
+            return;
         }
         // Update paddle's position
         this.paddleShape = newPaddle;
@@ -71,7 +84,7 @@ public class Paddle implements Sprite, Collidable {
      * If the paddle reaches the right edge of the screen, it wraps around to the left edge.
      */
     public void moveRight() {
-        double newX = this.paddleShape.getUpperLeft().getX() + 7; // Move right by 7 pixels
+        double newX = this.paddleShape.getUpperLeft().getX() + SPEED; // Move right by 7 pixels
         double newY = this.paddleShape.getUpperLeft().getY(); // Y coordinate remains the same
         if (newX > gameWidth - 10 - paddleShape.getWidth()) {
             newX = 10; // Set newX to the leftmost position
@@ -79,10 +92,8 @@ public class Paddle implements Sprite, Collidable {
         Rectangle newPaddle = new Rectangle(new Point(newX, newY),
                 this.paddleShape.getWidth(), this.paddleShape.getHeight());
         // Check for collisions with balls
-        for (Ball ball : Game.balls) {
-            if (newPaddle.contains(ball.getCenter())) {
-                return;
-            }
+        if (this.balls != null && this.balls.anyCenterIn(newPaddle)) {
+            return;
         }
         this.paddleShape = newPaddle;
     }
@@ -93,6 +104,7 @@ public class Paddle implements Sprite, Collidable {
      */
     @Override
     public void timePassed() {
+        this.previousShape = this.paddleShape;
         if (keyboard.isPressed(KeyboardSensor.LEFT_KEY)) {
             moveLeft();
         } else if (keyboard.isPressed(KeyboardSensor.RIGHT_KEY)) {
@@ -122,6 +134,39 @@ public class Paddle implements Sprite, Collidable {
                 (int) this.paddleShape.getHeight());
     }
 
+    /**
+     * Draws the paddle part of the way between its position before and after the last time unit.
+     * A move that wrapped around the screen is not interpolated.
+     *
+     * @param d     The DrawSurface on which to draw the paddle
+     * @param alpha The fraction of the way from the previous position (0) to the current one (1)
+     */
+    @Override
+    public void drawOn(DrawSurface d, double alpha) {
+        double x = this.paddleShape.getUpperLeft().getX();
+        double previousX = this.previousShape.getUpperLeft().getX();
+        if (Math.abs(x - previousX) <= SPEED) {
+            x = previousX + (x - previousX) * alpha;
+        }
+        d.setColor(this.color);
+        d.fillRectangle((int) x, (int) this.paddleShape.getUpperLeft().getY(),
+                (int) this.paddleShape.getWidth(), (int) this.paddleShape.getHeight());
+
+        d.setColor(Color.BLACK);
+        d.drawRectangle((int) x, (int) this.paddleShape.getUpperLeft().getY(),
+                (int) this.paddleShape.getWidth(), (int) this.paddleShape.getHeight());
+    }
+
+    /**
+     * Place the paddle at a given position, as if it had been there during the last time unit too.
+     *
+     * @param shape The new shape of the paddle
+     */
+    public void setShape(Rectangle shape) {
+        this.paddleShape = shape;
+        this.previousShape = shape;
+    }
+
     /**
      * Implements the getCollisionRectangle method from the Collidable interface.
      * Returns the collision rectangle (paddle's shape).
@@ -210,7 +255,17 @@ public class Paddle implements Sprite, Collidable {
      * @param g The game to which this paddle will be added
      */
     public void addToGame(Game g) {
-        g.addSprite(this);
-        g.addCollidable(this);
+        addToWorld(g.getWorld());
+    }
+
+    /**
+     * Adds this paddle as a sprite and collidable object to a world.
+     *
+     * @param w The world to which this paddle will be added
+     */
+    public void addToWorld(World w) {
+        w.addSprite(this);
+        w.addCollidable(this);
+        this.balls = w.getBallSystem();
     }
 }
\ No newline at end of file
@@ -27,8 +27,9 @@ public class Point {
      * @return The distance between this point and the other point.
      */
     public double distance(Point other) {
-        // Using the threshold method for double comparison
-        return Math.sqrt(Math.pow(this.x - other.x, 2) + Math.pow(this.y - other.y, 2));
+        double dx = this.x - other.x;
+        double dy = this.y - other.y;
+        return Math.sqrt(dx * dx + dy * dy);
     }
 
     /**
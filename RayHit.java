@@ -0,0 +1,102 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+/**
+ * A reusable holder for the result of a segment-vs-rectangle test: the segment parameter at which
+ * the rectangle boundary is first reached, the edge or corner reached there, and the outward
+ * normal of the rectangle at the contact.
+ * A caller keeps one instance and passes it to every test, so no objects are created per test.
+ */
+public class RayHit {
+    // No edge was reached
+    public static final int NO_EDGE = -1;
+    // The top edge of the rectangle
+    public static final int TOP_EDGE = 0;
+    // The bottom edge of the rectangle
+    public static final int BOTTOM_EDGE = 1;
+    // The left edge of the rectangle
+    public static final int LEFT_EDGE = 2;
+    // The right edge of the rectangle
+    public static final int RIGHT_EDGE = 3;
+    // One of the rounded corners of a rectangle grown by a radius
+    public static final int CORNER = 4;
+
+    // The segment parameter of the hit, between 0 (start) and 1 (end)
+    private double t;
+    // The edge that was hit
+    private int edge;
+    // The outward normal of the rectangle at the contact
+    private double normalX;
+    private double normalY;
+
+    /**
+     * Constructor to create an empty result.
+     */
+    public RayHit() {
+        this.edge = NO_EDGE;
+    }
+
+    /**
+     * Set the result.
+     *
+     * @param t    The segment parameter of the hit
+     * @param edge The edge that was hit
+     */
+    public void set(double t, int edge) {
+        this.t = t;
+        this.edge = edge;
+        this.normalX = edge == LEFT_EDGE ? -1 : (edge == RIGHT_EDGE ? 1 : 0);
+        this.normalY = edge == TOP_EDGE ? -1 : (edge == BOTTOM_EDGE ? 1 : 0);
+    }
+
+    /**
+     * Set the result with an explicit contact normal.
+     *
+     * @param t       The segment parameter of the hit
+     * @param edge    The edge or corner that was hit
+     * @param normalX The x component of the outward unit normal
+     * @param normalY The y component of the outward unit normal
+     */
+    public void set(double t, int edge, double normalX, double normalY) {
+        this.t = t;
+        this.edge = edge;
+        this.normalX = normalX;
+        this.normalY = normalY;
+    }
+
+    /**
+     * Get the segment parameter of the hit.
+     *
+     * @return The parameter, between 0 (start of the segment) and 1 (end of the segment)
+     */
+    public double getT() {
+        return this.t;
+    }
+
+    /**
+     * Get the edge that was hit.
+     *
+     * @return One of the edge constants
+     */
+    public int getEdge() {
+        return this.edge;
+    }
+
+    /**
+     * Get the x component of the outward normal at the contact.
+     *
+     * @return The x component of the unit normal
+     */
+    public double getNormalX() {
+        return this.normalX;
+    }
+
+    /**
+     * Get the y component of the outward normal at the contact.
+     *
+     * @return The y component of the unit normal
+     */
+    public double getNormalY() {
+        return this.normalY;
+    }
+}
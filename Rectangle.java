@@ -46,6 +46,268 @@ public class Rectangle {
         return intersectionPoints;
     }
 
+    /**
+     * Find where a segment first reaches the boundary of this rectangle, using the slab test.
+     * If the segment starts outside, this is where it enters; if it starts inside, this is where
+     * it leaves. Nothing is allocated, so this is safe to call in the innermost collision loop.
+     *
+     * @param x1  The x-coordinate of the start of the segment
+     * @param y1  The y-coordinate of the start of the segment
+     * @param dx  The x extent of the segment
+     * @param dy  The y extent of the segment
+     * @param hit The holder that receives the parameter and edge of the hit
+     * @return True if the segment reaches the boundary, false otherwise
+     */
+    public boolean boundaryHit(double x1, double y1, double dx, double dy, RayHit hit) {
+        double minX = this.upperLeft.getX();
+        double minY = this.upperLeft.getY();
+        double maxX = minX + this.width;
+        double maxY = minY + this.height;
+        double tEnter = Double.NEGATIVE_INFINITY;
+        double tExit = Double.POSITIVE_INFINITY;
+        int enterEdge = RayHit.NO_EDGE;
+        int exitEdge = RayHit.NO_EDGE;
+
+        // The slab between the left and right edges
+        if (dx != 0) {
+            double tLeft = (minX - x1) / dx;
+            double tRight = (maxX - x1) / dx;
+            boolean leftFirst = tLeft < tRight;
+            tEnter = leftFirst ? tLeft : tRight;
+            enterEdge = leftFirst ? RayHit.LEFT_EDGE : RayHit.RIGHT_EDGE;
+            tExit = leftFirst ? tRight : tLeft;
+            exitEdge = leftFirst ? RayHit.RIGHT_EDGE : RayHit.LEFT_EDGE;
+        } else if (x1 < minX || x1 > maxX) {
+            return false;
+        }
+
+        // The slab between the top and bottom edges
+        if (dy != 0) {
+            double tTop = (minY - y1) / dy;
+            double tBottom = (maxY - y1) / dy;
+            boolean topFirst = tTop < tBottom;
+            double near = topFirst ? tTop : tBottom;
+            double far = topFirst ? tBottom : tTop;
+            if (near > tEnter) {
+                tEnter = near;
+                enterEdge = topFirst ? RayHit.TOP_EDGE : RayHit.BOTTOM_EDGE;
+            }
+            if (far < tExit) {
+                tExit = far;
+                exitEdge = topFirst ? RayHit.BOTTOM_EDGE : RayHit.TOP_EDGE;
+            }
+        } else if (y1 < minY || y1 > maxY) {
+            return false;
+        }
+
+        if (tEnter > tExit) {
+            return false;
+        }
+        if (tEnter >= 0) {
+            // The segment starts outside and enters the rectangle
+            if (tEnter > 1) {
+                return false;
+            }
+            hit.set(tEnter, enterEdge);
+            return true;
+        }
+        if (tExit >= 0 && tExit <= 1) {
+            // The segment starts inside and leaves the rectangle
+            hit.set(tExit, exitEdge);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Find when a circle moving along a segment first touches this rectangle.
+     * This is the same as a ray against the rectangle grown by the radius with rounded corners:
+     * faces are handled by the slab test on the grown box and corners by a ray-vs-circle test.
+     * A circle that already overlaps the rectangle hits at parameter 0 if it moves further in,
+     * and is ignored if it moves out. Nothing is allocated.
+     *
+     * @param x1     The x-coordinate of the circle center at the start of the segment
+     * @param y1     The y-coordinate of the circle center at the start of the segment
+     * @param dx     The x extent of the segment
+     * @param dy     The y extent of the segment
+     * @param radius The radius of the circle
+     * @param hit    The holder that receives the parameter, edge and normal of the hit
+     * @return True if the circle touches the rectangle along the segment, false otherwise
+     */
+    public boolean sweptCircleHit(double x1, double y1, double dx, double dy, double radius, RayHit hit) {
+        double minX = this.upperLeft.getX();
+        double minY = this.upperLeft.getY();
+        double maxX = minX + this.width;
+        double maxY = minY + this.height;
+
+        // Check whether the circle already overlaps the rectangle
+        double offsetX = x1 - Math.max(minX, Math.min(x1, maxX));
+        double offsetY = y1 - Math.max(minY, Math.min(y1, maxY));
+        double distanceSquared = offsetX * offsetX + offsetY * offsetY;
+        if (distanceSquared < radius * radius) {
+            double normalX;
+            double normalY;
+            int edge;
+            if (distanceSquared > 0) {
+                double distance = Math.sqrt(distanceSquared);
+                normalX = offsetX / distance;
+                normalY = offsetY / distance;
+                edge = offsetX == 0 ? (offsetY < 0 ? RayHit.TOP_EDGE : RayHit.BOTTOM_EDGE)
+                        : (offsetY == 0 ? (offsetX < 0 ? RayHit.LEFT_EDGE : RayHit.RIGHT_EDGE) : RayHit.CORNER);
+            } else {
+                // The center is inside, so push it out through the nearest edge
+                edge = nearestEdge(x1, y1);
+                normalX = edge == RayHit.LEFT_EDGE ? -1 : (edge == RayHit.RIGHT_EDGE ? 1 : 0);
+                normalY = edge == RayHit.TOP_EDGE ? -1 : (edge == RayHit.BOTTOM_EDGE ? 1 : 0);
+            }
+            if (normalX * dx + normalY * dy >= 0) {
+                return false;
+            }
+            hit.set(0, edge, normalX, normalY);
+            return true;
+        }
+
+        // The slab test on the rectangle grown by the radius
+        double tEnter = Double.NEGATIVE_INFINITY;
+        double tExit = Double.POSITIVE_INFINITY;
+        int enterEdge = RayHit.NO_EDGE;
+        if (dx != 0) {
+            double tLeft = (minX - radius - x1) / dx;
+            double tRight = (maxX + radius - x1) / dx;
+            boolean leftFirst = tLeft < tRight;
+            tEnter = leftFirst ? tLeft : tRight;
+            enterEdge = leftFirst ? RayHit.LEFT_EDGE : RayHit.RIGHT_EDGE;
+            tExit = leftFirst ? tRight : tLeft;
+        } else if (x1 < minX - radius || x1 > maxX + radius) {
+            return false;
+        }
+        if (dy != 0) {
+            double tTop = (minY - radius - y1) / dy;
+            double tBottom = (maxY + radius - y1) / dy;
+            boolean topFirst = tTop < tBottom;
+            double near = topFirst ? tTop : tBottom;
+            if (near > tEnter) {
+                tEnter = near;
+                enterEdge = topFirst ? RayHit.TOP_EDGE : RayHit.BOTTOM_EDGE;
+            }
+            tExit = Math.min(tExit, topFirst ? tBottom : tTop);
+        } else if (y1 < minY - radius || y1 > maxY + radius) {
+            return false;
+        }
+        if (tEnter > tExit || tExit < 0 || tEnter > 1) {
+            return false;
+        }
+
+        // Find which region of the grown box the segment enters
+        double t = Math.max(tEnter, 0);
+        double px = x1 + t * dx;
+        double py = y1 + t * dy;
+        boolean outsideX = px < minX || px > maxX;
+        boolean outsideY = py < minY || py > maxY;
+        if (!(outsideX && outsideY)) {
+            hit.set(t, enterEdge);
+            return true;
+        }
+
+        // The segment enters a corner square, so it can only hit the rounded corner there
+        double cornerX = px < minX ? minX : maxX;
+        double cornerY = py < minY ? minY : maxY;
+        double mx = x1 - cornerX;
+        double my = y1 - cornerY;
+        double a = dx * dx + dy * dy;
+        double b = mx * dx + my * dy;
+        double c = mx * mx + my * my - radius * radius;
+        double discriminant = b * b - a * c;
+        if (discriminant < 0 || b >= 0) {
+            return false;
+        }
+        double tCorner = (-b - Math.sqrt(discriminant)) / a;
+        if (tCorner < 0 || tCorner > 1) {
+            return false;
+        }
+        hit.set(tCorner, RayHit.CORNER, (mx + tCorner * dx) / radius, (my + tCorner * dy) / radius);
+        return true;
+    }
+
+    /**
+     * Helper method to find the edge nearest to a point inside the rectangle.
+     *
+     * @param x The x-coordinate of the point
+     * @param y The y-coordinate of the point
+     * @return The nearest edge
+     */
+    private int nearestEdge(double x, double y) {
+        double left = x - this.upperLeft.getX();
+        double right = this.upperLeft.getX() + this.width - x;
+        double top = y - this.upperLeft.getY();
+        double bottom = this.upperLeft.getY() + this.height - y;
+        double nearest = Math.min(Math.min(left, right), Math.min(top, bottom));
+        if (nearest == top) {
+            return RayHit.TOP_EDGE;
+        }
+        if (nearest == bottom) {
+            return RayHit.BOTTOM_EDGE;
+        }
+        return nearest == left ? RayHit.LEFT_EDGE : RayHit.RIGHT_EDGE;
+    }
+
+    /**
+     * Get the point on the boundary of this rectangle nearest to a given point.
+     * A point inside the rectangle is moved to the nearest edge.
+     *
+     * @param x The x-coordinate of the point
+     * @param y The y-coordinate of the point
+     * @return The nearest point on the boundary
+     */
+    public Point closestBoundaryPoint(double x, double y) {
+        double minX = this.upperLeft.getX();
+        double minY = this.upperLeft.getY();
+        double maxX = minX + this.width;
+        double maxY = minY + this.height;
+        double cx = Math.max(minX, Math.min(x, maxX));
+        double cy = Math.max(minY, Math.min(y, maxY));
+        if (cx != x || cy != y) {
+            return new Point(cx, cy);
+        }
+        switch (nearestEdge(x, y)) {
+            case RayHit.TOP_EDGE:
+                return new Point(x, minY);
+            case RayHit.BOTTOM_EDGE:
+                return new Point(x, maxY);
+            case RayHit.LEFT_EDGE:
+                return new Point(minX, y);
+            default:
+                return new Point(maxX, y);
+        }
+    }
+
+    /**
+     * Get the point on the boundary reached by a segment, snapped exactly onto the edge that was hit.
+     *
+     * @param x1  The x-coordinate of the start of the segment
+     * @param y1  The y-coordinate of the start of the segment
+     * @param dx  The x extent of the segment
+     * @param dy  The y extent of the segment
+     * @param hit The result of {@link #boundaryHit(double, double, double, double, RayHit)}
+     * @return The point of the hit
+     */
+    public Point hitPoint(double x1, double y1, double dx, double dy, RayHit hit) {
+        double x = x1 + hit.getT() * dx;
+        double y = y1 + hit.getT() * dy;
+        switch (hit.getEdge()) {
+            case RayHit.TOP_EDGE:
+                return new Point(x, this.upperLeft.getY());
+            case RayHit.BOTTOM_EDGE:
+                return new Point(x, this.upperLeft.getY() + this.height);
+            case RayHit.LEFT_EDGE:
+                return new Point(this.upperLeft.getX(), y);
+            case RayHit.RIGHT_EDGE:
+                return new Point(this.upperLeft.getX() + this.width, y);
+            default:
+                return new Point(x, y);
+        }
+    }
+
     /**
      * Helper method to get the edges of the rectangle as lines.
      *
@@ -73,8 +335,17 @@ public class Rectangle {
      * @return True if the point is inside or on the edge of the rectangle, false otherwise.
      */
     public boolean contains(Point point) {
-        double px = point.getX();
-        double py = point.getY();
+        return contains(point.getX(), point.getY());
+    }
+
+    /**
+     * Method to check if a given point, given by its coordinates, is contained within this rectangle.
+     *
+     * @param px The x-coordinate of the point
+     * @param py The y-coordinate of the point
+     * @return True if the point is inside or on the edge of the rectangle, false otherwise.
+     */
+    public boolean contains(double px, double py) {
         double rx = this.getUpperLeft().getX();
         double ry = this.getUpperLeft().getY();
 
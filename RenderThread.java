@@ -0,0 +1,167 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import biuoop.DrawSurface;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Renders the latest {@link WorldSnapshot} published by a simulation at its own frame rate, so a
+ * slow display never delays the simulation and a slow simulation never blocks the display.
+ * Frames trail the simulation by up to one tick and are interpolated between ticks.
+ */
+public class RenderThread implements Runnable {
+    // The snapshots published by the simulation
+    private final TripleBuffer<WorldSnapshot> snapshots;
+    // Gives the surface to draw each frame on
+    private final Supplier<DrawSurface> surfaces;
+    // Shows each drawn surface
+    private final Consumer<DrawSurface> display;
+    // Caches the static sprites of the snapshots
+    private final StaticLayer staticLayer;
+    // Waits between frames
+    private final Pacer pacer;
+    // Real nanoseconds per frame
+    private final long frameNanos;
+    // Whether the thread should keep rendering
+    private volatile boolean running;
+    // Number of frames rendered
+    private volatile long frames;
+    // Number of frames that showed the same tick as the frame before
+    private volatile long repeatedFrames;
+    // Number of frames missed because drawing and showing the frame before took too long
+    private volatile long droppedFrames;
+    // Time spent drawing and showing frames, in nanoseconds
+    private volatile long busyNanos;
+    // Records the time of drawing and showing each frame, or null
+    private volatile FrameStats stats;
+
+    /**
+     * Constructor to create a renderer of the snapshots of a simulation.
+     *
+     * @param snapshots       The snapshots published by the simulation
+     * @param surfaces        Gives the surface to draw each frame on
+     * @param display         Shows each drawn surface
+     * @param framesPerSecond The rate at which frames are rendered
+     */
+    public RenderThread(TripleBuffer<WorldSnapshot> snapshots, Supplier<DrawSurface> surfaces,
+                        Consumer<DrawSurface> display, double framesPerSecond) {
+        this.snapshots = snapshots;
+        this.surfaces = surfaces;
+        this.display = display;
+        this.staticLayer = new StaticLayer();
+        this.pacer = new Pacer();
+        this.frameNanos = (long) (1e9 / framesPerSecond);
+        this.running = true;
+    }
+
+    /**
+     * Render frames until {@link #stop()} is called or the thread is interrupted.
+     */
+    @Override
+    public void run() {
+        long nextFrame = System.nanoTime();
+        long lastTick = -1;
+        int lastStaticVersion = -1;
+        while (this.running) {
+            WorldSnapshot snapshot = this.snapshots.latest();
+            if (snapshot.getTick() >= 0) {
+                long start = System.nanoTime();
+                if (snapshot.getStaticVersion() != lastStaticVersion) {
+                    lastStaticVersion = snapshot.getStaticVersion();
+                    this.staticLayer.invalidate();
+                }
+                DrawSurface d = this.surfaces.get();
+                snapshot.drawOn(d, this.staticLayer, snapshot.alphaAt(start));
+                long drawn = System.nanoTime();
+                this.display.accept(d);
+                long end = System.nanoTime();
+                this.busyNanos += end - start;
+                FrameStats timings = this.stats;
+                if (timings != null && timings.isEnabled()) {
+                    timings.record(FrameStats.Phase.DRAW, drawn - start);
+                    timings.record(FrameStats.Phase.SHOW, end - drawn);
+                    if (end - start > this.frameNanos) {
+                        timings.frameOverrun();
+                    }
+                }
+                this.frames++;
+                if (snapshot.getTick() == lastTick) {
+                    this.repeatedFrames++;
+                }
+                lastTick = snapshot.getTick();
+            }
+            // Wait for the next frame, skipping frames that were missed entirely
+            nextFrame += this.frameNanos;
+            long late = System.nanoTime() - nextFrame;
+            if (late > this.frameNanos) {
+                long missed = late / this.frameNanos;
+                this.droppedFrames += missed;
+                FrameStats timings = this.stats;
+                if (timings != null && timings.isEnabled()) {
+                    timings.framesDropped(missed);
+                }
+                nextFrame += missed * this.frameNanos;
+            }
+            if (!this.pacer.waitUntil(nextFrame)) {
+                // Interrupted, so stop instead of spinning through waits that return at once
+                this.running = false;
+            }
+        }
+    }
+
+    /**
+     * Set the stats the time of drawing and showing each frame is recorded into.
+     *
+     * @param frameStats The stats, or null to record nothing
+     */
+    public void setStats(FrameStats frameStats) {
+        this.stats = frameStats;
+    }
+
+    /**
+     * Stop rendering after the current frame.
+     */
+    public void stop() {
+        this.running = false;
+    }
+
+    /**
+     * Get the number of frames rendered.
+     *
+     * @return The frame count
+     */
+    public long getFrames() {
+        return this.frames;
+    }
+
+    /**
+     * Get the number of frames that showed the same tick as the frame before, because the
+     * simulation published nothing newer in between.
+     *
+     * @return The repeated frame count
+     */
+    public long getRepeatedFrames() {
+        return this.repeatedFrames;
+    }
+
+    /**
+     * Get the number of frames missed entirely because drawing and showing the frame before took
+     * too long.
+     *
+     * @return The dropped frame count
+     */
+    public long getDroppedFrames() {
+        return this.droppedFrames;
+    }
+
+    /**
+     * Get the time spent drawing and showing frames, excluding the waits between them.
+     * Divided by {@link #getFrames()} it gives the cost of a frame.
+     *
+     * @return The busy time, in nanoseconds
+     */
+    public long getBusyNanos() {
+        return this.busyNanos;
+    }
+}
@@ -0,0 +1,221 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many independent {@link GameSession}s in one process. All sessions share a single
+ * {@link TimingWheel} for pacing and a single executor for their ticks, so an idle session costs
+ * a slot entry rather than a thread, and thousands of sessions fit on a few cores as long as their
+ * ticks do.
+ * The executor runs each tick on a virtual thread when the runtime has them (Java 21 and up), and
+ * otherwise on a work-stealing pool with a thread per core. Sessions share nothing mutable, so each
+ * tick only touches its own world.
+ */
+public class SessionHost implements AutoCloseable {
+    // The length of a tick of the timing wheel, in microseconds
+    private static final long RESOLUTION_MICROS = 500;
+    // The number of slots of the timing wheel, a turn of about half a second
+    private static final int WHEEL_SIZE = 1024;
+    // The number of groups the first ticks of new sessions are spread over within a tick period
+    private static final int START_SPREAD = 16;
+    // The executor running the ticks
+    private final ExecutorService executor;
+    // Whether the executor runs each tick on a virtual thread
+    private final boolean virtualThreads;
+    // Hands the due ticks to the executor
+    private final TimingWheel wheel;
+    // The running sessions by id
+    private final Map<Long, GameSession> sessions;
+    // The id of the next session
+    private final AtomicLong nextId;
+    // Number of sessions stopped by a failing tick
+    private final AtomicLong failures;
+
+    /**
+     * Constructor to create a host running ticks on virtual threads if the runtime has them, and
+     * on a thread per core otherwise.
+     */
+    public SessionHost() {
+        this(virtualThreadExecutor());
+    }
+
+    /**
+     * Constructor to create a host running ticks on a pool of a given number of threads.
+     *
+     * @param threads The number of threads
+     */
+    public SessionHost(int threads) {
+        this(new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), false);
+    }
+
+    /**
+     * Helper constructor to use a virtual thread executor if one was found, or a pool otherwise.
+     *
+     * @param virtual The virtual thread executor, or null
+     */
+    private SessionHost(ExecutorService virtual) {
+        this(virtual != null ? virtual : new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), virtual != null);
+    }
+
+    /**
+     * Helper constructor to create a host on an executor.
+     *
+     * @param executor       The executor running the ticks
+     * @param virtualThreads Whether the executor runs each tick on a virtual thread
+     */
+    private SessionHost(ExecutorService executor, boolean virtualThreads) {
+        this.executor = executor;
+        this.virtualThreads = virtualThreads;
+        this.wheel = new TimingWheel(RESOLUTION_MICROS, TimeUnit.MICROSECONDS, WHEEL_SIZE, executor);
+        this.sessions = new ConcurrentHashMap<>();
+        this.nextId = new AtomicLong();
+        this.failures = new AtomicLong();
+    }
+
+    /**
+     * Helper method to create an executor running each task on a new virtual thread. It is looked
+     * up by reflection, so the game still builds and runs on runtimes without virtual threads.
+     *
+     * @return The executor, or null if the runtime has no virtual threads
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Start running a world. The first ticks of consecutive sessions are spread over the tick
+     * period, so sessions started together do not all tick at once.
+     *
+     * @param world          The initialized world, owned by the session from now on
+     * @param ticksPerSecond The tick rate of the world
+     * @return The running session
+     */
+    public GameSession start(World world, double ticksPerSecond) {
+        long id = this.nextId.getAndIncrement();
+        long tickNanos = (long) (1e9 / ticksPerSecond);
+        long first = System.nanoTime() + tickNanos + (id % START_SPREAD) * tickNanos / START_SPREAD;
+        GameSession session = new GameSession(this, id, world, ticksPerSecond, first);
+        this.sessions.put(id, session);
+        schedule(session);
+        return session;
+    }
+
+    /**
+     * Helper method to schedule the next tick of a session.
+     *
+     * @param session The session
+     */
+    void schedule(GameSession session) {
+        this.wheel.schedule(session.getTickTask(), session.getDeadline());
+    }
+
+    /**
+     * Helper method to forget a session that stopped.
+     *
+     * @param session The session
+     */
+    void remove(GameSession session) {
+        if (this.sessions.remove(session.getId()) != null && session.getFailure() != null) {
+            this.failures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the running sessions.
+     *
+     * @return A copy of the running sessions
+     */
+    public Collection<GameSession> getSessions() {
+        return new ArrayList<>(this.sessions.values());
+    }
+
+    /**
+     * Get the number of running sessions.
+     *
+     * @return The number of sessions
+     */
+    public int getSessionCount() {
+        return this.sessions.size();
+    }
+
+    /**
+     * Get the number of sessions stopped by a failing tick.
+     *
+     * @return The number of sessions
+     */
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * Check whether ticks run on virtual threads.
+     *
+     * @return True on virtual threads, false on a pool of platform threads
+     */
+    public boolean usesVirtualThreads() {
+        return this.virtualThreads;
+    }
+
+    /**
+     * Get a summary of the running sessions: their ticks, and the tick latency and lateness of all
+     * sessions together, along with the worst session's 99th percentile tick latency.
+     *
+     * @return The summary
+     */
+    public String getSummary() {
+        LatencyHistogram latency = new LatencyHistogram();
+        LatencyHistogram lateness = new LatencyHistogram();
+        long ticks = 0;
+        long skipped = 0;
+        long worstP99 = 0;
+        List<GameSession> running = new ArrayList<>(this.sessions.values());
+        for (GameSession session : running) {
+            latency.add(session.getTickLatency());
+            lateness.add(session.getLateness());
+            ticks += session.getTicks();
+            skipped += session.getSkippedTicks();
+            worstP99 = Math.max(worstP99, session.getTickLatency().getPercentile(99));
+        }
+        return String.format(Locale.ROOT, "%d sessions on %s, %d ticks, %d skipped, %d failed%n"
+                        + "tick     mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus worst session p99=%.1fus%n"
+                        + "lateness mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+                running.size(), this.virtualThreads ? "virtual threads" : "a thread pool", ticks, skipped,
+                getFailures(), latency.getMean() / 1e3, latency.getPercentile(50) / 1e3,
+                latency.getPercentile(99) / 1e3, latency.getMax() / 1e3, worstP99 / 1e3, lateness.getMean() / 1e3,
+                lateness.getPercentile(50) / 1e3, lateness.getPercentile(99) / 1e3, lateness.getMax() / 1e3);
+    }
+
+    /**
+     * Stop every session and the threads of the host, waiting briefly for running ticks to finish.
+     */
+    @Override
+    public void close() {
+        for (GameSession session : this.sessions.values()) {
+            session.halt();
+        }
+        this.sessions.clear();
+        this.wheel.close();
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
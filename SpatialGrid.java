@@ -0,0 +1,294 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A uniform grid that buckets rectangles by the cells they overlap.
+ * Each rectangle is stored under an integer id chosen by the caller, so the grid can be
+ * used as a broad phase in front of any list of collidables.
+ * Coordinates outside the grid are clamped into the border cells, so nothing is ever lost.
+ */
+public class SpatialGrid {
+    // Initial capacity of a single cell
+    private static final int INITIAL_CELL_CAPACITY = 4;
+    // The x-coordinate of the left side of the grid
+    private final double originX;
+    // The y-coordinate of the top side of the grid
+    private final double originY;
+    // The width and height of a single cell
+    private final double cellSize;
+    // Number of cell columns
+    private final int columns;
+    // Number of cell rows
+    private final int rows;
+    // The ids stored in each cell, indexed by row * columns + column
+    private final int[][] cells;
+    // The number of ids stored in each cell
+    private final int[] counts;
+
+    /**
+     * Constructor to create an empty grid covering the given area.
+     *
+     * @param originX  The x-coordinate of the left side of the grid
+     * @param originY  The y-coordinate of the top side of the grid
+     * @param width    The width of the covered area
+     * @param height   The height of the covered area
+     * @param cellSize The width and height of a single cell
+     */
+    public SpatialGrid(double originX, double originY, double width, double height, double cellSize) {
+        this.originX = originX;
+        this.originY = originY;
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        this.cells = new int[this.columns * this.rows][];
+        this.counts = new int[this.columns * this.rows];
+    }
+
+    /**
+     * Add an id to every cell overlapped by the given rectangle grown by a padding on each side.
+     *
+     * @param id      The id to store
+     * @param rect    The rectangle to bucket
+     * @param padding The distance the rectangle is grown by on each side
+     */
+    public void insert(int id, Rectangle rect, double padding) {
+        double x = rect.getUpperLeft().getX();
+        double y = rect.getUpperLeft().getY();
+        int firstColumn = column(x - padding);
+        int lastColumn = column(x + rect.getWidth() + padding);
+        int firstRow = row(y - padding);
+        int lastRow = row(y + rect.getHeight() + padding);
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                add(r * this.columns + c, id);
+            }
+        }
+    }
+
+    /**
+     * Append ids read from a buffer to a single cell, as prebuilt by an earlier {@link #insert}.
+     *
+     * @param cell   The index of the cell, row * columns + column
+     * @param ids    The buffer holding the ids, read from its position on
+     * @param count  The number of ids to append
+     * @param idBase The number added to every id read
+     */
+    public void appendCell(int cell, IntBuffer ids, int count, int idBase) {
+        if (count == 0) {
+            return;
+        }
+        int start = this.counts[cell];
+        int[] cellIds = this.cells[cell];
+        if (cellIds == null || cellIds.length < start + count) {
+            cellIds = cellIds == null ? new int[Math.max(count, INITIAL_CELL_CAPACITY)]
+                    : Arrays.copyOf(cellIds, Math.max(start + count, cellIds.length * 2));
+            this.cells[cell] = cellIds;
+        }
+        ids.get(cellIds, start, count);
+        for (int i = start; i < start + count; i++) {
+            cellIds[i] += idBase;
+        }
+        this.counts[cell] = start + count;
+    }
+
+    /**
+     * Remove an id from every cell it was inserted into. The rectangle and padding must be the ones
+     * it was inserted with. Each cell moves its last id into the freed place, so the order of the
+     * ids in a cell is not kept.
+     *
+     * @param id      The id to remove
+     * @param rect    The rectangle the id was bucketed by
+     * @param padding The distance the rectangle was grown by on each side
+     */
+    public void remove(int id, Rectangle rect, double padding) {
+        double x = rect.getUpperLeft().getX();
+        double y = rect.getUpperLeft().getY();
+        int firstColumn = column(x - padding);
+        int lastColumn = column(x + rect.getWidth() + padding);
+        int firstRow = row(y - padding);
+        int lastRow = row(y + rect.getHeight() + padding);
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                removeFromCell(r * this.columns + c, id);
+            }
+        }
+    }
+
+    /**
+     * Get the index of the cell containing a point, clamped into the grid.
+     *
+     * @param x The x-coordinate of the point
+     * @param y The y-coordinate of the point
+     * @return The index of the cell, row * columns + column
+     */
+    public int cellAt(double x, double y) {
+        return row(y) * this.columns + column(x);
+    }
+
+    /**
+     * Add an id to a single cell, such as the cell of a point from {@link #cellAt(double, double)}.
+     *
+     * @param cell The index of the cell
+     * @param id   The id to store
+     */
+    public void addToCell(int cell, int id) {
+        add(cell, id);
+    }
+
+    /**
+     * Remove an id from a single cell, moving the last id of the cell into its place.
+     *
+     * @param cell The index of the cell
+     * @param id   The id to remove
+     */
+    public void removeFromCell(int cell, int id) {
+        int[] ids = this.cells[cell];
+        int count = this.counts[cell];
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                ids[i] = ids[count - 1];
+                this.counts[cell] = count - 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Helper method to append an id to a single cell, growing the cell if needed.
+     *
+     * @param cell The index of the cell
+     * @param id   The id to append
+     */
+    private void add(int cell, int id) {
+        int[] ids = this.cells[cell];
+        if (ids == null) {
+            ids = new int[INITIAL_CELL_CAPACITY];
+            this.cells[cell] = ids;
+        } else if (this.counts[cell] == ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+            this.cells[cell] = ids;
+        }
+        ids[this.counts[cell]++] = id;
+    }
+
+    /**
+     * Get the unclamped column of the cell containing the given x-coordinate.
+     *
+     * @param x The x-coordinate
+     * @return The column, which may lie outside the grid
+     */
+    public int rawColumn(double x) {
+        return (int) Math.floor((x - this.originX) / this.cellSize);
+    }
+
+    /**
+     * Get the unclamped row of the cell containing the given y-coordinate.
+     *
+     * @param y The y-coordinate
+     * @return The row, which may lie outside the grid
+     */
+    public int rawRow(double y) {
+        return (int) Math.floor((y - this.originY) / this.cellSize);
+    }
+
+    /**
+     * Get the column of the cell containing the given x-coordinate, clamped into the grid.
+     *
+     * @param x The x-coordinate
+     * @return The column
+     */
+    public int column(double x) {
+        return clamp(rawColumn(x), this.columns);
+    }
+
+    /**
+     * Get the row of the cell containing the given y-coordinate, clamped into the grid.
+     *
+     * @param y The y-coordinate
+     * @return The row
+     */
+    public int row(double y) {
+        return clamp(rawRow(y), this.rows);
+    }
+
+    /**
+     * Helper method to clamp a cell coordinate into [0, size - 1].
+     *
+     * @param value The coordinate to clamp
+     * @param size  The number of cells along the axis
+     * @return The clamped coordinate
+     */
+    private static int clamp(int value, int size) {
+        return Math.max(0, Math.min(size - 1, value));
+    }
+
+    /**
+     * Get the ids stored in a cell. Only the first {@link #cellCount(int, int)} entries are valid.
+     *
+     * @param column The column of the cell, clamped into the grid
+     * @param row    The row of the cell, clamped into the grid
+     * @return The ids in the cell, or null if the cell is empty
+     */
+    public int[] cellIds(int column, int row) {
+        return this.cells[clamp(row, this.rows) * this.columns + clamp(column, this.columns)];
+    }
+
+    /**
+     * Get the number of ids stored in a cell.
+     *
+     * @param column The column of the cell, clamped into the grid
+     * @param row    The row of the cell, clamped into the grid
+     * @return The number of ids in the cell
+     */
+    public int cellCount(int column, int row) {
+        return this.counts[clamp(row, this.rows) * this.columns + clamp(column, this.columns)];
+    }
+
+    /**
+     * Get the x-coordinate of the left side of the grid.
+     *
+     * @return The x-coordinate of the origin
+     */
+    public double getOriginX() {
+        return this.originX;
+    }
+
+    /**
+     * Get the y-coordinate of the top side of the grid.
+     *
+     * @return The y-coordinate of the origin
+     */
+    public double getOriginY() {
+        return this.originY;
+    }
+
+    /**
+     * Get the number of cell columns.
+     *
+     * @return The number of columns
+     */
+    public int getColumns() {
+        return this.columns;
+    }
+
+    /**
+     * Get the number of cell rows.
+     *
+     * @return The number of rows
+     */
+    public int getRows() {
+        return this.rows;
+    }
+
+    /**
+     * Get the width and height of a single cell.
+     *
+     * @return The cell size
+     */
+    public double getCellSize() {
+        return this.cellSize;
+    }
+}
@@ -15,6 +15,39 @@ public interface Sprite {
      */
     void drawOn(DrawSurface d);
 
+    /**
+     * Draws the sprite as it was part of the way between the previous and the current unit of time.
+     * Sprites that do not move draw their current state.
+     *
+     * @param d     The DrawSurface on which to draw the sprite.
+     * @param alpha The fraction of the way from the previous state (0) to the current state (1).
+     */
+    default void drawOn(DrawSurface d, double alpha) {
+        drawOn(d);
+    }
+
+    /**
+     * Tells whether the sprite always looks the same and stays in place, so it can be drawn once
+     * into a cached background layer instead of on every frame. A static sprite whose appearance
+     * does change must call {@link SpriteCollection#invalidateStaticLayer()} afterwards.
+     *
+     * @return True if the sprite is static, false otherwise.
+     */
+    default boolean isStatic() {
+        return false;
+    }
+
+    /**
+     * Gets the layer of the sprite. Sprites on higher layers are drawn over sprites on lower ones;
+     * within a layer, drawing may be reordered by color, so sprites of one layer should not overlap.
+     * Static sprites are drawn beneath all others whatever their layer.
+     *
+     * @return The layer, between 0 and 255.
+     */
+    default int getLayer() {
+        return 0;
+    }
+
     /**
      * Notifies the sprite that a unit of time has passed.
      * This is used to update the state of the sprite over time.
@@ -2,51 +2,335 @@
 // ID: 322624693
 
 import biuoop.DrawSurface;
+import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * The SpriteCollection class represents a collection of sprites.
  * It manages adding sprites, updating them over time, and drawing them on a DrawSurface.
+ * Static sprites are kept in a {@link StaticLayer}, drawn beneath the other sprites, which caches
+ * them in an off-screen image when there are enough of them. The other sprites are recorded into
+ * a reused {@link DrawCommandBuffer}, sorted by layer and color, and replayed with as few color
+ * changes as possible.
+ * Each sprite is stored under an id, which is handed out as a generational {@link Handle}. Removing
+ * a sprite takes constant time: the last sprite of each list takes its place. Removals requested
+ * while the sprites are notified, such as from a hit(), wait until every sprite was notified.
  */
 public class SpriteCollection {
     private List<Sprite> sprites;
+    private Sprite[] staticSprites; // The static sprites, changed in place only past staticCount
+    private int staticCount; // The number of static sprites
+    private boolean staticShared; // Whether staticSprites was handed out and must be copied to remove
+    private int staticVersion; // Counts changes to the static sprites and their appearance
+    private List<Sprite> dynamicSprites; // The sprites drawn on every frame
+    private final StaticLayer staticLayer; // The cached layer of the static sprites
+    private DrawCommandBuffer commands; // The buffer the sprites are recorded into for drawing
+    private Sprite[] slots; // The sprite stored under each id, or null for a free id
+    private int[] generations; // The generation of each id, advanced when its sprite is removed
+    private int[] positions; // The position in sprites of the sprite under each id
+    private int[] kindPositions; // The position in staticSprites or dynamicSprites of each id
+    private int[] spriteIds; // The id of the sprite at each position in sprites
+    private int[] staticIds; // The id of the sprite at each position in staticSprites
+    private int[] dynamicIds; // The id of the sprite at each position in dynamicSprites
+    private int[] freeIds; // Ids freed by removals, reused before new ones
+    private int freeCount; // The number of entries in freeIds
+    private int idCount; // The number of ids handed out so far, free or not
+    private long[] pendingRemovals; // Handles of the removals waiting for the deferral to end
+    private int pendingCount; // The number of entries in pendingRemovals
+    private int deferDepth; // The number of deferrals begun and not yet ended
 
     /**
      * Constructor to initialize an empty sprite collection.
      */
     public SpriteCollection() {
         this.sprites = new ArrayList<>();
+        this.staticSprites = new Sprite[16];
+        this.dynamicSprites = new ArrayList<>();
+        this.staticLayer = new StaticLayer();
+        this.slots = new Sprite[16];
+        this.generations = new int[16];
+        this.positions = new int[16];
+        this.kindPositions = new int[16];
+        this.spriteIds = new int[16];
+        this.staticIds = new int[16];
+        this.dynamicIds = new int[16];
+        this.freeIds = new int[16];
+        this.pendingRemovals = new long[16];
+    }
+
+    /**
+     * Gets the number of sprites in the collection.
+     *
+     * @return The number of sprites.
+     */
+    public int size() {
+        return this.sprites.size();
+    }
+
+    /**
+     * Sets the color the background layer is filled with behind the static sprites. It should match
+     * the color the DrawSurface is cleared to, white by default.
+     *
+     * @param color The background color.
+     */
+    public void setBackground(Color color) {
+        this.staticLayer.setBackground(color);
     }
 
     /**
      * Adds a sprite to the collection.
      *
      * @param s The sprite to add.
+     * @return The handle of the sprite, used to remove it.
      */
-    public void addSprite(Sprite s) {
+    public long addSprite(Sprite s) {
+        // Reuse a freed id if there is one
+        int id;
+        if (this.freeCount > 0) {
+            id = this.freeIds[--this.freeCount];
+        } else {
+            if (this.idCount == this.slots.length) {
+                this.slots = Arrays.copyOf(this.slots, this.idCount * 2);
+                this.generations = Arrays.copyOf(this.generations, this.idCount * 2);
+                this.positions = Arrays.copyOf(this.positions, this.idCount * 2);
+                this.kindPositions = Arrays.copyOf(this.kindPositions, this.idCount * 2);
+                this.spriteIds = Arrays.copyOf(this.spriteIds, this.idCount * 2);
+                this.staticIds = Arrays.copyOf(this.staticIds, this.idCount * 2);
+                this.dynamicIds = Arrays.copyOf(this.dynamicIds, this.idCount * 2);
+            }
+            id = this.idCount++;
+        }
+        this.slots[id] = s;
+        this.positions[id] = this.sprites.size();
+        this.spriteIds[this.sprites.size()] = id;
         this.sprites.add(s);
+        if (s.isStatic()) {
+            if (this.staticCount == this.staticSprites.length) {
+                // Copy rather than grow in place, so readers of the old array are not disturbed
+                this.staticSprites = Arrays.copyOf(this.staticSprites, this.staticCount * 2);
+                this.staticShared = false;
+            }
+            this.kindPositions[id] = this.staticCount;
+            this.staticIds[this.staticCount] = id;
+            this.staticSprites[this.staticCount++] = s;
+            this.staticVersion++;
+        } else {
+            this.kindPositions[id] = this.dynamicSprites.size();
+            this.dynamicIds[this.dynamicSprites.size()] = id;
+            this.dynamicSprites.add(s);
+        }
+        return Handle.of(id, this.generations[id]);
+    }
+
+    /**
+     * Checks whether a handle refers to a sprite that is still in the collection. A sprite whose
+     * removal is deferred is still in it.
+     *
+     * @param handle The handle of the sprite.
+     * @return True if the sprite is in the collection, false if it was removed.
+     */
+    public boolean contains(long handle) {
+        int id = Handle.index(handle);
+        return id >= 0 && id < this.idCount && this.slots[id] != null
+                && this.generations[id] == Handle.generation(handle);
+    }
+
+    /**
+     * Removes a sprite from the collection in constant time. While removals are deferred, the
+     * removal is only queued and the sprite stays until the deferral ends.
+     *
+     * @param handle The handle returned when the sprite was added.
+     * @return True if the handle referred to a sprite, false if it was already removed.
+     */
+    public boolean removeSprite(long handle) {
+        if (!contains(handle)) {
+            return false;
+        }
+        if (this.deferDepth > 0) {
+            if (this.pendingCount == this.pendingRemovals.length) {
+                this.pendingRemovals = Arrays.copyOf(this.pendingRemovals, this.pendingCount * 2);
+            }
+            this.pendingRemovals[this.pendingCount++] = handle;
+            return true;
+        }
+        remove(Handle.index(handle));
+        return true;
+    }
+
+    /**
+     * Starts deferring removals until the matching {@link #endDeferral()}. Deferrals may be nested.
+     */
+    public void beginDeferral() {
+        this.deferDepth++;
+    }
+
+    /**
+     * Ends a deferral begun by {@link #beginDeferral()}, and applies the queued removals once the
+     * outermost deferral ends.
+     */
+    public void endDeferral() {
+        if (--this.deferDepth > 0) {
+            return;
+        }
+        for (int i = 0; i < this.pendingCount; i++) {
+            // A sprite may have been queued more than once
+            if (contains(this.pendingRemovals[i])) {
+                remove(Handle.index(this.pendingRemovals[i]));
+            }
+        }
+        this.pendingCount = 0;
+    }
+
+    /**
+     * Helper method to remove the sprite under an id at once.
+     *
+     * @param id The id of the sprite.
+     */
+    private void remove(int id) {
+        Sprite s = this.slots[id];
+        // Move the last sprite of each list into the freed place
+        int position = this.positions[id];
+        int last = this.sprites.size() - 1;
+        this.sprites.set(position, this.sprites.get(last));
+        this.sprites.remove(last);
+        this.spriteIds[position] = this.spriteIds[last];
+        this.positions[this.spriteIds[position]] = position;
+        int kindPosition = this.kindPositions[id];
+        if (s.isStatic()) {
+            if (this.staticShared) {
+                // Another thread may be reading the array, so change a copy of it instead
+                this.staticSprites = this.staticSprites.clone();
+                this.staticShared = false;
+            }
+            int lastStatic = --this.staticCount;
+            this.staticSprites[kindPosition] = this.staticSprites[lastStatic];
+            this.staticSprites[lastStatic] = null;
+            this.staticIds[kindPosition] = this.staticIds[lastStatic];
+            this.kindPositions[this.staticIds[kindPosition]] = kindPosition;
+            invalidateStaticLayer();
+        } else {
+            int lastDynamic = this.dynamicSprites.size() - 1;
+            this.dynamicSprites.set(kindPosition, this.dynamicSprites.get(lastDynamic));
+            this.dynamicSprites.remove(lastDynamic);
+            this.dynamicIds[kindPosition] = this.dynamicIds[lastDynamic];
+            this.kindPositions[this.dynamicIds[kindPosition]] = kindPosition;
+        }
+        // Free the id, making its handles stale
+        this.slots[id] = null;
+        this.generations[id]++;
+        if (this.freeCount == this.freeIds.length) {
+            this.freeIds = Arrays.copyOf(this.freeIds, this.freeCount * 2);
+        }
+        this.freeIds[this.freeCount++] = id;
+    }
+
+    /**
+     * Marks the background layer as out of date, so it is redrawn before the next frame.
+     * Call this after a static sprite changes its appearance.
+     */
+    public void invalidateStaticLayer() {
+        this.staticVersion++;
+        this.staticLayer.invalidate();
+    }
+
+    /**
+     * Gets the array holding the static sprites. Entries are only ever appended past
+     * {@link #getStaticCount()}, and removals change a copy of the array, so the array may be read
+     * by another thread.
+     *
+     * @return The array of static sprites.
+     */
+    public Sprite[] getStaticSprites() {
+        this.staticShared = true;
+        return this.staticSprites;
+    }
+
+    /**
+     * Gets the number of static sprites.
+     *
+     * @return The number of static sprites.
+     */
+    public int getStaticCount() {
+        return this.staticCount;
+    }
+
+    /**
+     * Gets a number that changes whenever a static sprite is added or removed, or the static layer
+     * is invalidated.
+     *
+     * @return The version of the static sprites.
+     */
+    public int getStaticVersion() {
+        return this.staticVersion;
     }
 
     /**
      * Notifies all sprites in the collection that a unit of time has passed.
      * This method calls timePassed() on each sprite, allowing them to update their state.
+     * Sprites removed meanwhile are removed once every sprite was notified, and sprites added
+     * meanwhile are notified too.
      */
     public void notifyAllTimePassed() {
-        for (Sprite s : this.sprites) {
-            s.timePassed();
+        beginDeferral();
+        for (int i = 0; i < this.sprites.size(); i++) {
+            this.sprites.get(i).timePassed();
         }
+        endDeferral();
     }
 
     /**
      * Draws all sprites in the collection on a given DrawSurface.
-     * This method calls drawOn(d) on each sprite, which draws the sprite on the DrawSurface.
+     * This method draws the layer of the static sprites and calls drawOn(d) on each other sprite,
+     * which draws the sprite on the DrawSurface.
      *
      * @param d The DrawSurface on which to draw the sprites.
      */
     public void drawAllOn(DrawSurface d) {
-        for (Sprite s : this.sprites) {
-            s.drawOn(d);
+        drawAllOn(d, 1);
+    }
+
+    /**
+     * Draws all sprites in the collection as they were part of the way between the previous and
+     * the current unit of time.
+     *
+     * @param d     The DrawSurface on which to draw the sprites.
+     * @param alpha The fraction of the way from the previous state (0) to the current state (1).
+     */
+    public void drawAllOn(DrawSurface d, double alpha) {
+        drawStaticLayer(d);
+        if (this.commands == null || this.commands.getWidth() != d.getWidth()
+                || this.commands.getHeight() != d.getHeight()) {
+            this.commands = new DrawCommandBuffer(d.getWidth(), d.getHeight());
         }
+        this.commands.clear();
+        recordDynamic(this.commands, alpha);
+        this.commands.sort();
+        this.commands.replay(d);
+    }
+
+    /**
+     * Records only the sprites that are not static into a command buffer, as they were part of the
+     * way between the previous and the current unit of time. The buffer is not cleared or sorted.
+     *
+     * @param buffer The buffer to record into.
+     * @param alpha  The fraction of the way from the previous state (0) to the current state (1).
+     */
+    public void recordDynamic(DrawCommandBuffer buffer, double alpha) {
+        for (Sprite s : this.dynamicSprites) {
+            buffer.beginSprite(s.getLayer());
+            s.drawOn(buffer, alpha);
+        }
+    }
+
+    /**
+     * Helper method to draw the layer of the static sprites.
+     *
+     * @param d The DrawSurface on which to draw the layer.
+     */
+    private void drawStaticLayer(DrawSurface d) {
+        this.staticLayer.setSprites(this.staticSprites, this.staticCount);
+        this.staticLayer.drawOn(d);
     }
 }
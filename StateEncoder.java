@@ -0,0 +1,388 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Encodes the state of a {@link World} into {@link StateFrame}s: a keyframe with the whole state,
+ * then a delta per tick with only what changed. The encoder keeps the state it last encoded, so a
+ * delta holds the balls whose quantized center moved, the paddle's x if it moved, and the
+ * collidables added or removed, which are only looked for in ticks that added or removed some.
+ * Positions are quantized to an eighth of a pixel, and deltas hold the difference from the last
+ * encoded position, so the error never accumulates. Balls are identified by their index in the
+ * {@link BallSystem} and collidables by their id in the {@link GameEnvironment}.
+ * All values are little-endian; counts, ids and sizes are unsigned varints, and coordinates and
+ * differences are zigzag varints.
+ * <ul>
+ * <li>Keyframe: the byte 0, the tick as a long, the world's width and height as ints, the
+ * paddle's x, the number of collidables and a record for each, then the number of balls and a
+ * record for each.</li>
+ * <li>Delta: the byte 1, the tick as a long, the number of ticks since the state it applies to,
+ * the difference of the paddle's x, the number of removed collidables and their ids, the number of
+ * added collidables and a record for each, the number of new balls and a record for each, then the
+ * number of moved balls and, for each, the number of unmoved indexes skipped since the previous
+ * one and the differences of its center.</li>
+ * <li>Collidable record: the id, a kind byte (0 other, 1 block, 2 paddle), the upper left corner,
+ * the width and height, and the color as an ARGB int.</li>
+ * <li>Ball record: the center, the radius, and the color as an ARGB int.</li>
+ * </ul>
+ */
+public class StateEncoder {
+    // Type byte of a keyframe
+    static final byte KEYFRAME = 0;
+    // Type byte of a delta
+    static final byte DELTA = 1;
+    // Kind of a collidable that is neither a block nor the paddle
+    static final byte KIND_OTHER = 0;
+    // Kind of a block
+    static final byte KIND_BLOCK = 1;
+    // Kind of the paddle
+    static final byte KIND_PADDLE = 2;
+    // Number of quantization steps per pixel
+    static final double SCALE = 8;
+    // Initial size of the buffer frames are encoded into
+    private static final int INITIAL_BUFFER = 4096;
+    // The buffer frames are encoded into, grown as needed
+    private ByteBuffer buffer;
+    // Whether a state was encoded that deltas can refer to
+    private boolean encoded;
+    // The tick of the state last encoded
+    private long tick;
+    // The quantized x of the paddle last encoded
+    private int paddleX;
+    // The number of balls last encoded
+    private int ballCount;
+    // The quantized x of the center of each ball last encoded
+    private int[] ballX;
+    // The quantized y of the center of each ball last encoded
+    private int[] ballY;
+    // The collidable under each id last encoded, or null
+    private Collidable[] collidables;
+    // The membership version of the environment last encoded
+    private int membershipVersion;
+
+    /**
+     * Constructor to create an encoder that has encoded nothing yet.
+     */
+    public StateEncoder() {
+        this.buffer = ByteBuffer.allocate(INITIAL_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+        this.ballX = new int[0];
+        this.ballY = new int[0];
+        this.collidables = new Collidable[0];
+    }
+
+    /**
+     * Check whether a delta can be encoded, which needs a state encoded before.
+     *
+     * @return True if {@link #encodeDelta(World)} may succeed
+     */
+    public boolean hasState() {
+        return this.encoded;
+    }
+
+    /**
+     * Forget the state last encoded, such as when nobody reads the deltas, so the next frame must
+     * be a keyframe.
+     */
+    public void reset() {
+        this.encoded = false;
+    }
+
+    /**
+     * Encode the whole state of a world, and keep it for the deltas that follow.
+     *
+     * @param world The world
+     * @return The keyframe
+     */
+    public StateFrame encodeKeyframe(World world) {
+        GameEnvironment environment = world.getEnvironment();
+        BallSystem balls = world.getBallSystem();
+        this.buffer.clear();
+        this.buffer.put(KEYFRAME);
+        this.buffer.putLong(world.getTick());
+        this.buffer.putInt(environment.getScreenWidth());
+        this.buffer.putInt(environment.getScreenHeight());
+        this.paddleX = quantize(world.getPaddle().getCollisionRectangle().getUpperLeft().getX());
+        putZigzag(this.paddleX);
+        // Collidables, in id order
+        int ids = environment.getIdCount();
+        this.collidables = Arrays.copyOf(environment.getSlots(), ids);
+        int present = 0;
+        for (Collidable c : this.collidables) {
+            if (c != null) {
+                present++;
+            }
+        }
+        putVarint(present);
+        for (int id = 0; id < ids; id++) {
+            if (this.collidables[id] != null) {
+                putCollidable(id, this.collidables[id]);
+            }
+        }
+        // Balls
+        this.ballCount = balls.size();
+        this.ballX = new int[this.ballCount];
+        this.ballY = new int[this.ballCount];
+        putVarint(this.ballCount);
+        for (int i = 0; i < this.ballCount; i++) {
+            putBall(balls, i);
+        }
+        this.membershipVersion = environment.getMembershipVersion();
+        this.tick = world.getTick();
+        this.encoded = true;
+        return new StateFrame(this.tick, true, toArray());
+    }
+
+    /**
+     * Encode what changed since the state last encoded, and keep the new state.
+     *
+     * @param world The world
+     * @return The delta, or null if the change cannot be encoded as a delta, such as when balls
+     *         were removed or no state was encoded before; a keyframe must be sent instead
+     */
+    public StateFrame encodeDelta(World world) {
+        BallSystem balls = world.getBallSystem();
+        if (!this.encoded || balls.size() < this.ballCount) {
+            this.encoded = false;
+            return null;
+        }
+        GameEnvironment environment = world.getEnvironment();
+        this.buffer.clear();
+        this.buffer.put(DELTA);
+        this.buffer.putLong(world.getTick());
+        putVarint(world.getTick() - this.tick);
+        // Paddle
+        int newPaddleX = quantize(world.getPaddle().getCollisionRectangle().getUpperLeft().getX());
+        putZigzag(newPaddleX - this.paddleX);
+        this.paddleX = newPaddleX;
+        // Collidables, only compared one by one if any were added or removed
+        if (environment.getMembershipVersion() != this.membershipVersion) {
+            putMembershipChanges(environment);
+            this.membershipVersion = environment.getMembershipVersion();
+        } else {
+            putVarint(0);
+            putVarint(0);
+        }
+        // New balls
+        int oldCount = this.ballCount;
+        this.ballCount = balls.size();
+        if (this.ballCount > this.ballX.length) {
+            int capacity = Math.max(this.ballCount, this.ballX.length * 2);
+            this.ballX = Arrays.copyOf(this.ballX, capacity);
+            this.ballY = Arrays.copyOf(this.ballY, capacity);
+        }
+        putVarint(this.ballCount - oldCount);
+        for (int i = oldCount; i < this.ballCount; i++) {
+            putBall(balls, i);
+        }
+        // Moved balls; the count is written in front of them once known
+        ensureRemaining(Integer.BYTES);
+        int countPosition = this.buffer.position();
+        this.buffer.putInt(0);
+        int moved = 0;
+        int previous = -1;
+        for (int i = 0; i < oldCount; i++) {
+            int qx = quantize(balls.getX(i));
+            int qy = quantize(balls.getY(i));
+            if (qx != this.ballX[i] || qy != this.ballY[i]) {
+                ensureRemaining(3 * 5);
+                putVarint(i - previous - 1);
+                putZigzag(qx - this.ballX[i]);
+                putZigzag(qy - this.ballY[i]);
+                this.ballX[i] = qx;
+                this.ballY[i] = qy;
+                previous = i;
+                moved++;
+            }
+        }
+        int end = this.buffer.position();
+        this.buffer.position(countPosition);
+        // The count takes the 4 reserved bytes as a padded varint, so nothing has to move
+        for (int b = 0; b < 3; b++) {
+            this.buffer.put((byte) ((moved & 0x7F) | 0x80));
+            moved >>>= 7;
+        }
+        this.buffer.put((byte) moved);
+        this.buffer.position(end);
+        this.tick = world.getTick();
+        return new StateFrame(this.tick, false, toArray());
+    }
+
+    /**
+     * Helper method to write the collidables removed and added since the state last encoded, by
+     * comparing the collidable under each id.
+     *
+     * @param environment The environment
+     */
+    private void putMembershipChanges(GameEnvironment environment) {
+        int ids = environment.getIdCount();
+        Collidable[] slots = environment.getSlots();
+        int common = Math.min(ids, this.collidables.length);
+        int removed = 0;
+        int added = 0;
+        for (int id = 0; id < Math.max(ids, this.collidables.length); id++) {
+            Collidable now = id < ids ? slots[id] : null;
+            Collidable before = id < this.collidables.length ? this.collidables[id] : null;
+            if (now != before) {
+                removed += before != null ? 1 : 0;
+                added += now != null ? 1 : 0;
+            }
+        }
+        putVarint(removed);
+        for (int id = 0; id < common; id++) {
+            if (slots[id] != this.collidables[id] && this.collidables[id] != null) {
+                ensureRemaining(5);
+                putVarint(id);
+            }
+        }
+        for (int id = ids; id < this.collidables.length; id++) {
+            if (this.collidables[id] != null) {
+                ensureRemaining(5);
+                putVarint(id);
+            }
+        }
+        putVarint(added);
+        for (int id = 0; id < ids; id++) {
+            Collidable before = id < this.collidables.length ? this.collidables[id] : null;
+            if (slots[id] != before && slots[id] != null) {
+                putCollidable(id, slots[id]);
+            }
+        }
+        this.collidables = Arrays.copyOf(slots, ids);
+    }
+
+    /**
+     * Helper method to write the record of a collidable.
+     *
+     * @param id The id of the collidable
+     * @param c  The collidable
+     */
+    private void putCollidable(int id, Collidable c) {
+        ensureRemaining(5 + 1 + 4 * 5 + Integer.BYTES);
+        Rectangle rect = c.getCollisionRectangle();
+        Color color = null;
+        byte kind = KIND_OTHER;
+        if (c instanceof Block) {
+            kind = KIND_BLOCK;
+            color = ((Block) c).getColor();
+        } else if (c instanceof Paddle) {
+            kind = KIND_PADDLE;
+            color = ((Paddle) c).getColor();
+        }
+        putVarint(id);
+        this.buffer.put(kind);
+        putZigzag(quantize(rect.getUpperLeft().getX()));
+        putZigzag(quantize(rect.getUpperLeft().getY()));
+        putVarint(quantize(rect.getWidth()));
+        putVarint(quantize(rect.getHeight()));
+        this.buffer.putInt(color == null ? 0 : color.getRGB());
+    }
+
+    /**
+     * Helper method to write the record of a ball and keep its quantized center.
+     *
+     * @param balls The ball system
+     * @param i     The index of the ball
+     */
+    private void putBall(BallSystem balls, int i) {
+        ensureRemaining(3 * 5 + Integer.BYTES);
+        this.ballX[i] = quantize(balls.getX(i));
+        this.ballY[i] = quantize(balls.getY(i));
+        putZigzag(this.ballX[i]);
+        putZigzag(this.ballY[i]);
+        putVarint(balls.getRadius(i));
+        this.buffer.putInt(balls.getColor(i).getRGB());
+    }
+
+    /**
+     * Helper method to quantize a coordinate.
+     *
+     * @param value The coordinate, in pixels
+     * @return The coordinate, in quantization steps
+     */
+    static int quantize(double value) {
+        return (int) Math.round(value * SCALE);
+    }
+
+    /**
+     * Helper method to write an unsigned varint: 7 bits per byte, low bits first, with the high
+     * bit set on every byte but the last.
+     *
+     * @param value The value, read as unsigned
+     */
+    private void putVarint(long value) {
+        ensureRemaining(10);
+        long v = value;
+        while ((v & ~0x7FL) != 0) {
+            this.buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        this.buffer.put((byte) v);
+    }
+
+    /**
+     * Helper method to write a signed value as a zigzag varint, so small negative values take
+     * few bytes as well.
+     *
+     * @param value The value
+     */
+    private void putZigzag(int value) {
+        putVarint(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Read an unsigned varint written by the encoder.
+     *
+     * @param buffer The buffer, read from its position on
+     * @return The value
+     */
+    static long getVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Read a zigzag varint written by the encoder.
+     *
+     * @param buffer The buffer, read from its position on
+     * @return The value
+     */
+    static int getZigzag(ByteBuffer buffer) {
+        int v = (int) getVarint(buffer);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Helper method to grow the buffer so a number of bytes fit after its position.
+     *
+     * @param bytes The number of bytes
+     */
+    private void ensureRemaining(int bytes) {
+        if (this.buffer.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(this.buffer.capacity() * 2,
+                    this.buffer.position() + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+            this.buffer.flip();
+            grown.put(this.buffer);
+            this.buffer = grown;
+        }
+    }
+
+    /**
+     * Helper method to copy the encoded frame out of the buffer.
+     *
+     * @return The encoded bytes
+     */
+    private byte[] toArray() {
+        return Arrays.copyOf(this.buffer.array(), this.buffer.position());
+    }
+}
@@ -0,0 +1,68 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An encoded frame of a world state stream: either a keyframe holding the whole state after a
+ * tick, or a delta holding what changed since an earlier tick. Frames are immutable, so one frame
+ * can be handed to any number of subscribers. The format is described by {@link StateEncoder}.
+ */
+public final class StateFrame {
+    // The tick of the state the frame leads to
+    private final long tick;
+    // Whether the frame holds the whole state
+    private final boolean keyframe;
+    // The encoded frame
+    private final byte[] data;
+
+    /**
+     * Constructor to create a frame.
+     *
+     * @param tick     The tick of the state the frame leads to
+     * @param keyframe Whether the frame holds the whole state
+     * @param data     The encoded frame, owned by the frame from now on
+     */
+    StateFrame(long tick, boolean keyframe, byte[] data) {
+        this.tick = tick;
+        this.keyframe = keyframe;
+        this.data = data;
+    }
+
+    /**
+     * Get the tick of the state the frame leads to.
+     *
+     * @return The tick
+     */
+    public long getTick() {
+        return this.tick;
+    }
+
+    /**
+     * Check whether the frame holds the whole state, so it can be applied to an empty mirror.
+     *
+     * @return True for a keyframe, false for a delta
+     */
+    public boolean isKeyframe() {
+        return this.keyframe;
+    }
+
+    /**
+     * Get the size of the encoded frame.
+     *
+     * @return The size in bytes
+     */
+    public int size() {
+        return this.data.length;
+    }
+
+    /**
+     * Get the encoded frame.
+     *
+     * @return A read-only little-endian buffer over the frame
+     */
+    public ByteBuffer getData() {
+        return ByteBuffer.wrap(this.data).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,403 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+/**
+ * A copy of the state of a world rebuilt from the {@link StateFrame}s of a state stream, for a
+ * spectator or an external renderer in another process. Keyframes replace the whole copy, and
+ * deltas are applied to it; deltas that do not apply to the tick of the copy, such as those that
+ * arrive before the first keyframe, are ignored. Positions are in pixels, as quantized by the
+ * {@link StateEncoder}. The mirror is not thread-safe.
+ */
+public class StateMirror {
+    // Size of the length prefix of a frame in a byte stream
+    static final int LENGTH_BYTES = Integer.BYTES;
+    // Largest frame read from a byte stream, far above any keyframe, so a corrupt length is not allocated
+    static final int MAX_FRAME_BYTES = 64 << 20;
+    // Whether a keyframe was applied
+    private boolean synced;
+    // The tick of the copy
+    private long tick;
+    // The width of the world
+    private int width;
+    // The height of the world
+    private int height;
+    // The quantized x of the paddle
+    private int paddleX;
+    // The number of balls
+    private int ballCount;
+    // The quantized x of the center of each ball
+    private int[] ballX;
+    // The quantized y of the center of each ball
+    private int[] ballY;
+    // The radius of each ball
+    private int[] ballRadius;
+    // The ARGB color of each ball
+    private int[] ballColor;
+    // The record of the collidable under each id: kind, x, y, width, height and color, or null
+    private int[][] collidables;
+    // The number of collidables
+    private int collidableCount;
+    // Number of deltas ignored because they did not apply to the copy
+    private long ignored;
+
+    /**
+     * Constructor to create an empty mirror waiting for a keyframe.
+     */
+    public StateMirror() {
+        this.ballX = new int[0];
+        this.ballY = new int[0];
+        this.ballRadius = new int[0];
+        this.ballColor = new int[0];
+        this.collidables = new int[0][];
+    }
+
+    /**
+     * Apply a frame to the copy.
+     *
+     * @param frame The frame
+     * @return True if the frame was applied, false if it was an ignored delta
+     */
+    public boolean apply(StateFrame frame) {
+        return apply(frame.getData());
+    }
+
+    /**
+     * Apply an encoded frame to the copy.
+     *
+     * @param data The frame, read from its position on in little-endian order
+     * @return True if the frame was applied, false if it was an ignored delta
+     */
+    public boolean apply(ByteBuffer data) {
+        ByteBuffer in = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        byte type = in.get();
+        long frameTick = in.getLong();
+        if (type == StateEncoder.KEYFRAME) {
+            applyKeyframe(in);
+        } else if (type == StateEncoder.DELTA) {
+            long base = frameTick - StateEncoder.getVarint(in);
+            if (!this.synced || base != this.tick) {
+                this.ignored++;
+                return false;
+            }
+            applyDelta(in);
+        } else {
+            throw new IllegalArgumentException("Unknown frame type " + type);
+        }
+        this.tick = frameTick;
+        return true;
+    }
+
+    /**
+     * Helper method to replace the copy with the state of a keyframe.
+     *
+     * @param in The keyframe, after its type and tick
+     */
+    private void applyKeyframe(ByteBuffer in) {
+        this.width = in.getInt();
+        this.height = in.getInt();
+        this.paddleX = StateEncoder.getZigzag(in);
+        this.collidables = new int[0][];
+        this.collidableCount = 0;
+        long collidableRecords = StateEncoder.getVarint(in);
+        for (long n = 0; n < collidableRecords; n++) {
+            readCollidable(in);
+        }
+        this.ballCount = 0;
+        long balls = StateEncoder.getVarint(in);
+        for (long n = 0; n < balls; n++) {
+            readBall(in);
+        }
+        this.synced = true;
+    }
+
+    /**
+     * Helper method to apply a delta to the copy.
+     *
+     * @param in The delta, after its type, tick and base
+     */
+    private void applyDelta(ByteBuffer in) {
+        this.paddleX += StateEncoder.getZigzag(in);
+        long removed = StateEncoder.getVarint(in);
+        for (long n = 0; n < removed; n++) {
+            int id = (int) StateEncoder.getVarint(in);
+            if (this.collidables[id] != null) {
+                this.collidables[id] = null;
+                this.collidableCount--;
+            }
+        }
+        long added = StateEncoder.getVarint(in);
+        for (long n = 0; n < added; n++) {
+            readCollidable(in);
+        }
+        long newBalls = StateEncoder.getVarint(in);
+        for (long n = 0; n < newBalls; n++) {
+            readBall(in);
+        }
+        long moved = StateEncoder.getVarint(in);
+        int i = -1;
+        for (long n = 0; n < moved; n++) {
+            i += (int) StateEncoder.getVarint(in) + 1;
+            this.ballX[i] += StateEncoder.getZigzag(in);
+            this.ballY[i] += StateEncoder.getZigzag(in);
+        }
+    }
+
+    /**
+     * Helper method to read the record of a collidable and store it under its id.
+     *
+     * @param in The frame, at the record
+     */
+    private void readCollidable(ByteBuffer in) {
+        int id = (int) StateEncoder.getVarint(in);
+        int kind = in.get();
+        int x = StateEncoder.getZigzag(in);
+        int y = StateEncoder.getZigzag(in);
+        int w = (int) StateEncoder.getVarint(in);
+        int h = (int) StateEncoder.getVarint(in);
+        int color = in.getInt();
+        if (id >= this.collidables.length) {
+            this.collidables = Arrays.copyOf(this.collidables, Math.max(id + 1, this.collidables.length * 2));
+        }
+        if (this.collidables[id] == null) {
+            this.collidableCount++;
+        }
+        this.collidables[id] = new int[] {kind, x, y, w, h, color};
+    }
+
+    /**
+     * Helper method to read the record of a ball and append it.
+     *
+     * @param in The frame, at the record
+     */
+    private void readBall(ByteBuffer in) {
+        if (this.ballCount == this.ballX.length) {
+            int capacity = Math.max(16, this.ballCount * 2);
+            this.ballX = Arrays.copyOf(this.ballX, capacity);
+            this.ballY = Arrays.copyOf(this.ballY, capacity);
+            this.ballRadius = Arrays.copyOf(this.ballRadius, capacity);
+            this.ballColor = Arrays.copyOf(this.ballColor, capacity);
+        }
+        int i = this.ballCount++;
+        this.ballX[i] = StateEncoder.getZigzag(in);
+        this.ballY[i] = StateEncoder.getZigzag(in);
+        this.ballRadius[i] = (int) StateEncoder.getVarint(in);
+        this.ballColor[i] = in.getInt();
+    }
+
+    /**
+     * Read the next frame of a byte stream written by a {@link StateStreamSink}: a little-endian
+     * int length followed by the frame.
+     *
+     * @param channel The channel
+     * @param buffer  A buffer to read into, or null; a new one is returned if it is too small
+     * @return The buffer holding the frame between its position and limit
+     * @throws IOException If reading fails, the length is not positive or above {@link #MAX_FRAME_BYTES},
+     *                     or the stream ends before the frame does
+     */
+    public static ByteBuffer readFrame(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(LENGTH_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, length);
+        int size = length.getInt(0);
+        if (size <= 0 || size > MAX_FRAME_BYTES) {
+            throw new IOException("The state stream has a frame of " + size + " bytes");
+        }
+        ByteBuffer frame = buffer != null && buffer.capacity() >= size ? buffer : ByteBuffer.allocate(size);
+        frame.clear().limit(size);
+        readFully(channel, frame);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * Helper method to fill a buffer from a channel.
+     *
+     * @param channel The channel
+     * @param buffer  The buffer, filled up to its limit
+     * @throws IOException If reading fails or the stream ends first
+     */
+    private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("The state stream ended");
+            }
+        }
+    }
+
+    /**
+     * Check whether a keyframe was applied, so the copy holds a state.
+     *
+     * @return True once synced
+     */
+    public boolean isSynced() {
+        return this.synced;
+    }
+
+    /**
+     * Get the tick of the copy.
+     *
+     * @return The tick
+     */
+    public long getTick() {
+        return this.tick;
+    }
+
+    /**
+     * Get the width of the world.
+     *
+     * @return The width
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Get the height of the world.
+     *
+     * @return The height
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Get the x of the paddle's left side.
+     *
+     * @return The x, in pixels
+     */
+    public double getPaddleX() {
+        return this.paddleX / StateEncoder.SCALE;
+    }
+
+    /**
+     * Get the number of balls.
+     *
+     * @return The number of balls
+     */
+    public int getBallCount() {
+        return this.ballCount;
+    }
+
+    /**
+     * Get the x of the center of a ball.
+     *
+     * @param i The index of the ball
+     * @return The x, in pixels
+     */
+    public double getBallX(int i) {
+        return this.ballX[i] / StateEncoder.SCALE;
+    }
+
+    /**
+     * Get the y of the center of a ball.
+     *
+     * @param i The index of the ball
+     * @return The y, in pixels
+     */
+    public double getBallY(int i) {
+        return this.ballY[i] / StateEncoder.SCALE;
+    }
+
+    /**
+     * Get the radius of a ball.
+     *
+     * @param i The index of the ball
+     * @return The radius
+     */
+    public int getBallRadius(int i) {
+        return this.ballRadius[i];
+    }
+
+    /**
+     * Get the color of a ball.
+     *
+     * @param i The index of the ball
+     * @return The color as an ARGB int
+     */
+    public int getBallColor(int i) {
+        return this.ballColor[i];
+    }
+
+    /**
+     * Get the number of collidables.
+     *
+     * @return The number of collidables
+     */
+    public int getCollidableCount() {
+        return this.collidableCount;
+    }
+
+    /**
+     * Get the number of ids the copy has room for; the ids of the collidables are below it.
+     *
+     * @return The number of ids
+     */
+    public int getIdCount() {
+        return this.collidables.length;
+    }
+
+    /**
+     * Get the record of the collidable under an id. The paddle's record holds the rectangle it
+     * was added with; its current x is {@link #getPaddleX()}.
+     *
+     * @param id The id
+     * @return The kind (0 other, 1 block, 2 paddle), the quantized x, y, width and height, and the
+     *         ARGB color, or null if the id is free
+     */
+    public int[] getCollidable(int id) {
+        return id < this.collidables.length ? this.collidables[id] : null;
+    }
+
+    /**
+     * Get the number of deltas ignored because they did not apply to the tick of the copy.
+     *
+     * @return The number of deltas
+     */
+    public long getIgnoredDeltas() {
+        return this.ignored;
+    }
+
+    /**
+     * Connect to a game streaming its state, such as one started with "java Ass3Game --stream
+     * port", and print what the copy holds once a second.
+     *
+     * @param args The host and the port
+     * @throws IOException If connecting fails or the stream breaks
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java StateMirror host port");
+            return;
+        }
+        StateMirror mirror = new StateMirror();
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress(args[0], Integer.parseInt(args[1])))) {
+            ByteBuffer buffer = null;
+            long frames = 0;
+            long keyframes = 0;
+            long bytes = 0;
+            long nextReport = System.nanoTime() + 1_000_000_000L;
+            while (true) {
+                buffer = readFrame(channel, buffer);
+                bytes += LENGTH_BYTES + buffer.remaining();
+                frames++;
+                keyframes += buffer.get(buffer.position()) == StateEncoder.KEYFRAME ? 1 : 0;
+                mirror.apply(buffer);
+                if (System.nanoTime() >= nextReport) {
+                    System.out.printf("tick %d: %d balls, %d collidables, paddle at %.1f; %d frames (%d keyframes),"
+                                    + " %.1f bytes per frame, %d deltas ignored%n", mirror.getTick(),
+                            mirror.getBallCount(), mirror.getCollidableCount(), mirror.getPaddleX(), frames, keyframes,
+                            (double) bytes / frames, mirror.getIgnoredDeltas());
+                    nextReport += 1_000_000_000L;
+                }
+            }
+        }
+    }
+}
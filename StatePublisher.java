@@ -0,0 +1,318 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the state of a world as a {@link Flow} of {@link StateFrame}s: each subscriber first
+ * gets a keyframe and then a delta per tick. Call {@link #afterTick(World)} on the simulating
+ * thread after each tick, as a {@link GameLoop} given the publisher does; it encodes the delta once
+ * for all subscribers and only queues it, so it never waits for them.
+ * Each subscriber has a bounded queue, and frames are delivered on the publisher's threads as the
+ * subscriber requests them. A subscriber too slow to keep its queue from filling up loses the
+ * queued deltas and gets a single keyframe of the current state instead, so it skips ahead to the
+ * present and the missed ticks are coalesced into one frame. Keyframes are only encoded in ticks
+ * in which some subscriber needs one, and nothing is encoded while there are no subscribers.
+ */
+public class StatePublisher implements Flow.Publisher<StateFrame>, AutoCloseable {
+    // Number of frames queued for a subscriber by default, a second of ticks at 60 ticks per second
+    public static final int DEFAULT_BUFFER = 60;
+    // Encodes the frames, only used by the simulating thread
+    private final StateEncoder encoder;
+    // The subscriptions that were not cancelled
+    private final List<StateSubscription> subscriptions;
+    // Delivers the frames to the subscribers
+    private final Executor executor;
+    // Number of frames queued for a subscriber before it is given a keyframe instead
+    private final int bufferFrames;
+    // Whether the publisher was closed
+    private volatile boolean closed;
+    // Number of deltas encoded
+    private volatile long deltas;
+    // Number of keyframes encoded
+    private volatile long keyframes;
+    // Number of times a subscriber's queued frames were replaced by a keyframe
+    private volatile long coalesced;
+
+    /**
+     * Constructor to create a publisher delivering on threads of its own, queuing
+     * {@link #DEFAULT_BUFFER} frames per subscriber.
+     */
+    public StatePublisher() {
+        this(null, DEFAULT_BUFFER);
+    }
+
+    /**
+     * Constructor to create a publisher.
+     *
+     * @param executor     Delivers the frames to the subscribers, or null to use threads of its own
+     * @param bufferFrames The number of frames queued for a subscriber before it is given a keyframe
+     *                     instead
+     */
+    public StatePublisher(Executor executor, int bufferFrames) {
+        if (bufferFrames <= 0) {
+            throw new IllegalArgumentException("The buffer must hold at least one frame, not " + bufferFrames);
+        }
+        this.encoder = new StateEncoder();
+        this.subscriptions = new CopyOnWriteArrayList<>();
+        // Idle threads of its own end after a while, so the publisher never has to shut them down
+        this.executor = executor != null ? executor : Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "state-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.bufferFrames = bufferFrames;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super StateFrame> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("The subscriber is null");
+        }
+        StateSubscription subscription = new StateSubscription(subscriber);
+        if (this.closed) {
+            subscription.complete();
+        } else {
+            this.subscriptions.add(subscription);
+            // A close racing with the add may have missed the new subscription
+            if (this.closed) {
+                this.subscriptions.remove(subscription);
+                subscription.complete();
+            }
+        }
+        subscription.signal();
+    }
+
+    /**
+     * Publish the state of a world after a tick. Call this on the simulating thread.
+     *
+     * @param world The world
+     */
+    public void afterTick(World world) {
+        if (this.subscriptions.isEmpty()) {
+            // Nobody reads the deltas, so the next subscriber starts from a keyframe anyway
+            this.encoder.reset();
+            return;
+        }
+        StateFrame delta = this.encoder.hasState() ? this.encoder.encodeDelta(world) : null;
+        if (delta != null) {
+            this.deltas++;
+        }
+        StateFrame keyframe = null;
+        for (StateSubscription subscription : this.subscriptions) {
+            if (delta != null && subscription.offer(delta)) {
+                continue;
+            }
+            // The subscriber is new or fell behind, or the change needs a keyframe
+            if (keyframe == null) {
+                keyframe = this.encoder.encodeKeyframe(world);
+                this.keyframes++;
+            }
+            subscription.replaceWith(keyframe);
+        }
+    }
+
+    /**
+     * Get the number of subscribers.
+     *
+     * @return The number of subscribers that did not cancel
+     */
+    public int getSubscriberCount() {
+        return this.subscriptions.size();
+    }
+
+    /**
+     * Get the number of deltas encoded.
+     *
+     * @return The number of deltas
+     */
+    public long getDeltas() {
+        return this.deltas;
+    }
+
+    /**
+     * Get the number of keyframes encoded.
+     *
+     * @return The number of keyframes
+     */
+    public long getKeyframes() {
+        return this.keyframes;
+    }
+
+    /**
+     * Get the number of times a subscriber fell behind and its queued frames were replaced by a
+     * keyframe.
+     *
+     * @return The number of times
+     */
+    public long getCoalesced() {
+        return this.coalesced;
+    }
+
+    /**
+     * Complete every subscription once its queued frames are delivered, and stop publishing.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        for (StateSubscription subscription : this.subscriptions) {
+            subscription.complete();
+            subscription.signal();
+        }
+        this.subscriptions.clear();
+    }
+
+    /**
+     * The subscription of a single subscriber: its queue of frames, its outstanding demand, and the
+     * delivery of its frames on the executor, one batch at a time.
+     */
+    private final class StateSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super StateFrame> subscriber; // The subscriber
+        private final ArrayDeque<StateFrame> queue; // The frames waiting for demand, guarded by this
+        private final AtomicInteger work; // Signals not yet handled, so one delivery runs at a time
+        private long demand; // The frames requested and not yet delivered, guarded by this
+        private boolean keyed; // Whether a keyframe was queued, so deltas apply, guarded by this
+        private boolean started; // Whether onSubscribe was called, only touched by the delivery
+        private volatile boolean cancelled; // Whether the subscription ended
+        private volatile boolean completing; // Whether onComplete follows the queued frames
+        private volatile Throwable requestError; // The error to signal for an invalid request, or null
+
+        /**
+         * Constructor to create a subscription.
+         *
+         * @param subscriber The subscriber
+         */
+        StateSubscription(Flow.Subscriber<? super StateFrame> subscriber) {
+            this.subscriber = subscriber;
+            this.queue = new ArrayDeque<>();
+            this.work = new AtomicInteger();
+        }
+
+        /**
+         * Queue a frame unless the queue is full.
+         *
+         * @param frame The frame
+         * @return True if queued, false if the queue is full or the subscriber needs a keyframe
+         */
+        boolean offer(StateFrame frame) {
+            synchronized (this) {
+                // A subscriber only ever starts from a keyframe
+                if (!this.keyed || this.queue.size() >= bufferFrames) {
+                    return false;
+                }
+                this.queue.add(frame);
+            }
+            signal();
+            return true;
+        }
+
+        /**
+         * Replace the queued frames with a keyframe, which holds all they would have changed.
+         *
+         * @param keyframe The keyframe
+         */
+        void replaceWith(StateFrame keyframe) {
+            synchronized (this) {
+                if (!this.queue.isEmpty()) {
+                    coalesced++;
+                }
+                this.queue.clear();
+                this.queue.add(keyframe);
+                this.keyed = true;
+            }
+            signal();
+        }
+
+        /**
+         * Complete the subscription once the queued frames are delivered.
+         */
+        void complete() {
+            this.completing = true;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                this.requestError = new IllegalArgumentException("Requested " + n + " frames, not a positive number");
+            } else {
+                synchronized (this) {
+                    this.demand = this.demand + n < 0 ? Long.MAX_VALUE : this.demand + n;
+                }
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        /**
+         * Run a delivery on the executor unless one is running, which then runs once more.
+         */
+        void signal() {
+            if (this.work.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this::deliver);
+                } catch (RejectedExecutionException e) {
+                    // The publisher was closed and its threads are gone
+                    cancel();
+                }
+            }
+        }
+
+        /**
+         * Helper method to deliver the queued frames as far as the demand allows, and any ending.
+         */
+        private void deliver() {
+            int missed = 1;
+            do {
+                if (!this.started && !this.cancelled) {
+                    this.started = true;
+                    this.subscriber.onSubscribe(this);
+                }
+                while (!this.cancelled && this.requestError == null) {
+                    StateFrame frame;
+                    synchronized (this) {
+                        if (this.demand == 0 || this.queue.isEmpty()) {
+                            break;
+                        }
+                        frame = this.queue.poll();
+                        this.demand--;
+                    }
+                    try {
+                        this.subscriber.onNext(frame);
+                    } catch (RuntimeException e) {
+                        cancel();
+                        this.subscriber.onError(e);
+                    }
+                }
+                if (!this.cancelled && this.requestError != null) {
+                    cancel();
+                    this.subscriber.onError(this.requestError);
+                } else if (!this.cancelled && this.completing && isDrained()) {
+                    cancel();
+                    this.subscriber.onComplete();
+                }
+                missed = this.work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * Helper method to check whether every queued frame was delivered.
+         *
+         * @return True if the queue is empty
+         */
+        private synchronized boolean isDrained() {
+            return this.queue.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Flow;
+
+/**
+ * Writes the frames of a state stream to a byte channel, such as a {@link java.nio.channels.Pipe}
+ * or a loopback socket to another process, each as a little-endian int length followed by the
+ * frame; {@link StateMirror#readFrame} reads them back. The sink requests one frame at a time and
+ * only after the previous one was written, so a slow reader slows down the sink alone, and the
+ * {@link StatePublisher} coalesces the frames it cannot take. A failed write cancels the
+ * subscription and closes the channel.
+ */
+public class StateStreamSink implements Flow.Subscriber<StateFrame> {
+    // The channel the frames are written to
+    private final WritableByteChannel channel;
+    // The length prefix of a frame, reused
+    private final ByteBuffer length;
+    // The subscription, set when subscribed
+    private Flow.Subscription subscription;
+    // Number of frames written
+    private volatile long frames;
+    // Number of bytes written
+    private volatile long bytes;
+    // The failure that ended the stream, or null
+    private volatile Throwable failure;
+
+    /**
+     * Constructor to create a sink.
+     *
+     * @param channel The channel the frames are written to, closed when the stream ends
+     */
+    public StateStreamSink(WritableByteChannel channel) {
+        this.channel = channel;
+        this.length = ByteBuffer.allocate(StateMirror.LENGTH_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription s) {
+        this.subscription = s;
+        s.request(1);
+    }
+
+    @Override
+    public void onNext(StateFrame frame) {
+        try {
+            this.length.clear();
+            this.length.putInt(0, frame.size());
+            writeFully(this.length);
+            writeFully(frame.getData());
+            this.frames++;
+            this.bytes += StateMirror.LENGTH_BYTES + frame.size();
+        } catch (IOException e) {
+            this.subscription.cancel();
+            onError(e);
+            return;
+        }
+        this.subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        this.failure = throwable;
+        closeChannel();
+    }
+
+    @Override
+    public void onComplete() {
+        closeChannel();
+    }
+
+    /**
+     * Helper method to write a whole buffer, even to a non-blocking channel.
+     *
+     * @param buffer The buffer
+     * @throws IOException If writing fails
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (this.channel.write(buffer) == 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Helper method to close the channel, ignoring a failure to close.
+     */
+    private void closeChannel() {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // The stream is over either way
+        }
+    }
+
+    /**
+     * Get the number of frames written.
+     *
+     * @return The number of frames
+     */
+    public long getFrames() {
+        return this.frames;
+    }
+
+    /**
+     * Get the number of bytes written, including the length prefixes.
+     *
+     * @return The number of bytes
+     */
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * Get the failure that ended the stream.
+     *
+     * @return The failure, or null if none
+     */
+    public Throwable getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * Accept connections on a loopback port on a background thread, and stream the state of a
+     * publisher to each, such as to a {@link StateMirror} in another process.
+     *
+     * @param publisher The publisher
+     * @param port      The port, or 0 for any free port
+     * @return The server channel; closing it stops accepting connections
+     * @throws IOException If the port cannot be bound
+     */
+    public static ServerSocketChannel listen(StatePublisher publisher, int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        Thread acceptor = new Thread(() -> {
+            while (server.isOpen()) {
+                try {
+                    SocketChannel client = server.accept();
+                    client.socket().setTcpNoDelay(true);
+                    publisher.subscribe(new StateStreamSink(client));
+                } catch (IOException e) {
+                    // The server was closed, or a connection failed before it was accepted
+                }
+            }
+        }, "state-stream-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server;
+    }
+}
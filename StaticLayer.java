@@ -0,0 +1,122 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import biuoop.DrawSurface;
+import java.awt.Color;
+
+/**
+ * A cached background layer of static sprites. When there are enough sprites they are drawn once
+ * into an opaque off-screen image, which is blitted in a single call each frame and redrawn only
+ * after it is invalidated; otherwise they are replayed each frame from a command buffer sorted by
+ * color, which is rerecorded only when they change.
+ * The layer reads the first count entries of an array it is given and never changes the array, so
+ * another thread may keep appending past them.
+ */
+public class StaticLayer {
+    // Screen pixels per sprite below which the image is used. Blitting a whole image costs about
+    // as much as drawing one block per this many pixels.
+    private static final int PIXELS_PER_SPRITE = 2048;
+    private Sprite[] sprites; // The sprites of the layer, in drawing order
+    private int count; // The number of sprites of the layer
+    private ImageSurface image; // The image of the layer, or null before it is first needed
+    private boolean valid; // Whether the image shows the current sprites
+    private Color background; // The color of the image behind the sprites
+    private DrawCommandBuffer commands; // The sprites recorded and sorted by color
+    private boolean recorded; // Whether the commands show the current sprites
+
+    /**
+     * Constructor to create an empty layer on a white background.
+     */
+    public StaticLayer() {
+        this.sprites = new Sprite[0];
+        this.background = Color.WHITE;
+    }
+
+    /**
+     * Set the sprites of the layer, and redraw the image before the next frame if they changed.
+     *
+     * @param array The array holding the sprites
+     * @param size  The number of sprites at the start of the array
+     */
+    public void setSprites(Sprite[] array, int size) {
+        if (array != this.sprites || size != this.count) {
+            this.sprites = array;
+            this.count = size;
+            this.valid = false;
+            this.recorded = false;
+        }
+    }
+
+    /**
+     * Get the number of sprites of the layer.
+     *
+     * @return The number of sprites
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Mark the image as out of date, so it is redrawn before the next frame.
+     */
+    public void invalidate() {
+        this.valid = false;
+        this.recorded = false;
+    }
+
+    /**
+     * Set the color the image is filled with behind the sprites. It should match the color the
+     * DrawSurface is cleared to, white by default.
+     *
+     * @param color The background color
+     */
+    public void setBackground(Color color) {
+        this.background = color;
+        if (this.image != null) {
+            this.image.dispose();
+            this.image = null;
+        }
+    }
+
+    /**
+     * Draw the sprites of the layer, by blitting the image if they are dense enough and redrawing
+     * the image first if it is out of date or the surface changed size.
+     *
+     * @param d The DrawSurface on which to draw the layer
+     */
+    public void drawOn(DrawSurface d) {
+        if (this.commands == null || this.commands.getWidth() != d.getWidth()
+                || this.commands.getHeight() != d.getHeight()) {
+            this.commands = new DrawCommandBuffer(d.getWidth(), d.getHeight());
+            this.recorded = false;
+        }
+        if (!this.recorded) {
+            // Fills of every color come before the borders drawn over them
+            this.commands.clear();
+            for (int i = 0; i < this.count; i++) {
+                this.commands.beginSprite(this.sprites[i].getLayer());
+                this.sprites[i].drawOn(this.commands);
+            }
+            this.commands.sort();
+            this.recorded = true;
+        }
+        if ((long) this.count * PIXELS_PER_SPRITE < (long) d.getWidth() * d.getHeight()) {
+            // Too few sprites for a blit of the whole image to pay off
+            this.commands.replay(d);
+            return;
+        }
+        if (this.image == null || this.image.getWidth() != d.getWidth() || this.image.getHeight() != d.getHeight()) {
+            if (this.image != null) {
+                this.image.dispose();
+            }
+            this.image = new ImageSurface(d.getWidth(), d.getHeight(), this.background);
+            this.valid = false;
+        }
+        if (!this.valid) {
+            this.image.clear();
+            this.commands.replay(this.image);
+            this.valid = true;
+        }
+        d.drawImage(0, 0, this.image.getImage());
+    }
+}
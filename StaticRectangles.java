@@ -0,0 +1,134 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.util.Arrays;
+
+/**
+ * The rectangles of the static collidables of a {@link GameEnvironment}, mirrored by id into
+ * packed arrays of their bounds, and a kernel testing one trajectory against a batch of them.
+ * The kernel reads the bounds straight from the arrays, with no calls through the collidables,
+ * their rectangles or their corner points, and picks the sides a trajectory enters and leaves
+ * through once per batch rather than per rectangle, so the loop over the batch runs the same few
+ * operations on every rectangle without branching on it.
+ * The test is conservative: it finds a lower bound of the time a trajectory, or a circle swept
+ * along it, first reaches each rectangle, and rules out only rectangles that cannot be reached.
+ * The exact test of {@link Rectangle} then runs on the rectangles that may be reached before the
+ * closest hit so far, so results are the same as testing every rectangle exactly.
+ */
+public class StaticRectangles {
+    // Slack on the trajectory parameter, covering the rounding of the kernel compared to the exact test
+    static final double SLACK = 1e-9;
+    // Stands in for the reciprocal of a zero extent, putting every slab boundary out of reach
+    private static final double HUGE = 1e300;
+    // Smallest extent whose reciprocal is used; a smaller one, whose reciprocal may overflow, counts as zero
+    private static final double MIN_EXTENT = 1 / HUGE;
+    // The left side of the rectangle of each id
+    private double[] minX;
+    // The top side of the rectangle of each id
+    private double[] minY;
+    // The right side of the rectangle of each id
+    private double[] maxX;
+    // The bottom side of the rectangle of each id
+    private double[] maxY;
+
+    /**
+     * Constructor to create room for a number of ids.
+     *
+     * @param capacity The number of ids
+     */
+    public StaticRectangles(int capacity) {
+        this.minX = new double[capacity];
+        this.minY = new double[capacity];
+        this.maxX = new double[capacity];
+        this.maxY = new double[capacity];
+    }
+
+    /**
+     * Make room for a number of ids, keeping the rectangles set so far.
+     *
+     * @param capacity The number of ids
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > this.minX.length) {
+            this.minX = Arrays.copyOf(this.minX, capacity);
+            this.minY = Arrays.copyOf(this.minY, capacity);
+            this.maxX = Arrays.copyOf(this.maxX, capacity);
+            this.maxY = Arrays.copyOf(this.maxY, capacity);
+        }
+    }
+
+    /**
+     * Mirror the rectangle of an id. The right and bottom sides are computed as the exact test
+     * computes them, so both agree on every bound.
+     *
+     * @param id   The id
+     * @param rect The rectangle
+     */
+    public void set(int id, Rectangle rect) {
+        double x = rect.getUpperLeft().getX();
+        double y = rect.getUpperLeft().getY();
+        this.minX[id] = x;
+        this.minY[id] = y;
+        this.maxX[id] = x + rect.getWidth();
+        this.maxY[id] = y + rect.getHeight();
+    }
+
+    /**
+     * Find a lower bound of the time a trajectory, or a circle swept along it, first reaches each
+     * rectangle of a batch, and the rectangle reached first.
+     *
+     * @param ids     The ids of the rectangles
+     * @param count   The number of ids
+     * @param x       The x-coordinate of the start of the trajectory
+     * @param y       The y-coordinate of the start of the trajectory
+     * @param dx      The x extent of the trajectory
+     * @param dy      The y extent of the trajectory
+     * @param radius  The radius of the circle swept along the trajectory, or 0 for a plain line
+     * @param entries Receives the bound of each rectangle, or infinity if it cannot be reached
+     *                within the trajectory; must hold count values
+     * @return The position in the batch of the smallest bound, or -1 if no rectangle can be reached
+     */
+    public int firstEntry(int[] ids, int count, double x, double y, double dx, double dy, double radius,
+                          double[] entries) {
+        // Pick the sides entered and left along each axis once for the whole batch. A trajectory
+        // parallel to an axis, or moving along it by far less than a pixel, gets a huge factor
+        // instead of the reciprocal, and sides pushed out by one more pixel, so it is far outside or
+        // far inside the slab and never on its boundary
+        boolean movesX = Math.abs(dx) >= MIN_EXTENT;
+        boolean movesY = Math.abs(dy) >= MIN_EXTENT;
+        boolean rightward = dx > 0 || !movesX;
+        boolean downward = dy > 0 || !movesY;
+        double inverseX = movesX ? 1 / dx : HUGE;
+        double inverseY = movesY ? 1 / dy : HUGE;
+        double growX = movesX ? radius : radius + 1;
+        double growY = movesY ? radius : radius + 1;
+        double[] nearX = rightward ? this.minX : this.maxX;
+        double[] farX = rightward ? this.maxX : this.minX;
+        double[] nearY = downward ? this.minY : this.maxY;
+        double[] farY = downward ? this.maxY : this.minY;
+        double nearGrowX = rightward ? -growX : growX;
+        double nearGrowY = downward ? -growY : growY;
+        double limit = 1 + SLACK;
+        for (int k = 0; k < count; k++) {
+            int id = ids[k];
+            // The slab test on the rectangle grown by the radius
+            double enterX = (nearX[id] + nearGrowX - x) * inverseX;
+            double exitX = (farX[id] - nearGrowX - x) * inverseX;
+            double enterY = (nearY[id] + nearGrowY - y) * inverseY;
+            double exitY = (farY[id] - nearGrowY - y) * inverseY;
+            double enter = Math.max(Math.max(enterX, enterY), 0);
+            double exit = Math.min(Math.min(exitX, exitY) + SLACK, limit);
+            entries[k] = enter <= exit ? enter : Double.POSITIVE_INFINITY;
+        }
+        // The smallest bound, the first of equal ones
+        int first = -1;
+        double smallest = Double.POSITIVE_INFINITY;
+        for (int k = 0; k < count; k++) {
+            if (entries[k] < smallest) {
+                smallest = entries[k];
+                first = k;
+            }
+        }
+        return first;
+    }
+}
@@ -0,0 +1,17 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import biuoop.KeyboardSensor;
+
+/**
+ * A keyboard sensor whose keys only change between ticks. The world tells it when each tick starts,
+ * so every object reads the same keys throughout a tick however often it asks.
+ */
+public interface TickInput extends KeyboardSensor {
+    /**
+     * Notifies the input that a tick starts, before any object of the world reads a key.
+     *
+     * @param tick The number of the tick, counting from 0.
+     */
+    void beginTick(long tick);
+}
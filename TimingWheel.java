@@ -0,0 +1,158 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timing wheel: a single thread that hands tasks to an executor once their deadlines
+ * pass, so any number of paced loops can share one timer instead of each sleeping on a thread of
+ * its own.
+ * Time is cut into ticks of a fixed resolution, and the wheel has a fixed number of slots, each
+ * holding the tasks due in one tick modulo the size of the wheel. Tasks due further away than a
+ * whole turn wait out the extra turns in their slot. Scheduling only appends to a concurrent
+ * queue, which the wheel's thread drains into the slots once per tick, so any thread may schedule
+ * and the slots themselves need no locking. Tasks run at most one resolution late, plus the time
+ * the executor takes to start them.
+ */
+public class TimingWheel implements AutoCloseable {
+    // The length of a tick of the wheel, in nanoseconds
+    private final long resolutionNanos;
+    // The tasks of each slot, only touched by the wheel's thread
+    private final List<List<Entry>> slots;
+    // Tasks scheduled since the wheel's thread last drained them
+    private final ConcurrentLinkedQueue<Entry> pending;
+    // The executor the due tasks are handed to
+    private final Executor executor;
+    // The thread turning the wheel
+    private final Thread thread;
+    // The System.nanoTime() the wheel started at
+    private final long start;
+    // Whether the wheel keeps turning
+    private volatile boolean running;
+    // The number of ticks the wheel has turned
+    private long ticks;
+
+    /**
+     * A task waiting in the wheel.
+     */
+    private static final class Entry {
+        private final Runnable task; // The task to run
+        private final long deadline; // The System.nanoTime() the task is due at
+        private long rounds; // The number of whole turns the task still waits in its slot
+
+        /**
+         * Constructor to create an entry.
+         *
+         * @param task     The task to run
+         * @param deadline The System.nanoTime() the task is due at
+         */
+        Entry(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Constructor to create and start a wheel.
+     *
+     * @param resolution The length of a tick of the wheel
+     * @param unit       The unit of the resolution
+     * @param size       The number of slots, so a turn lasts size ticks
+     * @param executor   The executor the due tasks are handed to
+     */
+    public TimingWheel(long resolution, TimeUnit unit, int size, Executor executor) {
+        if (resolution <= 0 || size <= 0) {
+            throw new IllegalArgumentException("The resolution and size must be positive");
+        }
+        this.resolutionNanos = unit.toNanos(resolution);
+        this.slots = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            this.slots.add(new ArrayList<>());
+        }
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.executor = executor;
+        this.start = System.nanoTime();
+        this.running = true;
+        this.thread = new Thread(this::turn, "timing-wheel");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Run a task on the executor once a time has passed. Any thread may schedule tasks.
+     *
+     * @param task     The task
+     * @param deadline The System.nanoTime() the task is due at; a past time runs it on the next tick
+     */
+    public void schedule(Runnable task, long deadline) {
+        this.pending.add(new Entry(task, deadline));
+    }
+
+    /**
+     * Stop the wheel. Tasks that are not due yet never run.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        this.thread.interrupt();
+    }
+
+    /**
+     * Get the length of a tick of the wheel.
+     *
+     * @return The resolution, in nanoseconds
+     */
+    public long getResolutionNanos() {
+        return this.resolutionNanos;
+    }
+
+    /**
+     * Helper method to turn the wheel until it is closed: wait for each tick to end, file the newly
+     * scheduled tasks into their slots, and hand the due tasks of the current slot to the executor.
+     */
+    private void turn() {
+        int size = this.slots.size();
+        while (this.running) {
+            // Park until the tick ends; a tick does not need the precision of a Pacer
+            long tickEnd = this.start + (this.ticks + 1) * this.resolutionNanos;
+            for (long left = tickEnd - System.nanoTime(); left > 0 && this.running;
+                 left = tickEnd - System.nanoTime()) {
+                LockSupport.parkNanos(left);
+            }
+            if (!this.running) {
+                return;
+            }
+            // File the tasks scheduled meanwhile, counting the ticks from the current one
+            Entry entry;
+            while ((entry = this.pending.poll()) != null) {
+                long due = Math.max(this.ticks, (entry.deadline - this.start) / this.resolutionNanos);
+                entry.rounds = (due - this.ticks) / size;
+                this.slots.get((int) (due % size)).add(entry);
+            }
+            // Run the tasks of the current slot whose turn it is
+            List<Entry> slot = this.slots.get((int) (this.ticks % size));
+            int kept = 0;
+            for (int i = 0; i < slot.size(); i++) {
+                Entry e = slot.get(i);
+                if (e.rounds > 0) {
+                    e.rounds--;
+                    slot.set(kept++, e);
+                } else {
+                    try {
+                        this.executor.execute(e.task);
+                    } catch (RejectedExecutionException ex) {
+                        // The executor was shut down, so the task will never run
+                    }
+                }
+            }
+            slot.subList(kept, slot.size()).clear();
+            this.ticks++;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A lock-free triple buffer handing the latest value from one writer thread to one reader thread.
+ * The writer fills its back slot and publishes it; the reader takes the latest published slot.
+ * Neither side ever waits for the other: the writer always has a free slot to fill, and the
+ * reader keeps its slot until a newer one is published. Values the reader never took are
+ * overwritten.
+ *
+ * @param <T> The type of the values, which are reused rather than created per publish
+ */
+public class TripleBuffer<T> {
+    // Flag set in the state while the middle slot holds a value the reader has not taken
+    private static final int FRESH = 4;
+    // Mask of the slot index in the state
+    private static final int INDEX = 3;
+    // The three slots
+    private final Object[] slots;
+    // The index of the middle slot, together with the fresh flag
+    private final AtomicInteger state;
+    // The slot owned by the writer
+    private int back;
+    // The slot owned by the reader
+    private int front;
+    // The number of values published
+    private volatile long published;
+    // The number of published values the reader took
+    private volatile long taken;
+
+    /**
+     * Constructor to create a triple buffer with three values.
+     *
+     * @param factory Creates each of the three values
+     */
+    public TripleBuffer(Supplier<T> factory) {
+        this.slots = new Object[] {factory.get(), factory.get(), factory.get()};
+        this.back = 0;
+        this.state = new AtomicInteger(1);
+        this.front = 2;
+    }
+
+    /**
+     * Get the value the writer fills next. Writer thread only.
+     *
+     * @return The back value
+     */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) this.slots[this.back];
+    }
+
+    /**
+     * Publish the back value and take the oldest slot as the new back. Writer thread only.
+     */
+    public void publish() {
+        this.back = this.state.getAndSet(this.back | FRESH) & INDEX;
+        this.published++;
+    }
+
+    /**
+     * Get the latest published value, taking it over if it is newer than the one the reader holds.
+     * Reader thread only. Before anything is published this is one of the initial values.
+     *
+     * @return The front value, which stays valid until the next call
+     */
+    @SuppressWarnings("unchecked")
+    public T latest() {
+        if ((this.state.get() & FRESH) != 0) {
+            this.front = this.state.getAndSet(this.front) & INDEX;
+            this.taken++;
+        }
+        return (T) this.slots[this.front];
+    }
+
+    /**
+     * Get the number of values published by the writer.
+     *
+     * @return The publish count
+     */
+    public long getPublished() {
+        return this.published;
+    }
+
+    /**
+     * Get the number of published values the reader took. The others were overwritten unseen.
+     *
+     * @return The count of values taken
+     */
+    public long getTaken() {
+        return this.taken;
+    }
+}
@@ -0,0 +1,392 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import biuoop.DrawSurface;
+import biuoop.KeyboardSensor;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A headless game world that owns the sprites, the game environment, the balls and the paddle.
+ * The simulation is advanced with {@link #step(int)} and does not need a window: input comes from a
+ * pluggable KeyboardSensor (no keys are pressed by default) and rendering is done by an optional
+ * {@link WorldRenderer}. Given the same seed and the same keys in every tick, the world always ends
+ * in the same state, which {@link #stateHash()} summarizes.
+ */
+public class World {
+    // Constant color for the paddle
+    public static final Color VERY_LIGHT_RED = new Color(255, 102, 102, 255);
+    // Maximum number of bounces a ball resolves within a single tick
+    static final int BOUNCES_PER_TICK = 4;
+    // Collection of all sprites in the world
+    private final SpriteCollection sprites;
+    // Environment that holds all collidable objects
+    private final GameEnvironment environment;
+    // System that holds, moves and draws all balls
+    private final BallSystem ballSystem;
+    // Keyboard sensor handed to the world's objects, forwarding to the current input
+    private final KeyboardSensor keyboard;
+    // Current source of input
+    private KeyboardSensor input;
+    // Optional renderer, or null when headless
+    private WorldRenderer renderer;
+    // Paddle controlled by the player
+    private final Paddle paddle;
+    // Bus the hits of the balls are recorded on and dispatched from after each tick
+    private final HitEventBus hitEvents;
+    // Number of ticks simulated so far
+    private long tick;
+
+    /**
+     * Constructor to create a world with a paddle and no other objects.
+     *
+     * @param width  The width of the world
+     * @param height The height of the world
+     */
+    public World(int width, int height) {
+        // Initialize the sprite collection
+        this.sprites = new SpriteCollection();
+        // Initialize the game environment with the world dimensions
+        this.environment = new GameEnvironment(width, height);
+        // Initialize the bus of the hits
+        this.hitEvents = new HitEventBus();
+        // Initialize the ball system in the environment, recording its hits on the bus
+        this.ballSystem = new BallSystem(this.environment);
+        this.ballSystem.setHitEventBus(this.hitEvents);
+        // Initialize the input with no keys pressed
+        this.input = new KeyboardSensor() {
+            @Override
+            public boolean isPressed(String key) {
+                return false;
+            }
+        };
+        // Initialize the keyboard that forwards to whatever input is set later
+        this.keyboard = new KeyboardSensor() {
+            @Override
+            public boolean isPressed(String key) {
+                return input.isPressed(key);
+            }
+        };
+        // Initialize the paddle with position, size, color, and keyboard sensor
+        this.paddle = new Paddle(new Rectangle(new Point(width / 2.0 - 60, height - 30),
+                90, 23), VERY_LIGHT_RED, this.keyboard, width);
+        // Add the paddle to the world
+        this.paddle.addToWorld(this);
+    }
+
+    /**
+     * Add a collidable object to the game environment.
+     *
+     * @param c The collidable object to add
+     * @return The handle of the collidable, used to remove it
+     */
+    public long addCollidable(Collidable c) {
+        return this.environment.addCollidable(c);
+    }
+
+    /**
+     * Add a sprite to the sprite collection.
+     *
+     * @param s The sprite to add
+     * @return The handle of the sprite, used to remove it
+     */
+    public long addSprite(Sprite s) {
+        return this.sprites.addSprite(s);
+    }
+
+    /**
+     * Remove a collidable object from the game environment. During a tick the removal is applied
+     * at the end of the tick.
+     *
+     * @param handle The handle returned when the collidable was added
+     * @return True if the handle referred to a collidable, false if it was already removed
+     */
+    public boolean removeCollidable(long handle) {
+        return this.environment.removeCollidable(handle);
+    }
+
+    /**
+     * Remove a sprite from the sprite collection. During a tick the removal is applied at the end
+     * of the tick.
+     *
+     * @param handle The handle returned when the sprite was added
+     * @return True if the handle referred to a sprite, false if it was already removed
+     */
+    public boolean removeSprite(long handle) {
+        return this.sprites.removeSprite(handle);
+    }
+
+    /**
+     * Add a listener to be notified of the hits of the balls, in one batch after each tick.
+     *
+     * @param listener The listener
+     */
+    public void addHitListener(HitListener listener) {
+        this.hitEvents.addListener(listener);
+    }
+
+    /**
+     * Set the source of input for the world's objects. A {@link TickInput} is told when each tick
+     * starts.
+     *
+     * @param sensor The keyboard sensor to read keys from
+     */
+    public void setInput(KeyboardSensor sensor) {
+        this.input = sensor;
+    }
+
+    /**
+     * Set the renderer used by {@link #render()}.
+     *
+     * @param worldRenderer The renderer, or null to run headless
+     */
+    public void setRenderer(WorldRenderer worldRenderer) {
+        this.renderer = worldRenderer;
+    }
+
+    /**
+     * Get the keyboard sensor the world's objects read from.
+     *
+     * @return The keyboard sensor
+     */
+    public KeyboardSensor getKeyboard() {
+        return this.keyboard;
+    }
+
+    /**
+     * Get the game environment.
+     *
+     * @return The game environment
+     */
+    public GameEnvironment getEnvironment() {
+        return this.environment;
+    }
+
+    /**
+     * Get the bus the hits of the balls are recorded on.
+     *
+     * @return The hit event bus
+     */
+    public HitEventBus getHitEvents() {
+        return this.hitEvents;
+    }
+
+    /**
+     * Get the sprite collection.
+     *
+     * @return The sprite collection
+     */
+    public SpriteCollection getSprites() {
+        return this.sprites;
+    }
+
+    /**
+     * Get the ball system.
+     *
+     * @return The ball system
+     */
+    public BallSystem getBallSystem() {
+        return this.ballSystem;
+    }
+
+    /**
+     * Get the paddle.
+     *
+     * @return The paddle
+     */
+    public Paddle getPaddle() {
+        return this.paddle;
+    }
+
+    /**
+     * Get the number of ticks simulated so far.
+     *
+     * @return The tick counter
+     */
+    public long getTick() {
+        return this.tick;
+    }
+
+    /**
+     * Set the number of ticks simulated so far, when the world is restored from a checkpoint.
+     *
+     * @param ticks The tick counter
+     */
+    void setTick(long ticks) {
+        this.tick = ticks;
+    }
+
+    /**
+     * Initialize the default level: the borders, six rows of blocks and two balls.
+     *
+     * @param random The random generator for the ball positions and angles
+     */
+    public void initialize(Random random) {
+        // Width of each block
+        int blockWidth = 55;
+        // Height of each block
+        int blockHeight = 23;
+        // Vertical gap where blocks start
+        int heightGap = 120;
+        // Number of balls to create
+        int numOfBalls = 2;
+        // Screen width
+        int screenWidth = this.environment.getScreenWidth();
+
+        // List to hold boundary blocks
+        List<Block> borders = new ArrayList<>();
+        // Create and add the upper boundary block
+        borders.add(new Block(new Rectangle(new Point(0, 0), 800, 10), Color.BLACK));
+        // Create and add the lower boundary block
+        borders.add(new Block(new Rectangle(new Point(0, 590), 800, 10), Color.BLACK));
+        // Create and add the left boundary block
+        borders.add(new Block(new Rectangle(new Point(0, 10), 10, 580), Color.BLACK));
+        // Create and add the right boundary block
+        borders.add(new Block(new Rectangle(new Point(790, 10), 10, 580), Color.BLACK));
+
+        // Array of colors for the rows of blocks
+        Color[] colors = {Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN, Color.BLUE, Color.MAGENTA};
+
+        // Loop to create rows of blocks
+        for (int row = 0; row < 6; row++) {
+            // Number of blocks in the current row
+            int numBlocks = 12 - row;
+            // Y-coordinate of the current row
+            int y = heightGap + row * blockHeight;
+            // Loop to create blocks in the current row
+            for (int col = 0; col < numBlocks; col++) {
+                // X-coordinate of the current block
+                int x = screenWidth - 10 - (numBlocks - col) * blockWidth;
+                // Create the block with its rectangle and the row color
+                Block block = new Block(new Rectangle(new Point(x, y), blockWidth, blockHeight), colors[row]);
+                // Add the block to the world
+                block.addToWorld(this);
+            }
+        }
+
+        // Add boundary blocks to the world
+        for (Block block : borders) {
+            block.addToWorld(this);
+        }
+
+        // Loop to create balls
+        for (int i = 0; i < numOfBalls; i++) {
+            // Generate random X-coordinate for the ball's starting position
+            double startX = 30 + random.nextDouble() * (650 - 30);
+            // Generate random Y-coordinate for the ball's starting position
+            double startY = 500 + random.nextDouble();
+            // Create the ball with the starting position, radius and color in the ball system
+            Ball ball = this.ballSystem.addBall(new Point(startX, startY), 8, Color.black);
+            // Set the velocity of the ball with a random angle and speed
+            ball.setVelocity(Velocity.fromAngleAndSpeed(random.nextInt(360), 7));
+            // Let the ball use its whole travel distance each tick
+            ball.setBounceLimit(BOUNCES_PER_TICK);
+            // Add the ball to the world
+            ball.addToWorld(this);
+        }
+    }
+
+    /**
+     * Advance the simulation by one tick. Objects removed during the tick stay collidable until the
+     * tick ends, so every ball of the tick sees the same environment. The hits of the tick are
+     * dispatched to the hit listeners once everything moved, and objects the listeners remove are
+     * removed with the rest at the end of the tick.
+     */
+    public void step() {
+        if (this.input instanceof TickInput) {
+            // Let the input fix the keys of this tick
+            ((TickInput) this.input).beginTick(this.tick);
+        }
+        this.environment.beginDeferral();
+        this.hitEvents.setTick(this.tick);
+        this.sprites.notifyAllTimePassed();
+        this.hitEvents.dispatch();
+        this.environment.endDeferral();
+        this.tick++;
+    }
+
+    /**
+     * Advance the simulation by a number of ticks, without rendering.
+     *
+     * @param n The number of ticks
+     */
+    public void step(int n) {
+        for (int i = 0; i < n; i++) {
+            step();
+        }
+    }
+
+    /**
+     * Get a hash of the state of the world: the tick, the position and velocity of every ball, the
+     * position of the paddle, and the number of collidables and sprites. Two runs from the same
+     * seed with the same input hash the same after the same ticks.
+     *
+     * @return The hash of the state
+     */
+    public long stateHash() {
+        long hash = mix(0, this.tick);
+        for (int i = 0; i < this.ballSystem.size(); i++) {
+            hash = mix(hash, Double.doubleToLongBits(this.ballSystem.getX(i)));
+            hash = mix(hash, Double.doubleToLongBits(this.ballSystem.getY(i)));
+            hash = mix(hash, Double.doubleToLongBits(this.ballSystem.getDx(i)));
+            hash = mix(hash, Double.doubleToLongBits(this.ballSystem.getDy(i)));
+        }
+        Point paddleCorner = this.paddle.getCollisionRectangle().getUpperLeft();
+        hash = mix(hash, Double.doubleToLongBits(paddleCorner.getX()));
+        hash = mix(hash, Double.doubleToLongBits(paddleCorner.getY()));
+        hash = mix(hash, this.environment.getCollidables().size());
+        return mix(hash, this.sprites.size());
+    }
+
+    /**
+     * Helper method to mix a value into a hash.
+     *
+     * @param hash  The hash so far
+     * @param value The value
+     * @return The new hash
+     */
+    private static long mix(long hash, long value) {
+        long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Draw all sprites of the world on a given DrawSurface.
+     *
+     * @param d The DrawSurface on which to draw
+     */
+    public void drawOn(DrawSurface d) {
+        this.sprites.drawAllOn(d);
+    }
+
+    /**
+     * Draw all sprites of the world part of the way between the previous and the current tick.
+     *
+     * @param d     The DrawSurface on which to draw
+     * @param alpha The fraction of the way from the previous tick (0) to the current tick (1)
+     */
+    public void drawOn(DrawSurface d, double alpha) {
+        this.sprites.drawAllOn(d, alpha);
+    }
+
+    /**
+     * Render the current tick with the renderer, if there is one.
+     */
+    public void render() {
+        render(1);
+    }
+
+    /**
+     * Render the world part of the way between the previous and the current tick with the
+     * renderer, if there is one.
+     *
+     * @param alpha The fraction of the way from the previous tick (0) to the current tick (1)
+     */
+    public void render(double alpha) {
+        if (this.renderer != null) {
+            this.renderer.render(this, alpha);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+/**
+ * The WorldRenderer interface represents an optional output of a World, such as a GUI window.
+ * A world without a renderer runs headless.
+ */
+public interface WorldRenderer {
+    /**
+     * Renders the state of the world part of the way between its previous and current tick.
+     *
+     * @param world The world to render.
+     * @param alpha The fraction of the way from the previous tick (0) to the current tick (1).
+     */
+    void render(World world, double alpha);
+}
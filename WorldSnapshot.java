@@ -0,0 +1,124 @@
+// Name: Yonatan Omer
+// ID: 322624693
+
+import biuoop.DrawSurface;
+
+/**
+ * What a render thread needs to draw one tick of a {@link World} without touching the world.
+ * The sprites that move are recorded as draw commands twice, as they were before and after the
+ * tick, so the frame can be drawn part of the way between them; the static sprites are kept by
+ * reference, since they never change. Snapshots are reused through a {@link TripleBuffer}.
+ */
+public class WorldSnapshot {
+    private long tick; // The tick captured, or -1 before the first capture
+    private long capturedNanos; // The System.nanoTime() at the capture
+    private long tickNanos; // The real nanoseconds per tick when captured
+    private Sprite[] staticSprites; // The array holding the static sprites
+    private int staticCount; // The number of static sprites
+    private int staticVersion; // The version of the static sprites
+    private boolean interpolated; // Whether the moving sprites were recorded before the tick as well
+    private final DrawCommandBuffer previous; // The moving sprites as they were before the tick
+    private final DrawCommandBuffer current; // The moving sprites as they are after the tick
+
+    /**
+     * Constructor to create an empty snapshot of a world of a given size.
+     *
+     * @param width  The width of the world
+     * @param height The height of the world
+     */
+    public WorldSnapshot(int width, int height) {
+        this.tick = -1;
+        this.staticSprites = new Sprite[0];
+        this.previous = new DrawCommandBuffer(width, height);
+        this.current = new DrawCommandBuffer(width, height);
+    }
+
+    /**
+     * Capture the current tick of a world, reusing the snapshot's arrays.
+     *
+     * @param world     The world
+     * @param nanos     The System.nanoTime() of the capture
+     * @param realNanos The real nanoseconds per tick, used to interpolate frames
+     */
+    public void capture(World world, long nanos, long realNanos) {
+        capture(world, nanos, realNanos, true);
+    }
+
+    /**
+     * Capture the current tick of a world, reusing the snapshot's arrays, optionally leaving out
+     * the previous tick. Without it, frames show the captured tick as it is instead of moving
+     * towards it, which halves the cost of the capture.
+     *
+     * @param world       The world
+     * @param nanos       The System.nanoTime() of the capture
+     * @param realNanos   The real nanoseconds per tick, used to interpolate frames
+     * @param interpolate Whether to record the previous tick, so frames are interpolated
+     */
+    public void capture(World world, long nanos, long realNanos, boolean interpolate) {
+        this.interpolated = interpolate;
+        this.tick = world.getTick();
+        this.capturedNanos = nanos;
+        this.tickNanos = realNanos;
+        SpriteCollection sprites = world.getSprites();
+        this.staticSprites = sprites.getStaticSprites();
+        this.staticCount = sprites.getStaticCount();
+        this.staticVersion = sprites.getStaticVersion();
+        this.previous.clear();
+        this.current.clear();
+        if (interpolate) {
+            sprites.recordDynamic(this.previous, 0);
+        }
+        sprites.recordDynamic(this.current, 1);
+        // Both recordings make the same calls, so the order of one serves for both
+        this.current.sort();
+    }
+
+    /**
+     * Get the tick captured.
+     *
+     * @return The tick, or -1 if nothing was captured yet
+     */
+    public long getTick() {
+        return this.tick;
+    }
+
+    /**
+     * Get the fraction of the way from the previous to the captured tick to draw at a given time,
+     * so frames trail the simulation by one tick and move smoothly.
+     *
+     * @param nanos The System.nanoTime() of the frame
+     * @return The fraction, between 0 and 1
+     */
+    public double alphaAt(long nanos) {
+        if (this.tickNanos <= 0) {
+            return 1;
+        }
+        return Math.max(0, Math.min(1, (double) (nanos - this.capturedNanos) / this.tickNanos));
+    }
+
+    /**
+     * Get the version of the static sprites when captured.
+     *
+     * @return The version
+     */
+    public int getStaticVersion() {
+        return this.staticVersion;
+    }
+
+    /**
+     * Draw the snapshot.
+     *
+     * @param d     The DrawSurface on which to draw
+     * @param layer The layer that caches the static sprites for the drawing thread
+     * @param alpha The fraction of the way from the previous tick (0) to the captured tick (1)
+     */
+    public void drawOn(DrawSurface d, StaticLayer layer, double alpha) {
+        layer.setSprites(this.staticSprites, this.staticCount);
+        layer.drawOn(d);
+        if (this.interpolated) {
+            this.current.replay(d, this.previous, alpha);
+        } else {
+            this.current.replay(d);
+        }
+    }
+}